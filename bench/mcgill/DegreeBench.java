@@ -0,0 +1,115 @@
+package mcgill;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Fog and cloud classification of a generated topology, before and after the degrees are counted
+ * in one pass. The old path is what getNodeEdge did: for every node scan every edge, then scan the
+ * nodes again for every node that qualifies. Both must make the same fogs and clouds, in the same order.
+ *
+ * Usage: java mcgill.DegreeBench [nodes] [edges per node] [fog min] [fog max] [cloud min]
+ */
+public class DegreeBench {
+
+	public static void main(String[] args) throws IOException{
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int perNode = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int fogMin = args.length > 2 ? Integer.parseInt(args[2]) : Creator.FOG_MIN_DEGREE;
+		int fogMax = args.length > 3 ? Integer.parseInt(args[3]) : Creator.FOG_MAX_DEGREE;
+		int cloudMin = args.length > 4 ? Integer.parseInt(args[4]) : Creator.CLOUD_MIN_DEGREE;
+
+		File gml = File.createTempFile("topology", ".gml");
+		gml.deleteOnExit();
+		write(gml, nodes, perNode * nodes);
+		Topology t = Topology.read(gml.getPath());
+		System.out.printf("topology %d nodes, %d edges%n", t.getSize(), t.getEdgeCount());
+
+		Util.InputMap map = new Util.InputMap();
+		Util.SourceTarget edges = new Util.SourceTarget();
+		for (int i = 0; i < t.getSize(); i++){
+			map.insert(t.getId(i), t.getLatitude(i), t.getLongitude(i));
+		}
+		for (int e = 0; e < t.getEdgeCount(); e++){
+			edges.insert(t.getEdgeSource(e), t.getEdgeTarget(e));
+		}
+		List<Fog> oldFogs = new ArrayList<Fog>(), oldClouds = new ArrayList<Fog>();
+		long start = System.nanoTime();
+		oldClassify(map, edges, fogMin, fogMax, cloudMin, oldFogs, oldClouds);
+		System.out.printf("old path  %8d fogs %6d clouds %10.1f ms%n", oldFogs.size(), oldClouds.size(), (System.nanoTime() - start) / 1e6);
+
+		Creator.fogs.clear();
+		Creator.clouds.clear();
+		Creator.remFogs.clear();
+		start = System.nanoTime();
+		Creator.getNodeEdge(t, fogMin, fogMax, cloudMin);
+		System.out.printf("new path  %8d fogs %6d clouds %10.1f ms%n", Creator.fogs.size(), Creator.clouds.size(), (System.nanoTime() - start) / 1e6);
+
+		if (!same(oldFogs, Creator.fogs) || !same(oldClouds, Creator.clouds))
+			System.out.println("MISMATCH between the old and the new classification");
+	}
+
+	static void write(File file, int nodes, int edges) throws IOException{
+		RandomStream stream = new MRG32k3a();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))){
+			out.write("graph [\n");
+			for (int i = 0; i < nodes; i++){
+				out.write("  node [\n    id " + i + "\n    Longitude " + (-130 + 160 * stream.nextDouble())
+						+ "\n    Latitude " + (-40 + 100 * stream.nextDouble()) + "\n  ]\n");
+			}
+			for (int e = 0; e < edges; e++){
+				out.write("  edge [\n    source " + stream.nextInt(0, nodes - 1) + "\n    target " + stream.nextInt(0, nodes - 1) + "\n  ]\n");
+			}
+			out.write("]\n");
+		}
+	}
+
+	// The nested loops of getNodeEdge as they were
+	static void oldClassify(Util.InputMap myMap, Util.SourceTarget myEdge, int fogMin, int fogMax, int cloudMin, List<Fog> fogs, List<Fog> clouds){
+		int outDegree = 0, inDegree = 0;
+		Map<Integer, Integer> nodeDegree = new HashMap<Integer, Integer>();
+		for (int i = 0; i < myMap.getSize(); i ++){
+			for (int j = 0; j < myEdge.getSize(); j++){
+				if (myMap.getId(i) == myEdge.getSource(j)) outDegree += 1;
+				if (myMap.getId(i) == myEdge.getTarget(j)) inDegree += 1;
+			}
+			nodeDegree.put(myMap.getId(i), outDegree + inDegree);
+			outDegree = 0; inDegree = 0;
+		}
+		int id = 1;
+		for (Entry<Integer, Integer> entry: nodeDegree.entrySet()){
+			if (entry.getValue() >= fogMin && entry.getValue() < fogMax){
+				for (int i = 0; i < myMap.getSize(); i++){
+					if (entry.getKey() == myMap.getId(i))
+						fogs.add(new Fog(id++, myMap.getLat(i), myMap.getLong(i)));
+				}
+			}
+			if (entry.getValue() >= cloudMin){
+				for (int j = 0; j < myMap.getSize(); j++){
+					if (entry.getKey() == myMap.getId(j))
+						clouds.add(new Fog(myMap.getId(j), myMap.getLat(j), myMap.getLong(j)));
+				}
+			}
+		}
+	}
+
+	static boolean same(List<Fog> a, List<Fog> b){
+		if (a.size() != b.size())
+			return false;
+		for (int i = 0; i < a.size(); i++){
+			if (!a.get(i).toString().equals(b.get(i).toString()))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,65 @@
+package mcgill;
+
+import java.io.IOException;
+
+/*
+ * Applications run as processes and as chains of events (JAMCloud.Arrival), on the same scenario.
+ * Every process is a thread, handed the processor through a monitor on every request, so the process
+ * runs stop at a few thousand applications; the event runs go on to millions on one core. Where both
+ * run they must make the same requests and find the same mean response.
+ *
+ * Usage: java mcgill.EventAppBench [algorithm] [largest process run, apps per device] [apps per device ...]
+ *   (run where Cogentco.gml and newDevices.txt are; millions of applications need a heap of a few GB
+ *   and -Djamcloud.seriesLimit, as every request adds to the utilization series of its fog)
+ */
+public class EventAppBench {
+
+	public static void main(String[] args) throws IOException{
+		int choice = args.length > 0 ? Integer.parseInt(args[0]) : JAMCloud.HOMEFOG;
+		int threadLimit = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int[] perDevice = {1, 10, 100, 1000, 10000};
+		if (args.length > 2){
+			perDevice = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				perDevice[i - 2] = Integer.parseInt(args[i]);
+		}
+		for (int n : perDevice){
+			double[] events = run(choice, n, true);
+			print("events", events);
+			if (n <= threadLimit){
+				double[] threads = run(choice, n, false);
+				print("threads", threads);
+				if (threads[3] != events[3] || Double.compare(threads[4], events[4]) != 0)
+					System.out.println("MISMATCH between the process and the event runs");
+			}
+		}
+	}
+
+	// Returns {applications, build ms, run ms, requests, mean response, MB live at the end of the run}
+	static double[] run(int choice, int perDevice, boolean events) throws IOException{
+		long start = System.nanoTime();
+		JAMCloud sim = new JAMCloud(choice, 0.5, 0.5, 1, perDevice, 0);
+		sim.eventDriven = events;
+		double build = (System.nanoTime() - start) / 1e6;
+
+		start = System.nanoTime();
+		sim.simulOneRun();
+		double run = (System.nanoTime() - start) / 1e6;
+
+		long requests = 0;
+		for (JAMCloud.Application a : sim.applicationList){
+			requests += a.nbTasks;
+		}
+		Runtime rt = Runtime.getRuntime();
+		System.gc();
+		double used = (rt.totalMemory() - rt.freeMemory()) / 1e6;
+		double mean = sim.meanResponse.numberObs() > 0 ? sim.meanResponse.average() : Double.NaN;
+		sim.dispose();
+		return new double[] {sim.applicationList.size(), build, run, requests, mean, used};
+	}
+
+	static void print(String mode, double[] r){
+		System.out.printf("%-8s %9.0f apps  build %9.1f ms  run %10.1f ms  %11.0f requests (%9.0f /s)  mean %.7f  %7.0f MB%n",
+				mode, r[0], r[1], r[2], r[3], 1000 * r[3] / r[2], r[4], r[5]);
+	}
+}
@@ -0,0 +1,152 @@
+package mcgill;
+
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+import umontreal.iro.lecuyer.randvar.RandomVariateGen;
+import umontreal.iro.lecuyer.randvar.UniformGen;
+import umontreal.iro.lecuyer.randvar.UniformIntGen;
+import umontreal.iro.lecuyer.randvar.WeibullGen;
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.simevents.Event;
+import umontreal.iro.lecuyer.simevents.Simulator;
+import umontreal.iro.lecuyer.simevents.eventlist.EventList;
+
+/*
+ * The hold model on every event list: n events are pending, and each hold removes the first one and
+ * adds it back a random delay later, as an application delaying on its service time. The delays are
+ * exponential, uniform, Weibull of shape 0.5 (the service times of JAMCloud are Weibull), bimodal
+ * (mostly short, a few long) and integers, whose many equal times check that every list keeps the
+ * events of the same time in the order they were added. With cancel, each hold also cancels a pending
+ * event picked at random and schedules it again, as Event.reschedule and the processes woken up or
+ * delayed again do, with exponential delays. Every list must remove the events in the same
+ * order. A run that takes longer than the budget stops there (its time is followed by *, and it is not
+ * compared), and the list is not run again on larger populations of these delays: DoublyLinked is
+ * linear in n, and BinaryTree too when many events share a time.
+ *
+ * Usage: java mcgill.EventListBench [holds] [budget per run, s] [population ...]
+ */
+public class EventListBench {
+	static final String[] LISTS = {"DoublyLinked", "SplayTree", "BinaryTree", "RedblackTree", "Henriksen", "CalendarQueue", "BinaryHeap"};
+	static final String[] DELAYS = {"exponential", "uniform", "weibull", "bimodal", "integer", "cancel"};
+	static final RandomStream stream = new MRG32k3a(); // restarted for every run, so every list gets the same delays
+
+	public static void main(String[] args) throws ReflectiveOperationException{
+		int holds = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		long budget = (long) (1e9 * (args.length > 1 ? Double.parseDouble(args[1]) : 20));
+		int[] populations = {10, 1000, 100000, 1000000};
+		if (args.length > 2){
+			populations = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				populations[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		// warms every list up before anything is timed
+		for (String list : LISTS)
+			for (int d = 0; d < DELAYS.length; d++)
+				hold(list, d, 1000, 200000, budget);
+
+		System.out.printf("%-12s %9s", "delays", "events");
+		for (String list : LISTS)
+			System.out.printf(" %13s", list);
+		System.out.println("   (ns per hold)");
+		for (int d = 0; d < DELAYS.length; d++){
+			boolean[] over = new boolean[LISTS.length];
+			for (int n : populations){
+				System.out.printf("%-12s %9d", DELAYS[d], n);
+				Long expected = null;
+				String mismatch = null;
+				for (int l = 0; l < LISTS.length; l++){
+					String list = LISTS[l];
+					if (over[l]){
+						System.out.printf(" %13s", "-");
+						continue;
+					}
+					long[] r = hold(list, d, n, holds, budget);
+					if (r[2] < holds){
+						over[l] = true;
+						System.out.printf(" %12.1f*", r[2] == 0 ? Double.NaN : (double) r[0] / r[2]);
+						continue;
+					}
+					System.out.printf(" %13.1f", (double) r[0] / holds);
+					if (expected == null)
+						expected = r[1];
+					else if (expected != r[1])
+						mismatch = list;
+				}
+				System.out.println();
+				if (mismatch != null)
+					System.out.println("MISMATCH: " + mismatch + " removed the events in another order");
+			}
+		}
+	}
+
+	// Returns {ns for the holds, hash of the order the events were removed in, holds done within the budget}
+	static long[] hold(String list, int delays, int n, int holds, long budget) throws ReflectiveOperationException{
+		EventList events = (EventList) Class.forName("umontreal.iro.lecuyer.simevents.eventlist." + list).getDeclaredConstructor().newInstance();
+		stream.resetStartStream();
+		RandomVariateGen gen = generator(delays, stream);
+		Simulator sim = new Simulator(events);
+		boolean cancel = DELAYS[delays].equals("cancel");
+		Hold[] all = new Hold[n];
+		long fill = System.nanoTime();
+		for (int i = 0; i < n; i++){
+			Hold ev = all[i] = new Hold(sim, i);
+			ev.at(delay(delays, gen, stream));
+			events.add(ev);
+			if ((i & 1023) == 0 && System.nanoTime() - fill > budget)
+				return new long[] {0, 0, 0};
+		}
+		long hash = 0;
+		long start = System.nanoTime();
+		for (int h = 0; h < holds; h++){
+			if ((h & 1023) == 0 && System.nanoTime() - start > budget)
+				return new long[] {System.nanoTime() - start, hash, h};
+			Hold ev = (Hold) events.removeFirst();
+			hash = 31 * hash + ev.id;
+			double now = ev.time();
+			ev.at(now + delay(delays, gen, stream));
+			events.add(ev);
+			if (cancel){
+				Hold other = all[stream.nextInt(0, n - 1)];
+				events.remove(other);
+				other.at(now + delay(delays, gen, stream));
+				events.add(other);
+			}
+		}
+		return new long[] {System.nanoTime() - start, hash, holds};
+	}
+
+	static RandomVariateGen generator(int delays, RandomStream stream){
+		switch (DELAYS[delays]){
+		case "exponential":
+		case "cancel":      return new ExponentialGen(stream, 1.0);
+		case "uniform":     return new UniformGen(stream, 0.0, 2.0);
+		case "weibull":     return new WeibullGen(stream, 0.5);
+		case "integer":     return new UniformIntGen(stream, 1, 10);
+		default:            return new UniformGen(stream, 0.0, 1.0);
+		}
+	}
+
+	static double delay(int delays, RandomVariateGen gen, RandomStream stream){
+		if (DELAYS[delays].equals("bimodal"))  // 95% around 0.1, 5% around 100
+			return stream.nextDouble() < 0.95 ? 0.2 * gen.nextDouble() : 200 * gen.nextDouble();
+		return gen.nextDouble();
+	}
+
+	static class Hold extends Event {
+		final int id;
+
+		Hold(Simulator sim, int id){
+			super(sim);
+			this.id = id;
+		}
+
+		// setTime refuses an event that is still scheduled, as one just removed from a list
+		void at(double time){
+			eventTime = time;
+		}
+
+		public void actions(){
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package mcgill;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.util.Chrono;
+
+/*
+ * Compares home fog selection for every device: the old HashMap and stream sort over all fogs,
+ * a single pass over the fogs, a FogGrid query, and the per-device cache used by selectHomeFog.
+ * Every grid answer is checked against the single pass before timing.
+ *
+ * Usage: java mcgill.FogGridBench [devices] [fogs] [rounds]
+ */
+public class FogGridBench {
+
+	static double sink = 0; // keeps the JIT from dropping the lookups
+	static final Creator.Latency LATENCY = new Creator.Latency();
+
+	public static void main(String[] args){
+		int nDevices = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int nFogs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		List<Fog> fogs = LinkTableBench.createFogs(nFogs);
+		List<Device> devices = createDevices(nDevices);
+		FogGrid grid = new FogGrid(fogs);
+
+		int mismatches = 0;
+		for (Device d : devices){
+			if (LATENCY.DFLatency(d, scan(d, fogs)) != LATENCY.DFLatency(d, grid.nearest(d.getDeviceLongitude(), d.getDeviceLatitude())))
+				mismatches++;
+		}
+		System.out.println(nDevices + " devices, " + nFogs + " fogs, " + mismatches + " grid answers differ from the scan");
+
+		// Warm every path up before timing
+		for (int r = 0; r < 2; r++){
+			sorted(devices, fogs, nDevices / 10);
+			scanAll(devices, fogs);
+			gridAll(devices, grid);
+		}
+
+		Chrono timer = new Chrono();
+		sorted(devices, fogs, nDevices);
+		double sortedRate = nDevices / Math.max(timer.getSeconds(), 1e-9);
+
+		timer.init();
+		for (int r = 0; r < rounds; r++)
+			scanAll(devices, fogs);
+		double scanRate = rounds * nDevices / Math.max(timer.getSeconds(), 1e-9);
+
+		timer.init();
+		for (int r = 0; r < rounds; r++)
+			gridAll(devices, grid);
+		double gridRate = rounds * nDevices / Math.max(timer.getSeconds(), 1e-9);
+
+		// The nearest fogs as selectHomeFog reads them: the first call per device searches, later ones hit the cache
+		timer.init();
+		for (Device d : devices)
+			sink += JAMCloud.nearestFogs(grid, d)[0].getId();
+		double firstRate = nDevices / Math.max(timer.getSeconds(), 1e-9);
+		timer.init();
+		for (int r = 0; r < rounds; r++)
+			for (Device d : devices)
+				sink += JAMCloud.nearestFogs(grid, d)[0].getId();
+		double cachedRate = rounds * nDevices / Math.max(timer.getSeconds(), 1e-9);
+
+		System.out.printf("hashmap + sort %15.0f lookups/s%n", sortedRate);
+		System.out.printf("single pass    %15.0f lookups/s%n", scanRate);
+		System.out.printf("grid query     %15.0f lookups/s%n", gridRate);
+		System.out.printf("first call     %15.0f lookups/s (grid k=%d, cached)%n", firstRate, JAMCloud.NEAREST_K);
+		System.out.printf("cached         %15.0f lookups/s%n", cachedRate);
+		if (sink == 42) System.out.println();
+	}
+
+	static List<Device> createDevices(int n){
+		RandomStream stream = new MRG32k3a();
+		List<Device> devices = new ArrayList<Device>();
+		for (int i = 0; i < n; i++){
+			devices.add(new Device(i + 1, -130 + 60 * stream.nextDouble(), 25 + 25 * stream.nextDouble(), 0));
+		}
+		return devices;
+	}
+
+	// What selectHomeFog did before the index: every fog into a HashMap, then a sorted stream
+	static void sorted(List<Device> devices, List<Fog> fogs, int count){
+		for (int i = 0; i < count; i++){
+			Device dev = devices.get(i);
+			HashMap<Fog, Double> myFogMap = new HashMap<Fog, Double>();
+			for (Fog f : fogs){
+				if (f != null)
+					myFogMap.put(f, LATENCY.DFLatency(dev, f));
+			}
+			Map<Fog, Double> closestFog = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(1).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+			sink += new ArrayList<>(closestFog.keySet()).get(0).getId();
+		}
+	}
+
+	static Fog scan(Device dev, List<Fog> fogs){
+		Fog home = null;
+		double best = Double.MAX_VALUE;
+		for (Fog f : fogs){
+			double latency = LATENCY.DFLatency(dev, f);
+			if (latency < best){
+				best = latency;
+				home = f;
+			}
+		}
+		return home;
+	}
+
+	static void scanAll(List<Device> devices, List<Fog> fogs){
+		for (Device d : devices)
+			sink += scan(d, fogs).getId();
+	}
+
+	static void gridAll(List<Device> devices, FogGrid grid){
+		for (Device d : devices)
+			sink += grid.nearest(d.getDeviceLongitude(), d.getDeviceLatitude()).getId();
+	}
+}
@@ -0,0 +1,152 @@
+package mcgill;
+
+import java.util.List;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Cost of the load-aware routings on FogLoad as the number of fogs grows: two requests per fog are in
+ * flight, and at every step one of them, picked at random, leaves its fog and a new one arrives at the
+ * fog the routing picks. JSQ, JIQ and least work read the load vector; the scan is JSQ looking at the
+ * load of every fog, as it would without the order kept by FogLoad. Along the runs, a tenth of the fogs
+ * fail and recover in turn, and the fogs FogLoad gives are checked against scans of the loads and work
+ * of the fogs up.
+ *
+ * Usage: java mcgill.FogLoadBench [steps] [fog counts...]
+ */
+public class FogLoadBench {
+	static final String[] ROUTINGS = {"jsq", "jsq scan", "power of 2", "jiq", "least work"};
+
+	static long sink = 0; // keeps the JIT from dropping the picks
+
+	public static void main(String[] args){
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int[] sizes = {10, 100, 1000, 10000};
+		if (args.length > 1){
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				sizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%7s", "fogs");
+		for (String r : ROUTINGS)
+			System.out.printf(" %12s", r);
+		System.out.println("   (ns per request)");
+		for (int k : sizes){
+			List<Fog> fogs = LinkTableBench.createFogs(k);
+			for (int r = 0; r < ROUTINGS.length; r++)
+				run(fogs, r, steps / 10); // warm up
+			System.out.printf("%7d", k);
+			long wrong = 0;
+			for (int r = 0; r < ROUTINGS.length; r++){
+				long[] result = run(fogs, r, r == 1 ? (int) Math.min(steps, 100000000L / k) : steps); // the scan is linear
+				System.out.printf(" %12.1f", (double) result[0] / result[2]);
+				wrong += result[1];
+			}
+			System.out.println();
+			if (wrong > 0)
+				System.out.println("MISMATCH: " + wrong + " fogs given by FogLoad differ from the scans");
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	// Returns {ns for the steps, fogs differing from the scans, steps}
+	static long[] run(List<Fog> fogs, int routing, int steps){
+		FogLoad loads = new FogLoad(fogs);
+		RandomStream stream = new MRG32k3a();
+		int k = fogs.size(), n = 2 * k;
+		Fog[] at = new Fog[n];
+		double[] service = new double[n];
+		for (int i = 0; i < n; i++){
+			at[i] = fogs.get(stream.nextInt(0, k - 1));
+			service[i] = -Math.log(stream.nextDouble());
+			loads.arrive(at[i], service[i]);
+		}
+		long wrong = 0;
+		long start = System.nanoTime();
+		for (int s = 0; s < steps; s++){
+			int i = stream.nextInt(0, n - 1);
+			loads.leave(at[i], service[i]);
+			Fog f;
+			switch (routing){
+			case 0:  f = loads.leastLoaded(stream); break;
+			case 1:  f = scan(loads, stream); break;
+			case 2:  f = powerOfTwo(loads, stream); break;
+			case 3:  f = loads.idle(stream);
+			         if (f == null) f = loads.any(stream);
+			         break;
+			default: f = loads.leastWork();
+			}
+			at[i] = f;
+			service[i] = -Math.log(stream.nextDouble());
+			loads.arrive(f, service[i]);
+			sink += f.ordinal;
+			if ((s & 4095) == 0){
+				long t = System.nanoTime();
+				wrong += check(loads, stream);
+				Fog down = fogs.get(stream.nextInt(0, k - 1)), up = fogs.get(stream.nextInt(0, k - 1));
+				if (loads.live() > k - k / 10)
+					loads.fail(down);
+				loads.recover(up);
+				start += System.nanoTime() - t;
+			}
+		}
+		return new long[] {System.nanoTime() - start, wrong, steps};
+	}
+
+	static Fog scan(FogLoad loads, RandomStream stream){
+		int best = -1, tied = 0;
+		for (int j = 0; j < loads.size(); j++){
+			if (loads.failed[j])
+				continue;
+			if (best < 0 || loads.load[j] < loads.load[best]){
+				best = j;
+				tied = 1;
+			}
+			else if (loads.load[j] == loads.load[best] && stream.nextInt(0, tied++) == 0)
+				best = j;
+		}
+		return loads.fogs[best];
+	}
+
+	static Fog powerOfTwo(FogLoad loads, RandomStream stream){
+		int a = stream.nextInt(0, loads.live() - 1), b = stream.nextInt(0, loads.live() - 2);
+		if (b >= a)
+			b++;
+		Fog f = loads.live(a), g = loads.live(b);
+		if (loads.load(f) != loads.load(g))
+			return loads.load(f) < loads.load(g) ? f : g;
+		return stream.nextDouble() < 0.5 ? f : g;
+	}
+
+	// The least loaded, idle and least work fogs against scans
+	static int check(FogLoad loads, RandomStream stream){
+		int least = Integer.MAX_VALUE, idle = 0;
+		double work = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < loads.size(); j++){
+			if (loads.failed[j])
+				continue;
+			least = Math.min(least, loads.load[j]);
+			if (loads.load[j] == 0)
+				idle++;
+			work = Math.min(work, loads.work(loads.fogs[j]));
+		}
+		int wrong = 0;
+		Fog f = loads.leastLoaded(stream);
+		if (!loads.isUp(f) || loads.load(f) != least)
+			wrong++;
+		f = loads.idle(stream);
+		if ((f == null) != (idle == 0) || (f != null && (!loads.isUp(f) || loads.load(f) != 0)))
+			wrong++;
+		f = loads.leastWork();
+		if (!loads.isUp(f) || loads.work(f) != work)
+			wrong++;
+		for (int p = 0; p < loads.live(); p++){
+			if (!loads.isUp(loads.live(p)))
+				wrong++;
+		}
+		return wrong;
+	}
+}
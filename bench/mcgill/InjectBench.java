@@ -0,0 +1,122 @@
+package mcgill;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.simevents.Event;
+import umontreal.iro.lecuyer.simevents.Simulator;
+
+/*
+ * Events injected into a running simulation by other threads (Simulator.inject). The simulation runs
+ * chains of events with exponential delays; each producer thread injects its samples, time-stamped
+ * along the horizon, as fast as it can. Every sample must run once, after the samples injected before
+ * it by the same producer, and never before its time stamp; a sample whose time has already passed
+ * when it is added runs at the current time (late). The same chains run first without producers.
+ *
+ * Usage: java mcgill.InjectBench [producers] [samples per producer] [chains] [horizon]
+ */
+public class InjectBench {
+
+	public static void main(String[] args) throws InterruptedException{
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int samples = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int chains = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		double horizon = args.length > 3 ? Double.parseDouble(args[3]) : 20000;
+
+		for (int r = 0; r < 2; r++){
+			Run alone = new Run(chains, horizon, 0, 0);
+			alone.run();
+			System.out.printf("no producer   %10d chain events %8.1f ms (%6.2f M/s)%n",
+					alone.ticks, alone.ms, alone.ticks / alone.ms / 1e3);
+			Run fed = new Run(chains, horizon, producers, samples);
+			fed.run();
+			System.out.printf("%d producers   %10d chain events %8.1f ms (%6.2f M/s)  %d samples (%.2f M/s), %d late%n",
+					producers, fed.ticks, fed.ms, fed.ticks / fed.ms / 1e3, fed.received, fed.received / fed.ms / 1e3, fed.late);
+			if (fed.received != (long) producers * samples || fed.disorder > 0 || fed.early > 0)
+				System.out.printf("MISMATCH: %d samples of %d, %d out of order, %d before their time%n",
+						fed.received, (long) producers * samples, fed.disorder, fed.early);
+		}
+	}
+
+	static class Run {
+		final Simulator sim = new Simulator();
+		final RandomStream stream = new MRG32k3a();
+		final int chains, producers, samples;
+		final double horizon;
+		final int[] last;          // last sample run, per producer
+		final AtomicInteger done = new AtomicInteger(); // producers done injecting
+		long ticks, received, late, early, disorder;
+		double ms;
+
+		Run(int chains, double horizon, int producers, int samples){
+			this.chains = chains;
+			this.horizon = horizon;
+			this.producers = producers;
+			this.samples = samples;
+			last = new int[producers];
+		}
+
+		void run() throws InterruptedException{
+			sim.init();
+			for (int c = 0; c < chains; c++)
+				new Tick().schedule(-Math.log(stream.nextDouble()));
+			Thread[] threads = new Thread[producers];
+			for (int p = 0; p < producers; p++){
+				final int id = p;
+				threads[p] = new Thread(){
+					public void run(){
+						for (int k = 1; k <= samples; k++)
+							sim.inject(new Sample(id, k), horizon * k / samples);
+						done.incrementAndGet();
+					}
+				};
+			}
+			long start = System.nanoTime();
+			for (Thread t : threads)
+				t.start();
+			sim.start();
+			ms = (System.nanoTime() - start) / 1e6;
+			for (Thread t : threads)
+				t.join();
+		}
+
+		// A chain goes on until the horizon, and after it as long as samples are expected
+		class Tick extends Event {
+			Tick(){
+				super(Run.this.sim);
+			}
+
+			public void actions(){
+				ticks++;
+				if (sim.time() < horizon || done.get() < producers || received < (long) producers * samples)
+					schedule(-Math.log(stream.nextDouble()));
+				else
+					sim.stop();
+			}
+		}
+
+		class Sample extends Event {
+			final int producer, seq;
+			final double stamp;
+
+			Sample(int producer, int seq){
+				super(Run.this.sim);
+				this.producer = producer;
+				this.seq = seq;
+				stamp = horizon * seq / samples;
+			}
+
+			public void actions(){
+				received++;
+				if (seq != last[producer] + 1)
+					disorder++;
+				last[producer] = seq;
+				if (sim.time() < stamp)
+					early++;
+				else if (sim.time() > stamp)
+					late++;
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package mcgill;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.util.Chrono;
+
+/*
+ * Compares the link lookups done per request by performTask, first with the old
+ * linear scan over fogLinks and then with JAMCloud.LinkTable, as the number of fogs grows.
+ * Each simulated request looks up the forward and the return link, like the remote branch of performTask.
+ *
+ * Usage: java mcgill.LinkTableBench [fogCounts...]
+ */
+public class LinkTableBench {
+
+	static final long SCAN_BUDGET = 400000000L; // link comparisons allowed for the linear scan per fog count
+	static final int TABLE_REQUESTS = 5000000;
+
+	static double sink = 0; // keeps the JIT from dropping the lookups
+
+	public static void main(String[] args){
+		int[] sizes = {25, 50, 100, 200, 400, 800};
+		if (args.length > 0){
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("fogs      links      scan req/s     table req/s    speedup");
+		for (int n : sizes){
+			List<Fog> fogs = createFogs(n);
+			List<JAMCloud.Link> fogLinks = new ArrayList<JAMCloud.Link>();
+			for (int source = 0; source < n - 1; source++){
+				for (int destination = source + 1; destination < n; destination++){
+					fogLinks.add(new JAMCloud.Link(fogs.get(source), fogs.get(destination), 1000));
+				}
+			}
+			JAMCloud.LinkTable table = new JAMCloud.LinkTable(fogs, fogLinks);
+
+			int scanRequests = (int) Math.max(200, Math.min(TABLE_REQUESTS, SCAN_BUDGET / (2L * fogLinks.size())));
+			int[] pairs = randomPairs(n, TABLE_REQUESTS);
+
+			// Warm both paths up before timing
+			scan(fogs, fogLinks, pairs, Math.min(scanRequests, 1000));
+			lookup(fogs, table, pairs, TABLE_REQUESTS / 10);
+
+			Chrono timer = new Chrono();
+			scan(fogs, fogLinks, pairs, scanRequests);
+			double scanRate = scanRequests / Math.max(timer.getSeconds(), 1e-9);
+
+			timer.init();
+			lookup(fogs, table, pairs, TABLE_REQUESTS);
+			double tableRate = TABLE_REQUESTS / Math.max(timer.getSeconds(), 1e-9);
+
+			System.out.printf("%4d %10d %15.0f %15.0f %10.1f%n", n, fogLinks.size(), scanRate, tableRate, tableRate / scanRate);
+		}
+		if (sink == 42) System.out.println();
+	}
+
+	// Fogs laid out like Creator.getNodeEdge builds them: a located node wrapped in a capacitated fog
+	static List<Fog> createFogs(int n){
+		RandomStream stream = new MRG32k3a();
+		List<Fog> fogs = new ArrayList<Fog>();
+		for (int i = 0; i < n; i++){
+			Fog located = new Fog(i + 1, -130 + 60 * stream.nextDouble(), 25 + 25 * stream.nextDouble());
+			Fog f = new Fog(i + 1, located, 10, 10);
+			f.ordinal = i;
+			fogs.add(f);
+		}
+		return fogs;
+	}
+
+	static int[] randomPairs(int n, int requests){
+		RandomStream stream = new MRG32k3a();
+		int[] pairs = new int[2 * requests];
+		for (int r = 0; r < requests; r++){
+			int a = stream.nextInt(0, n - 1), b = stream.nextInt(0, n - 2);
+			if (b >= a) b++;
+			pairs[2 * r] = a;
+			pairs[2 * r + 1] = b;
+		}
+		return pairs;
+	}
+
+	// The lookup performTask did before the link table: two full scans per remote request
+	static void scan(List<Fog> fogs, List<JAMCloud.Link> fogLinks, int[] pairs, int requests){
+		for (int r = 0; r < requests; r++){
+			Fog source = fogs.get(pairs[2 * r]), destination = fogs.get(pairs[2 * r + 1]);
+			for (int pass = 0; pass < 2; pass++){
+				for (JAMCloud.Link i : fogLinks){
+					if (source.equals(i.getSource()) && destination.equals(i.getDestination()) || source.equals(i.getDestination()) && destination.equals(i.getSource())){
+						sink += i.FogLatency();
+					}
+				}
+			}
+		}
+	}
+
+	static void lookup(List<Fog> fogs, JAMCloud.LinkTable table, int[] pairs, int requests){
+		for (int r = 0; r < requests; r++){
+			Fog source = fogs.get(pairs[2 * r]), destination = fogs.get(pairs[2 * r + 1]);
+			for (int pass = 0; pass < 2; pass++){
+				JAMCloud.Link i = table.get(source, destination);
+				if (i != null)
+					sink += i.FogLatency();
+			}
+		}
+	}
+}
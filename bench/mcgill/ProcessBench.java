@@ -0,0 +1,114 @@
+package mcgill;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import umontreal.iro.lecuyer.examples.BankProc;
+import umontreal.iro.lecuyer.examples.QueueProc;
+import umontreal.iro.lecuyer.simprocs.VirtualProcessSimulator;
+
+/*
+ * The QueueProc and BankProc examples on every process simulator. Each simulator runs in a JVM of its
+ * own, selected with -Dssj.processSimulator as any program selects it, which times the example and
+ * hashes what it printed; every simulator must print the same. A simulator that fails or runs out of
+ * time (DSOLProcessSimulator without the DSOL interpreter on the class path) is reported and skipped.
+ * VirtualProcessSimulator runs on virtual threads from Java 21, on platform threads before.
+ *
+ * Usage: java mcgill.ProcessBench [QueueProc horizon] [BankProc days] [repetitions]
+ */
+public class ProcessBench {
+	static final String[] SIMULATORS = {
+		"umontreal.iro.lecuyer.simprocs.ThreadProcessSimulator",
+		"umontreal.iro.lecuyer.simprocs.DSOLProcessSimulator",
+		"umontreal.iro.lecuyer.simprocs.VirtualProcessSimulator"};
+	static final long TIMEOUT = 600; // seconds per simulator and example
+
+	public static void main(String[] args) throws IOException, InterruptedException{
+		if (args.length > 0 && args[0].equals("-run")){
+			run(args[1], args[2], Integer.parseInt(args[3]));
+			return;
+		}
+		String horizon = args.length > 0 ? args[0] : "200000";
+		String days = args.length > 1 ? args[1] : "2000";
+		String reps = args.length > 2 ? args[2] : "3";
+		System.out.println("virtual threads: " + VirtualProcessSimulator.isVirtual() + " (Java " + System.getProperty("java.version") + ")");
+		compare("QueueProc", horizon, reps);
+		compare("BankProc", days, reps);
+	}
+
+	static void compare(String example, String arg, String reps) throws IOException, InterruptedException{
+		String expected = null;
+		for (String simulator : SIMULATORS){
+			String name = simulator.substring(simulator.lastIndexOf('.') + 1);
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add("-Dssj.processSimulator=" + simulator);
+			command.add(ProcessBench.class.getName());
+			command.add("-run");
+			command.add(example);
+			command.add(arg);
+			command.add(reps);
+			Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+			String last = null;
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))){
+				String line;
+				while ((line = in.readLine()) != null)
+					last = line;
+			}
+			if (!p.waitFor(TIMEOUT, TimeUnit.SECONDS)){
+				p.destroyForcibly();
+				System.out.printf("%-10s %-24s timed out after %d s%n", example + " " + arg, name, TIMEOUT);
+				continue;
+			}
+			String[] result = (last == null) ? new String[0] : last.trim().split(" ");
+			if (p.exitValue() != 0 || result.length != 3 || !result[0].equals("ok")){
+				System.out.printf("%-10s %-24s failed: %s%n", example + " " + arg, name, last);
+				continue;
+			}
+			System.out.printf("%-10s %-24s %10s ms  peak platform threads %6s%n", example + " " + arg, name, result[1], result[2].split(":")[0]);
+			String hash = result[2].split(":")[1];
+			if (expected == null)
+				expected = hash;
+			else if (!expected.equals(hash))
+				System.out.println("MISMATCH: " + name + " printed another report");
+		}
+	}
+
+	// In the child JVM: runs the example reps times; prints "ok" best ms peakThreads:hash of the last report
+	static void run(String example, String arg, int reps){
+		PrintStream out = System.out;
+		double best = Double.MAX_VALUE;
+		String report = null;
+		try {
+			for (int r = 0; r < reps; r++){
+				ByteArrayOutputStream printed = new ByteArrayOutputStream();
+				System.setOut(new PrintStream(printed, true));
+				long start = System.nanoTime();
+				if (example.equals("QueueProc"))
+					QueueProc.main(new String[] {arg});
+				else
+					BankProc.main(new String[] {arg});
+				best = Math.min(best, (System.nanoTime() - start) / 1e6);
+				System.setOut(out);
+				report = printed.toString();
+			}
+		} catch (Throwable e){
+			System.setOut(out);
+			out.println("failed " + e);
+			System.exit(1);
+		}
+		int threads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+		out.printf("ok %.1f %d:%08x%n", best, threads, report.hashCode());
+		System.exit(0); // threads of processes left suspended when the run stopped
+	}
+}
@@ -0,0 +1,101 @@
+package mcgill;
+
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+import umontreal.iro.lecuyer.randvar.RandomVariateGen;
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.simevents.Event;
+import umontreal.iro.lecuyer.simevents.Sim;
+import umontreal.iro.lecuyer.simprocs.Resource;
+import umontreal.iro.lecuyer.simprocs.SimProcess;
+
+/*
+ * Replicated requests on a single fog resource at high utilization, like VFR sends them:
+ * every task puts one copy in the local queue and one in the remote queue, with the same task id,
+ * and the resource serves both queues with the alpha interleave of Resource.release(n, String).
+ * Each release matches the records of one queue against the other, so the cost per task shows
+ * how matching scales with the queue lengths.
+ *
+ * Usage: java mcgill.ResourceQueueBench [tasks] [utilizations...]
+ */
+public class ResourceQueueBench {
+	static final double ALPHA = 0.5; // the remote queue goes first whenever both queues hold records
+
+	Resource fog;
+	RandomVariateGen genArr, genServ;
+	int device = 1, seq = 0, done = 0;
+
+	public ResourceQueueBench(double rho){
+		// Two copies of every task, unit mean service: the copies alone load the server at rho
+		genArr = new ExponentialGen(new MRG32k3a(), rho / 2);
+		genServ = new ExponentialGen(new MRG32k3a(), 1.0);
+	}
+
+	public void simulateOneRun(double timeHorizon){
+		SimProcess.init();
+		fog = new Resource(1, "Fog");
+		fog.setAlpha(ALPHA);
+		fog.setStatCollecting(true);
+		new EndOfSim().schedule(timeHorizon);
+		new Arrival().schedule(genArr.nextDouble());
+		Sim.start();
+	}
+
+	class Arrival extends Event {
+		public void actions(){
+			long id = Util.taskId(device, seq++);
+			new Copy(id, JAMCloud.LOCAL).schedule(0);
+			new Copy(id, JAMCloud.REMOTE).schedule(0);
+			new Arrival().schedule(genArr.nextDouble());
+		}
+	}
+
+	class Copy extends SimProcess {
+		long id;
+		int queue;
+
+		Copy(long id, int queue){
+			this.id = id;
+			this.queue = queue;
+		}
+
+		public void actions(){
+			double serv = genServ.nextDouble();
+			fog.request(1, queue, JAMCloud.REAL, id, serv, Sim.time());
+			delay(serv);
+			fog.release(1, "S");
+			done++;
+		}
+	}
+
+	class EndOfSim extends Event {
+		public void actions(){
+			Sim.stop();
+		}
+	}
+
+	public static void main(String[] args){
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		double[] rhos = {0.8, 0.95, 0.99, 1.05, 1.2};
+		if (args.length > 1){
+			rhos = new double[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				rhos[i - 1] = Double.parseDouble(args[i]);
+		}
+
+		// Warm up on a short lightly loaded run
+		new ResourceQueueBench(0.5).simulateOneRun(2000);
+
+		System.out.println("   rho   copies done   local queue  remote queue    us per copy");
+		for (double rho : rhos){
+			ResourceQueueBench bench = new ResourceQueueBench(rho);
+			// Wall clock: with thread processes the work runs outside the main thread, which Chrono would time
+			long start = System.nanoTime();
+			bench.simulateOneRun(2.0 * tasks / rho);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%6.2f %12d %13.1f %13.1f %14.2f%n", rho, bench.done,
+					bench.fog.waitList().statSize().average(), bench.fog.remoteWaitList().statSize().average(),
+					1e6 * seconds / Math.max(bench.done, 1));
+		}
+		System.exit(0); // copies still queued at the horizon hold suspended process threads
+	}
+}
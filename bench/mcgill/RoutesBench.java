@@ -0,0 +1,138 @@
+package mcgill;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Cost of the shortest routes between fogs (Routes) on generated topologies of growing size: the time
+ * to build them, one Dijkstra per fog, and the lookups a request makes, a route length and the edges of
+ * a route. A topology has nodes spread over the area of Cogentco, each linked to its nearest and second
+ * nearest node among the ones before it, so it is connected; every tenth node is a fog. On the smallest
+ * topology the route lengths are checked against Floyd-Warshall over all the nodes.
+ *
+ * Usage: java mcgill.RoutesBench [lookups] [node counts...]
+ */
+public class RoutesBench {
+
+	static long sink = 0; // keeps the JIT from dropping the lookups
+
+	public static void main(String[] args) throws IOException{
+		int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+		int[] sizes = {300, 1000, 3000, 10000};
+		if (args.length > 1){
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				sizes[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("nodes    edges    fogs   build ms   mean hops   lengths/s      routes/s");
+		for (int s = 0; s < sizes.length; s++){
+			int n = sizes[s];
+			Topology t = generate(n);
+			int[] fogs = new int[n / 10];
+			for (int i = 0; i < fogs.length; i++)
+				fogs[i] = t.ordinal(10 * i + 1);
+
+			long start = System.nanoTime();
+			Routes routes = new Routes(t, fogs);
+			double build = (System.nanoTime() - start) / 1e6;
+
+			int k = fogs.length;
+			RandomStream stream = new MRG32k3a();
+			int[] pairs = new int[2 * 4096];
+			for (int i = 0; i < pairs.length; i++)
+				pairs[i] = stream.nextInt(0, k - 1);
+
+			start = System.nanoTime();
+			double length = 0;
+			for (int r = 0; r < lookups; r++){
+				int p = 2 * (r & 4095);
+				length += routes.distance(pairs[p], pairs[p + 1]);
+			}
+			double lengths = lookups / ((System.nanoTime() - start) / 1e9);
+			sink += (long) length;
+
+			int[] route = new int[t.getSize()];
+			long hops = 0;
+			start = System.nanoTime();
+			for (int r = 0; r < lookups / 10; r++){
+				int p = 2 * (r & 4095);
+				hops += routes.route(pairs[p], pairs[p + 1], route);
+			}
+			double found = lookups / 10 / ((System.nanoTime() - start) / 1e9);
+			sink += hops;
+
+			System.out.printf("%6d %8d %7d %10.1f %11.2f %11.0f %13.0f%n", t.getSize(), t.getEdgeCount(), k, build, (double) hops / (lookups / 10), lengths, found);
+			if (s == 0)
+				check(t, routes);
+		}
+	}
+
+	// Route lengths against Floyd-Warshall over every node
+	static void check(Topology t, Routes routes){
+		int n = t.getSize();
+		double[][] d = new double[n][n];
+		for (int i = 0; i < n; i++){
+			Arrays.fill(d[i], Double.POSITIVE_INFINITY);
+			d[i][i] = 0;
+		}
+		for (int e = 0; e < t.getEdgeCount(); e++){
+			int a = t.getSourceOrdinal(e), b = t.getTargetOrdinal(e);
+			double l = Math.hypot(t.getLongitude(a) - t.getLongitude(b), t.getLatitude(a) - t.getLatitude(b));
+			d[a][b] = d[b][a] = Math.min(d[a][b], l);
+		}
+		for (int m = 0; m < n; m++)
+			for (int i = 0; i < n; i++)
+				for (int j = 0; j < n; j++)
+					if (d[i][m] + d[m][j] < d[i][j])
+						d[i][j] = d[i][m] + d[m][j];
+		int wrong = 0, k = routes.getFogCount();
+		for (int a = 0; a < k; a++)
+			for (int b = 0; b < k; b++)
+				if (Math.abs(routes.distance(a, b) - d[routes.node(a)][routes.node(b)]) > 1e-9)
+					wrong++;
+		if (wrong > 0)
+			System.out.println("MISMATCH: " + wrong + " route lengths differ from Floyd-Warshall");
+	}
+
+	// n nodes with ids 1..n, each linked to its two nearest among the nodes before it
+	static Topology generate(int n) throws IOException{
+		RandomStream stream = new MRG32k3a();
+		double[] lng = new double[n], lat = new double[n];
+		File f = File.createTempFile("topology", ".gml");
+		f.deleteOnExit();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(f))){
+			out.write("graph [\n");
+			for (int i = 0; i < n; i++){
+				lng[i] = -130 + 60 * stream.nextDouble();
+				lat[i] = 25 + 25 * stream.nextDouble();
+				out.write("  node [\n    id " + (i + 1) + "\n    Longitude " + lng[i] + "\n    Latitude " + lat[i] + "\n  ]\n");
+			}
+			for (int i = 1; i < n; i++){
+				int first = -1, second = -1;
+				double d1 = Double.MAX_VALUE, d2 = Double.MAX_VALUE;
+				for (int j = 0; j < i; j++){
+					double d = Math.hypot(lng[i] - lng[j], lat[i] - lat[j]);
+					if (d < d1){
+						second = first; d2 = d1;
+						first = j; d1 = d;
+					}
+					else if (d < d2){
+						second = j; d2 = d;
+					}
+				}
+				out.write("  edge [\n    source " + (i + 1) + "\n    target " + (first + 1) + "\n  ]\n");
+				if (second >= 0)
+					out.write("  edge [\n    source " + (i + 1) + "\n    target " + (second + 1) + "\n  ]\n");
+			}
+			out.write("]\n");
+		}
+		return Topology.read(f.getPath());
+	}
+}
@@ -0,0 +1,120 @@
+package mcgill;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Startup cost of reading devices, before and after the topology is parsed once.
+ * The old path parsed Cogentco.gml again for every device, appended the nodes and edges to lists
+ * that kept growing, and scanned the nodes for every edge; it is replayed here on a few devices.
+ * The new path is Creator.createNewDevicesFromFile on a generated device file.
+ * The first old call, made before the lists held any duplicates, must find the same edge latency
+ * mean and deviation as the topology; later calls drifted as the lists grew.
+ *
+ * Usage: java mcgill.TopologyBench [devices] [old path devices]   (run where Cogentco.gml is)
+ */
+public class TopologyBench {
+
+	static double sink = 0;
+
+	public static void main(String[] args) throws IOException{
+		int nDevices = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int nOld = args.length > 1 ? Integer.parseInt(args[1]) : 40; // the old path is cubic: 200 devices take minutes
+
+		Util.InputMap map = new Util.InputMap();
+		Util.SourceTarget edges = new Util.SourceTarget();
+		double[] first = null;
+		long start = System.nanoTime();
+		for (int i = 0; i < nOld; i++){
+			double[] old = oldEdgeLatencies(map, edges);
+			if (first == null)
+				first = old;
+			sink += old[0];
+			if (i + 1 == nOld / 2)
+				System.out.printf("old path    %8d devices %10.1f ms%n", i + 1, (System.nanoTime() - start) / 1e6);
+		}
+		System.out.printf("old path    %8d devices %10.1f ms (%d nodes, %d edges held)%n", nOld, (System.nanoTime() - start) / 1e6, map.getSize(), edges.getSize());
+
+		File devices = File.createTempFile("devices", ".txt");
+		devices.deleteOnExit();
+		writeDevices(devices, nDevices);
+
+		start = System.nanoTime();
+		Topology t = Creator.topology();
+		double parse = (System.nanoTime() - start) / 1e6;
+		List<Device> created = Creator.createNewDevicesFromFile(devices.getPath());
+		double total = (System.nanoTime() - start) / 1e6;
+		System.out.printf("topology    %8d nodes   %10.1f ms%n", t.getSize(), parse);
+		System.out.printf("new path    %8d devices %10.1f ms (%.3f us per device)%n", created.size(), total, 1000 * total / created.size());
+
+		System.out.printf("edge latency mean %.9f / %.9f, deviation %.9f / %.9f%n", first[1], t.getLatencyMean(), first[2], t.getLatencyStdev());
+		if (first[1] != t.getLatencyMean() || first[2] != t.getLatencyStdev())
+			System.out.println("MISMATCH between the old and the new edge latencies");
+		if (sink == 42) System.out.println();
+	}
+
+	static void writeDevices(File file, int n) throws IOException{
+		RandomStream stream = new MRG32k3a();
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))){
+			for (int i = 1; i <= n; i++){
+				out.write(i + " " + (-130 + 60 * stream.nextDouble()) + " " + (25 + 25 * stream.nextDouble()) + "\n");
+			}
+		}
+	}
+
+	// What calEdgeLatencies did for every device: parse the file into the shared lists, then scan them; returns {draw, mean, stdev}
+	static double[] oldEdgeLatencies(Util.InputMap map, Util.SourceTarget edges) throws IOException{
+		int id = -1, source = -1, target = -1;
+		double lng = 0, lat = 0;
+		try (BufferedReader bufferedReader = new BufferedReader(new FileReader(Creator.FILENAME))){
+			String currentLine;
+			while ((currentLine = bufferedReader.readLine()) != null){
+				currentLine = currentLine.trim();
+				if (currentLine.startsWith("id")) id = Integer.parseInt(currentLine.split(" ")[1]);
+				if (currentLine.startsWith("Longitude")) lng = Double.parseDouble(currentLine.split(" ")[1]);
+				if (currentLine.startsWith("Latitude")) lat = Double.parseDouble(currentLine.split(" ")[1]);
+				if (id != -1 && lng != 0 && lat != 0){
+					map.insert(id, lat, lng);
+					id = -1; lng = 0; lat = 0;
+				}
+				if (currentLine.startsWith("source")) source = Integer.parseInt(currentLine.split(" ")[1]);
+				if (currentLine.startsWith("target")) target = Integer.parseInt(currentLine.split(" ")[1]);
+				if (source != -1 && target != -1){
+					edges.insert(source, target);
+					source = -1; target = -1;
+				}
+			}
+		}
+
+		ArrayList<Double> numbers = new ArrayList<Double>();
+		double srcLong = 0, srcLat = 0, tarLong = 0, tarLat = 0;
+		Util.Latency myLat = new Util.Latency();
+		for (int i = 0; i < edges.getSize(); i++){
+			int src = edges.getSource(i);
+			int dest = edges.getTarget(i);
+			for (int j = 0; j < map.getSize(); j++){
+				if (map.getId(j) == src){
+					srcLong = map.getLong(j);
+					srcLat = map.getLat(j);
+				}
+				if (map.getId(j) == dest){
+					tarLong = map.getLong(j);
+					tarLat = map.getLat(j);
+				}
+			}
+			numbers.add(myLat.queueLatency(srcLong, srcLat, tarLong, tarLat));
+		}
+		double mean = myLat.meanLatency(numbers);
+		double stdev = myLat.stdLatency(numbers);
+		return new double[] {myLat.deviceLatency(), mean, stdev};
+	}
+}
@@ -0,0 +1,114 @@
+package mcgill;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Reading a task_events trace, before and after TraceReader. The old path is what
+ * Util.Compress.fileSorter did: split every line, parse the fields into Strings and numbers, write
+ * them to a text output file and store them in a TaskCompressor. The new path streams the mapped
+ * file through a TraceReader and keeps nothing. Both must find the same records and sums.
+ * The generated trace has a few lines of the wrong width, which both paths skip.
+ *
+ * Usage: java mcgill.TraceBench [lines]
+ */
+public class TraceBench {
+
+	public static void main(String[] args) throws IOException{
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		File trace = File.createTempFile("task_events", ".csv");
+		trace.deleteOnExit();
+		write(trace, lines);
+		System.out.printf("trace       %10d lines %8.1f MB%n", lines, trace.length() / 1e6);
+
+		long start = System.nanoTime();
+		double[] old = oldPath(trace);
+		double oldMs = (System.nanoTime() - start) / 1e6;
+		System.out.printf("old path    %10.0f records %10.1f ms%n", old[0], oldMs);
+
+		start = System.nanoTime();
+		double[] now = newPath(trace);
+		double newMs = (System.nanoTime() - start) / 1e6;
+		System.out.printf("TraceReader %10.0f records %10.1f ms (%.1f MB/s)%n", now[0], newMs, trace.length() / 1e3 / newMs);
+
+		for (int i = 0; i < old.length; i++){
+			if (old[i] != now[i])
+				System.out.println("MISMATCH in sum " + i + ": " + old[i] + " / " + now[i]);
+		}
+	}
+
+	// Google trace layout: time,missing,job id,task index,machine,event,user,class,priority,cpu,memory,disk,constraint
+	static void write(File file, int n) throws IOException{
+		RandomStream stream = new MRG32k3a();
+		long time = 600026913;
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))){
+			for (int i = 0; i < n; i++){
+				time += (long) (1000 * stream.nextDouble());
+				if (i % 1000 == 999){
+					out.write(time + ",,0,0\n");
+					continue;
+				}
+				out.write(time + ",," + (3418309 + i / 50) + "," + (i % 50) + ",," + (i % 5) + ",user" + (i % 7) + ",3,9,"
+						+ (float) (0.125 * stream.nextDouble()) + "," + (float) (0.1 * stream.nextDouble()) + ","
+						+ (float) (0.001 * stream.nextDouble()) + ",0\n");
+			}
+		}
+	}
+
+	// fileSorter(fileInput, fileOutput, 4) as it was; returns {records, time, cpu, memory, disk} sums
+	static double[] oldPath(File file) throws IOException{
+		double[] sums = new double[5];
+		Util.TaskCompressor task = new Util.TaskCompressor();
+		File output = File.createTempFile("task_output", ".txt");
+		output.deleteOnExit();
+		try (BufferedWriter bWriter = new BufferedWriter(new FileWriter(output, false));
+				BufferedReader bReader = new BufferedReader(new FileReader(file))){
+			String sCrnttLine;
+			String[] splits;
+			while ((sCrnttLine = bReader.readLine()) != null){
+				splits = sCrnttLine.split(",");
+				if (splits.length == 13){
+					double T_time = Double.parseDouble(splits[0]) / 10000000;
+					double jobID = Double.parseDouble(splits[2]);
+					float T_CPURequest = Float.parseFloat(splits[9]);
+					float T_MEMRequest = Float.parseFloat(splits[10]);
+					float T_DiskRequest = Float.parseFloat(splits[11]);
+					if (T_time != 0){
+						bWriter.write(T_time + " " + jobID + " " + T_CPURequest + " " + T_MEMRequest + " " + T_DiskRequest);
+						bWriter.write("\n");
+						task.insert(T_time, jobID, T_CPURequest, T_MEMRequest, T_DiskRequest);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < task.getSize(); i++){
+			sums[0]++;
+			sums[1] += task.getTime(i);
+			sums[2] += task.getNumCPU(i);
+			sums[3] += task.getMem(i);
+			sums[4] += task.getDisk(i);
+		}
+		return sums;
+	}
+
+	static double[] newPath(File file) throws IOException{
+		double[] sums = new double[5];
+		try (TraceReader trace = TraceReader.tasks(file.getPath())){
+			while (trace.next()){
+				sums[0]++;
+				sums[1] += trace.getTime();
+				sums[2] += trace.getCpu();
+				sums[3] += trace.getMemory();
+				sums[4] += trace.getDisk();
+			}
+		}
+		return sums;
+	}
+}
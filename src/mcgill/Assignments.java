@@ -0,0 +1,248 @@
+package mcgill;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Device to home/pool fog assignments produced by the allocation optimizer (ATwo.txt, AOne.txt).
+ * The file is read once; every line is kept as a (device, home, pool) int triple, sorted by device
+ * and then by line, and lookups binary-search them and resolve fog ids through an array, so a
+ * request does no I/O and no scan over the fogs.
+ *
+ * As the per-request parser did, the home of a device is the one of its last line whose home fog
+ * is in the run, and likewise for its pool: a later line only overrides an earlier one when its fog
+ * resolves. Which fogs resolve is only known when the file is loaded for a run, so nothing that
+ * depends on them is stored.
+ *
+ * The rows live either in a heap buffer (text files) or in a memory-mapped binary file, which is
+ * meant for assignment files with millions of devices. Binary layout, big-endian ints:
+ *   MAGIC, line count n, n rows (device, home, pool) sorted by device then line,
+ *   n pairs (home, pool) in file order.
+ * The pairs in file order give the pool choice used by selectHomeAndPoolFogs2 for each home fog.
+ */
+public class Assignments {
+	public static final int MAGIC = 0x4a414d32; // "JAM2"
+	public static final int NONE = -1;
+
+	IntBuffer rows; // (device, home, pool) triples sorted by device, then line
+	IntBuffer pairs; // (home, pool) of every line in file order
+	int size; // lines
+	Fog[] fogById;
+	int[] fallbackPool; // indexed by home fog id, pool id picked by selectHomeAndPoolFogs2 or NONE
+
+	// rows as above, and lines, the (home, pool) pairs of the size lines in file order
+	private Assignments(IntBuffer rows, IntBuffer lines, int size, List<Fog> fogs){
+		this.rows = rows;
+		this.pairs = lines;
+		this.size = size;
+		index(fogs);
+		fallbackPool = computeFallback(lines);
+	}
+
+	// Fogs are matched on the id of their located node, like the old per-request scan did (f.fog.getId())
+	private void index(List<Fog> fogs){
+		int max = 0;
+		for (Fog f : fogs){
+			max = Math.max(max, f.fog.getId());
+		}
+		fogById = new Fog[max + 1];
+		for (Fog f : fogs){
+			fogById[f.fog.getId()] = f;
+		}
+	}
+
+	/*
+	 * Loads an assignment file once. Files ending in .bin are memory-mapped; anything else is read
+	 * as text lines "device home [pool]".
+	 */
+	public static Assignments load(String fileName, List<Fog> fogs) throws FileNotFoundException, IOException{
+		if (fileName.endsWith(".bin"))
+			return map(fileName, fogs);
+		return read(fileName, fogs);
+	}
+
+	public static Assignments read(String fileName, List<Fog> fogs) throws FileNotFoundException, IOException{
+		return fromLines(readLines(fileName), fogs);
+	}
+
+	// Lines of a text assignment file as (device, home, pool) triples in file order, pool NONE when missing
+	static int[] readLines(String fileName) throws FileNotFoundException, IOException{
+		int[] lines = new int[3 * 1024];
+		int n = 0;
+		try(BufferedReader reader = new BufferedReader(new FileReader(fileName))){
+			String curLine;
+			String[] splits;
+			while ((curLine = reader.readLine()) != null) {
+				curLine = curLine.trim();
+				if (curLine.isEmpty())
+					continue;
+				splits = curLine.split(" ");
+				if (3 * n == lines.length){
+					lines = Arrays.copyOf(lines, 2 * lines.length);
+				}
+				lines[3 * n] = Integer.parseInt(splits[0]);
+				lines[3 * n + 1] = Integer.parseInt(splits[1]);
+				lines[3 * n + 2] = splits.length > 2 ? Integer.parseInt(splits[2]) : NONE;
+				n++;
+			}
+		}
+		return Arrays.copyOf(lines, 3 * n);
+	}
+
+	// Assignments of the lines read by readLines, kept by Scenario snapshots
+	static Assignments fromLines(int[] lines, List<Fog> fogs){
+		int n = lines.length / 3;
+
+		// Sort by device, then line: pack (device, line) and sort once
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++){
+			order[i] = ((long) lines[3 * i] << 32) | i;
+		}
+		Arrays.sort(order);
+		int[] table = new int[3 * n];
+		int[] pairs = new int[2 * n];
+		for (int i = 0; i < n; i++){
+			int line = (int) order[i];
+			System.arraycopy(lines, 3 * line, table, 3 * i, 3);
+			pairs[2 * i] = lines[3 * i + 1];
+			pairs[2 * i + 1] = lines[3 * i + 2];
+		}
+		return new Assignments(IntBuffer.wrap(table), IntBuffer.wrap(pairs), n, fogs);
+	}
+
+	public static Assignments map(String fileName, List<Fog> fogs) throws FileNotFoundException, IOException{
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()){
+			IntBuffer all = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+			if (all.get(0) != MAGIC)
+				throw new IOException(fileName + " is not a binary assignment file, or one written by an older version");
+			int size = all.get(1);
+			all.position(2);
+			IntBuffer rows = all.slice();
+			rows.limit(3 * size);
+			all.position(2 + 3 * size);
+			IntBuffer lines = all.slice();
+			lines.limit(2 * size);
+			return new Assignments(rows, lines, size, fogs);
+		}
+	}
+
+	public void write(String fileName) throws IOException{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))){
+			out.writeInt(MAGIC);
+			out.writeInt(size);
+			for (int i = 0; i < 3 * size; i++){
+				out.writeInt(rows.get(i));
+			}
+			for (int i = 0; i < 2 * size; i++){
+				out.writeInt(pairs.get(i));
+			}
+		}
+	}
+
+	/*
+	 * selectHomeAndPoolFogs2 walks every line of ATwo.txt and keeps the last one that resolves:
+	 * that line's home fog when the device's home equals its pool id, its pool fog otherwise.
+	 * The result depends only on the home fog, so it is computed once per fog here.
+	 */
+	private int[] computeFallback(IntBuffer lines){
+		int[] fallback = new int[fogById.length];
+		Arrays.fill(fallback, NONE);
+		for (int h = 0; h < fogById.length; h++){
+			if (fogById[h] == null)
+				continue;
+			for (int i = size - 1; i >= 0; i--){
+				int home = lines.get(2 * i), pool = lines.get(2 * i + 1);
+				int candidate = (h == pool) ? home : pool;
+				if (resolve(candidate) != null){
+					fallback[h] = candidate;
+					break;
+				}
+			}
+		}
+		return fallback;
+	}
+
+	// Last row of the device, or -1
+	private int find(int deviceId){
+		int lo = 0, hi = size;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (rows.get(3 * mid) <= deviceId) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo > 0 && rows.get(3 * (lo - 1)) == deviceId ? lo - 1 : -1;
+	}
+
+	// Fog of column (1 home, 2 pool) in the last row of the device where it resolves, or null
+	private Fog last(int deviceId, int column){
+		for (int r = find(deviceId); r >= 0 && rows.get(3 * r) == deviceId; r--){
+			Fog f = resolve(rows.get(3 * r + column));
+			if (f != null)
+				return f;
+		}
+		return null;
+	}
+
+	private Fog resolve(int fogId){
+		if (fogId < 0 || fogId >= fogById.length)
+			return null;
+		return fogById[fogId];
+	}
+
+	public boolean contains(int deviceId){
+		return find(deviceId) >= 0;
+	}
+
+	public Fog getHome(int deviceId){
+		return last(deviceId, 1);
+	}
+
+	public Fog getPool(int deviceId){
+		return last(deviceId, 2);
+	}
+
+	// Pool chosen for a home fog by the AOne/ATwo combination in selectHomeAndPoolFogs2
+	public Fog getFallbackPool(Fog home){
+		if (home == null || fallbackPool == null)
+			return null;
+		int h = home.fog.getId();
+		return (h < fallbackPool.length && fallbackPool[h] != NONE) ? resolve(fallbackPool[h]) : null;
+	}
+
+	public int getSize(){
+		return size;
+	}
+
+	// Picks the binary form of an assignment file when one has been written next to the text file
+	public static String preferBinary(String textFile){
+		String bin = textFile.replaceFirst("\\.txt$", "") + ".bin";
+		File b = new File(bin), t = new File(textFile);
+		if (b.exists() && (!t.exists() || b.lastModified() >= t.lastModified()))
+			return bin;
+		return textFile;
+	}
+
+	/*
+	 * Converts a text assignment file into the memory-mapped binary form.
+	 * Usage: java mcgill.Assignments ATwo.txt ATwo.bin
+	 * Fog ids are stored as they are; no fogs are needed to write the lines, as what depends on the
+	 * fogs of a run is worked out when the file is loaded for it.
+	 */
+	public static void main(String[] args) throws IOException{
+		Assignments a = read(args[0], Collections.<Fog>emptyList());
+		a.write(args[1]);
+		System.out.println("Wrote " + a.getSize() + " assignment lines to " + args[1]);
+	}
+}
@@ -8,6 +8,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -59,177 +60,80 @@ public class Creator  extends JFrame {
 		myEdge = null;
 	}
 	
+	static Topology topology; // Cogentco.gml parsed once, see topology()
+	
+	public static synchronized Topology topology() throws FileNotFoundException, IOException{
+		if (topology == null){
+			topology = Topology.read(FILENAME);
+		}
+		return topology;
+	}
+	
+	// Fills myMap and myEdge from the parsed topology the first time only, so they no longer grow with every call
 	public static void reader() throws IOException, FileNotFoundException{
-		
-		// Variables help to identify the id, longitude and latitude in the cogent file
-		int id = -1;
-		double lng = 0;
-		double lat = 0;
-		
-		// helps to identify the edges
-		int source = -1;
-		int target = -1;
-		BufferedWriter bufferedWriter;
-		
-		// trying to write output to a file called fogResults.txt
-		try(FileWriter fw = new FileWriter("fogResults.txt", false)){
-			bufferedWriter = new BufferedWriter(fw);
-			
-			// read the contents of the cogentco file
-			try (BufferedReader bufferedReader = new BufferedReader(new FileReader(FILENAME))) {
-				String currentLine;
-				
-				
-				while((currentLine = bufferedReader.readLine()) != null){
-					currentLine = currentLine.trim();
-					
-					//Nodes
-					//while reading line by line, we look out for lines with id and take the value after the space
-					if (currentLine.startsWith("id")){
-						String [] splits = currentLine.split(" ");
-						id = Integer.parseInt(splits[1]);					
-					}
-					if (currentLine.startsWith("Longitude")){
-						String [] splits = currentLine.split(" ");
-						lng = Double.parseDouble(splits[1]);
-					
-					}
-					if (currentLine.startsWith("Latitude")){
-						String [] splits = currentLine.split(" ");
-						lat = Double.parseDouble(splits[1]);
-					}
-					
-					// Here, we insert the id, long, and lat into a custom array myMap
-					if (id != -1 && lng != 0 && lat != 0){
-						myMap.insert(id, lat, lng);
-						id = -1;
-						lng = 0;
-						lat = 0;						
-					}
-					
-					// Edges
-					//Checks the edges data for source and data and take their ids.
-					if (currentLine.startsWith("source")){
-						String [] splits = currentLine.split(" ");
-						source = Integer.parseInt(splits[1]);					
-					}
-
-					if (currentLine.startsWith("target")){
-						String [] splits = currentLine.split(" ");
-						target = Integer.parseInt(splits[1]);					
-					}
-					
-					if (source != -1 && target != -1 ){
-						myEdge.insert(source, target);
-						source = -1;
-						target = -1;									
-					}
-				}
-				bufferedReader.close();	
-			} 
-			
-			//Here we write to file, not really necessarily but it is for bigger files.
-			//Dont use myMap because of memnory constraints going forward.
-//			for (int i = 0; i < myMap.getSize(); i ++){		
-//				
-//				bufferedWriter.write(myMap.getId(i) + " " + myMap.getLong(i) + " " + myMap.getLat(i));
-//				
-//				bufferedWriter.write("\n");
-//			}
-//			bufferedWriter.flush();
-//			bufferedWriter.close();
-
-		} catch (IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
+		if (myMap.getSize() > 0 || myEdge.getSize() > 0)
+			return;
+		Topology t = topology();
+		for (int i = 0; i < t.getSize(); i++){
+			myMap.insert(t.getId(i), t.getLatitude(i), t.getLongitude(i));
+		}
+		for (int e = 0; e < t.getEdgeCount(); e++){
+			myEdge.insert(t.getEdgeSource(e), t.getEdgeTarget(e));
 		}
 	}
-		
+	
+	// The edge latency mean and deviation are computed once by the topology, only the draw is per device
 	public static double calEdgeLatencies() throws FileNotFoundException, IOException{
-		reader();
-		ArrayList<Double> numbers = new ArrayList<Double>();
-		double srcLong = 0, srcLat = 0, tarLong = 0, tarLat = 0;
-		Util.Latency myLat = new Util.Latency();
-				
-			for (int i = 0; i < myEdge.getSize(); i++){				
-			
-			int src = myEdge.getSource(i);	
-			int dest = myEdge.getTarget(i);
-		
-			for (int j = 0; j < myMap.getSize(); j++){
-				// Gets long and lat for edge src
-				if (myMap.getId(j) == src){
-					srcLong = myMap.getLong(j);
-					srcLat = myMap.getLat(j);
-				}				
-				// Gets long and lat for edge destination
-		
-				if(myMap.getId(j) == dest){
-					tarLong = myMap.getLong(j);
-					tarLat = myMap.getLat(j);
-				}
-			}			
-			
-			numbers.add(myLat.queueLatency(srcLong, srcLat, tarLong, tarLat));
-			}
-			
-		myLat.meanLatency(numbers);
-		myLat.stdLatency(numbers);
-		return myLat.deviceLatency();		
+		return topology().deviceLatency();
 	}
 	
+	// Degree thresholds of getNodeEdge: fogs have a degree in [FOG_MIN_DEGREE, FOG_MAX_DEGREE), clouds at least CLOUD_MIN_DEGREE
+	public static int FOG_MIN_DEGREE = 4, FOG_MAX_DEGREE = 6, CLOUD_MIN_DEGREE = 6;
+	
 	public static void getNodeEdge() throws FileNotFoundException, IOException{
-		reader();
-		int outDegree = 0, inDegree = 0;		
+		getNodeEdge(topology(), FOG_MIN_DEGREE, FOG_MAX_DEGREE, CLOUD_MIN_DEGREE);
+	}
+	
+	/*
+	 * Makes fogs and clouds of the nodes of a topology by degree, the connections leaving plus the
+	 * connections coming into the node. Degrees are counted in one pass over the edges, by node ordinal.
+	 * Nodes are then visited by increasing id, the order the old degree HashMap gave for the Cogentco
+	 * ids, and a node id that appears twice makes a fog or cloud of each of its nodes, as before.
+	 */
+	public static void getNodeEdge(Topology t, int fogMinDegree, int fogMaxDegree, int cloudMinDegree){
+		int[] degree = new int[t.getSize()];
+		for (int e = 0; e < t.getEdgeCount(); e++){
+			if (t.getSourceOrdinal(e) != Topology.NO_NODE) degree[t.getSourceOrdinal(e)]++; // outDegree
+			if (t.getTargetOrdinal(e) != Topology.NO_NODE) degree[t.getTargetOrdinal(e)]++; // inDegree
+		}
 		
-		Map<Integer, Integer> nodeDegree = new HashMap<Integer, Integer>();
-						
-		for (int i = 0; i < myMap.getSize(); i ++){
-
-			for (int j = 0; j < myEdge.getSize(); j++){
-			
-				if (myMap.getId(i) == myEdge.getSource(j)){ // Gets the outDegree - how many connections leaving the node
-					outDegree += 1;
-				}
-				if (myMap.getId(i) == myEdge.getTarget(j)){ // Gets the inDegree - how many connections coming into the node
-					inDegree += 1;
-				}				
-			}
-			nodeDegree.put(myMap.getId(i), outDegree + inDegree);
-			outDegree = 0; inDegree = 0;
-
+		// Ordinals sorted by (id, ordinal)
+		long[] byId = new long[t.getSize()];
+		for (int i = 0; i < byId.length; i++){
+			byId[i] = ((long) t.getId(i) << 32) | i;
 		}
-		int co = 1; int id = 1;
-		//How many nodes has how many edges e.g 21 nodes have 1 edge connection. 1 -21, 2 - 96, 3 - 46, 4 - 16, 5 - 4, 6 -1, 7,8  - 1. total is 196 nodes
-		for (Entry<Integer, Integer> entry: nodeDegree.entrySet()){
-			// Checks if the node has more than 4 connections, make it a fog
-//			if (entry.getValue() >= 0){ // PUT 1 OR 0 HERE AND YOULL GET THE WHOLE 196
-			if (entry.getValue() >= 4 && entry.getValue() < 6){ 
-
-				co++;
-				for (int i = 0; i < myMap.getSize(); i++){
-					if(entry.getKey() == myMap.getId(i)){//assign fogs to nodes which have more than 4 node degrees
-//						Fog tempFog = new Fog(myMap.getId(i), myMap.getLat(i), myMap.getLong(i));
-						Fog tempFog = new Fog(id++, myMap.getLat(i), myMap.getLong(i));
-						fogs.add(tempFog);
-					}
-					
-					
-				}
+		Arrays.sort(byId);
+		
+		int id = 1;
+		for (long node : byId){
+			int i = (int) node;
+			int d = degree[t.ordinal(t.getId(i))]; // the edges of an id resolve to its last node
+			// e.g. 21 nodes have 1 edge connection. 1 -21, 2 - 96, 3 - 46, 4 - 16, 5 - 4, 6 -1, 7,8  - 1. total is 196 nodes
+			if (d >= fogMinDegree && d < fogMaxDegree){
+				//we are using ids from 1-20 instead of cogent ids to accomodate alloc optimizer
+				Fog tempFog = new Fog(id++, t.getLatitude(i), t.getLongitude(i));
+				tempFog.node = i;
+				fogs.add(tempFog);
 			}
-			
-			if (entry.getValue() >= 6){
-				for (int j = 0; j < myMap.getSize(); j++){
-					if (entry.getKey() == myMap.getId(j)){ // Assign clouds to nodes which have 3 node degrees
-						Fog tempCloud = new Fog(myMap.getId(j), myMap.getLat(j), myMap.getLong(j));
-						clouds.add(tempCloud);
-					}
-				}
+			if (d >= cloudMinDegree){
+				Fog tempCloud = new Fog(t.getId(i), t.getLatitude(i), t.getLongitude(i));
+				tempCloud.node = i;
+				clouds.add(tempCloud);
 			}
 		}
 		
-		for (int i = 0; i < myMap.getSize(); i++){
-			Fog tempFog = new Fog(myMap.getId(i), myMap.getLat(i), myMap.getLong(i));
+		for (int i = 0; i < t.getSize(); i++){
+			Fog tempFog = new Fog(t.getId(i), t.getLatitude(i), t.getLongitude(i));
 			remFogs.add(tempFog);
 		}
 		
@@ -311,12 +215,45 @@ public class Creator  extends JFrame {
 		return allDevices;
 	}
 	
+	static Scenario scenario; // loaded once, see scenario()
+	
+	/*
+	 * Maps the scenario snapshot, or builds it from the topology, newDevices.txt and the assignment files
+	 * and writes the snapshot, on the first call only. Its devices and fogs are templates: every JAMCloud
+	 * context works on its own copies.
+	 */
+	public static synchronized Scenario scenario() throws FileNotFoundException, IOException{
+		if (scenario == null){
+			scenario = Scenario.load(Scenario.snapshot(Scenario.DEVICES), Scenario.DEVICES, JAMCloud.ASSIGNMENTS, JAMCloud.HOME_ASSIGNMENTS);
+		}
+		return scenario;
+	}
+	
+	static Routes routes; // computed once, see routes()
+	
+	// Shortest routes over the topology of the scenario between its fogs, computed on the first call only
+	public static synchronized Routes routes() throws FileNotFoundException, IOException{
+		if (routes == null){
+			Scenario s = scenario();
+			routes = Routes.forFogs(s.topology, s.fogs);
+		}
+		return routes;
+	}
+	
+	public static List<Device> loadDevicesFromFile() throws FileNotFoundException, IOException{
+		return scenario().devices;
+	}
+	
 	public static List<Device> createNewDevicesFromFile() throws FileNotFoundException, IOException{
+		return createNewDevicesFromFile(Scenario.DEVICES);
+	}
+	
+	public static List<Device> createNewDevicesFromFile(String fileName) throws FileNotFoundException, IOException{
 		
 		getNodeEdge();
 		List<Device> newDevices = new ArrayList<Device>();
 		
-		try(BufferedReader reader = new BufferedReader(new FileReader("newDevices.txt"))){
+		try(BufferedReader reader = new BufferedReader(new FileReader(fileName))){
 			String curLine;
 			String[] splits;
 			
@@ -341,12 +278,13 @@ public class Creator  extends JFrame {
 	static LinkedList<Double> servList;
 
 
+	// One per simulation context, see JAMCloud.deviceLatency: contexts running side by side do not share its load
 	static class Latency {
-		static double bandwidth = 50; //10Gbps
+		double bandwidth = 50; //10Gbps
 		static double requestSize = 1; // Size R comes from the task
 		double delay;
 		double latency;
-		static int numberOfTasks=0;
+		int numberOfTasks=0;
 		
 		public double computeDistance(double devLong, double devLat, double fogLong, double fogLat){
 			double distanceLatency;
@@ -361,7 +299,7 @@ public class Creator  extends JFrame {
 			return latency;
 		}
 		
-		public static double DFLatency(Device d, Fog f){
+		public double DFLatency(Device d, Fog f){
 			
 			double delay =  Math.sqrt(	Math.pow(d.getDeviceLongitude()- f.fog.getLongitude(),2) + 
 					Math.pow(d.getDeviceLatitude() - f.fog.getLatitude(), 2)	);
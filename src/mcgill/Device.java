@@ -16,6 +16,7 @@ public class Device {
 	double deviceLongitude, deviceLatitude;
 	double devLatency;
 	Util.SaveRealDummy save;
+	Fog[] nearestFogs; // closest fogs first, filled by JAMCloud.nearestFogs
 	
 	public Device(int id, double lng, double lat, double latency){
 		this.deviceId = id;
@@ -25,6 +26,11 @@ public class Device {
 		save = new Util.SaveRealDummy();
 	}
 	
+	// Copy for one simulation context: same location and latency, no cached fogs
+	public Device(Device d){
+		this(d.deviceId, d.deviceLongitude, d.deviceLatitude, d.devLatency);
+	}
+	
 	public String toString()
 	{
 		return this.deviceId.toString();
@@ -38,16 +44,15 @@ public class Device {
 	}
 	
 	public Task generateTasksRequest() throws FileNotFoundException, IOException{
-		Util.Compress numTasks;
-		numTasks = new Util.Compress();
-		numTasks.fileSorter("task_events.csv", "task_output.txt", 4);
+		// The trace is read once and shared by every call
+		Util.TaskCompressor trace = Util.Compress.tasks("task_events.csv");
 		
 		Task myTasks  = new Task();
 		int random = (int)(Math.random()*800 + 1);
 		
 		for (int i = 0; i < random; i++){
 			int ran = (int)(Math.random()*1000+1);
-			myTasks.insert(numTasks.task.getNumCPU(ran+i), numTasks.task.getMem(ran+i));		
+			myTasks.insert(trace.getNumCPU(ran+i), trace.getMem(ran+i));		
 		}		
 		return myTasks;		
 	}
@@ -0,0 +1,306 @@
+package mcgill;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+import umontreal.iro.lecuyer.randvar.RandomVariateGen;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.simevents.Event;
+
+/*
+ * Failures and degradations of the fogs of a context, as events of its simulation at simulated times,
+ * whatever the requests do: failures planned at given times, random failures of every fog from its up
+ * and down times (MTBF and MTTR), regional failures taking down together the fogs within a radius of a
+ * fog, and degradations leaving a fog a fraction of its capacity.
+ *
+ * A failed fog takes no request: the routings no longer give it, and a request sent to it goes to the
+ * fog with the lowest link latency from it that is up, or to the cloud (JAMCloud.failover). The requests
+ * it holds are handled by the mode. With DRAIN, it still serves the ones in service and queued at its
+ * capacity; with REROUTE, the queued ones are withdrawn and sent to the fog taking over, while the ones in
+ * service finish, a request holding units not being preempted. A degraded fog keeps taking requests.
+ *
+ * Failures of a fog may overlap, e.g., a regional failure during a random one: it is up again when the
+ * last ends. Overlapping degradations keep the capacity of the last until they all end. Capacities
+ * measured on the fogs during a run (JAMCloud.sampleCapacity) go through it too, a capacity of 0 failing
+ * the fog. What is set before the run is scheduled by start, once the simulator is initialized.
+ *
+ * System properties, read by fromProperties:
+ *   jamcloud.failover=drain|reroute   mode of the failures (reroute)
+ *   jamcloud.mtbf, jamcloud.mttr      means of the exponential up and down times of every fog (no random failure)
+ *   jamcloud.regions=i,r,d            regional failures every exponential time of mean i, of the fogs within r of
+ *                                     a random fog, as long as an exponential time of mean d (none)
+ *   jamcloud.degrade=fraction         the fogs given to fail (outage) are degraded to this fraction instead
+ * The fogs given to fail on the command line go down at jamcloud.failAt and up at jamcloud.backAt, see JAMCloud.
+ */
+public class Failures {
+	public static final int DRAIN = 0, REROUTE = 1;
+
+	final JAMCloud context;
+	final int mode;
+	final List<Fog> fogs;
+	final RandomStream stream; // random failures and regions
+	final int[] nominal; // capacity of every fog when the context was built
+	final int[] outages; // failures in effect on every fog
+	final int[] degradations; // degradations in effect on every fog
+	final double[] downSince; // time the fog failed, while it is down
+	final boolean[] sampledDown; // failed by a capacity sample of 0, until a later sample
+	double degradeTo = 1; // fraction of its capacity a fog given to outage keeps, 1 to fail it
+	private final List<Runnable> plans = new ArrayList<Runnable>();
+
+	long failed, recovered, degraded; // fogs going down, up, and to a fraction of their capacity
+	double downTime; // fog time spent down, for the fogs up again
+
+	public Failures(JAMCloud context, int mode, RandomStream stream){
+		if (mode != DRAIN && mode != REROUTE)
+			throw new IllegalArgumentException("Failure mode must be DRAIN or REROUTE, not " + mode);
+		this.context = context;
+		this.mode = mode;
+		this.stream = stream;
+		fogs = context.fogN;
+		int n = fogs.size();
+		nominal = new int[n];
+		outages = new int[n];
+		degradations = new int[n];
+		downSince = new double[n];
+		sampledDown = new boolean[n];
+		for (int j = 0; j < n; j++)
+			nominal[j] = fogs.get(j).jresource.getCapacity();
+	}
+
+	// The failures of the context set by the jamcloud.* system properties, drawn from its stream after the applications'
+	public static Failures fromProperties(JAMCloud context, int replication){
+		String m = System.getProperty("jamcloud.failover", "reroute");
+		int mode;
+		if (m.equalsIgnoreCase("drain"))
+			mode = DRAIN;
+		else if (m.equalsIgnoreCase("reroute"))
+			mode = REROUTE;
+		else
+			throw new IllegalArgumentException("jamcloud.failover must be drain or reroute, not " + m);
+		Failures failures = new Failures(context, mode, JAMCloud.stream(2 * context.applicationList.size(), replication));
+
+		String mtbf = System.getProperty("jamcloud.mtbf"), mttr = System.getProperty("jamcloud.mttr");
+		if (mtbf != null || mttr != null){
+			if (mtbf == null || mttr == null)
+				throw new IllegalArgumentException("jamcloud.mtbf and jamcloud.mttr go together");
+			failures.random(Double.parseDouble(mtbf), Double.parseDouble(mttr));
+		}
+		String regions = System.getProperty("jamcloud.regions");
+		if (regions != null){
+			String[] r = regions.split(",");
+			if (r.length != 3)
+				throw new IllegalArgumentException("jamcloud.regions is interval,radius,duration, not " + regions);
+			failures.randomRegions(Double.parseDouble(r[0]), Double.parseDouble(r[1]), Double.parseDouble(r[2]));
+		}
+		String degrade = System.getProperty("jamcloud.degrade");
+		if (degrade != null){
+			failures.degradeTo = Double.parseDouble(degrade);
+			if (!(failures.degradeTo > 0 && failures.degradeTo <= 1))
+				throw new IllegalArgumentException("jamcloud.degrade must be in (0, 1], not " + degrade);
+		}
+		return failures;
+	}
+
+	// Schedules what was set before the run; called once the simulator is initialized
+	public void start(){
+		for (Runnable plan : plans)
+			plan.run();
+	}
+
+	// The fogs fail at time at and come back after duration, or never if it is infinite
+	public void schedule(List<Fog> down, double at, double duration){
+		final Outage outage = new Outage(down, 0, duration);
+		plans.add(() -> outage.schedule(at));
+	}
+
+	// The fogs keep fraction of their capacity from time at for duration
+	public void degrade(List<Fog> degraded, double fraction, double at, double duration){
+		if (!(fraction > 0 && fraction < 1))
+			throw new IllegalArgumentException("A degraded fog keeps a fraction in (0, 1) of its capacity, not " + fraction);
+		final Outage outage = new Outage(degraded, fraction, duration);
+		plans.add(() -> outage.schedule(at));
+	}
+
+	// The fogs fail, or are degraded if jamcloud.degrade is set, at time at for duration
+	public void outage(List<Fog> down, double at, double duration){
+		if (degradeTo < 1)
+			degrade(down, degradeTo, at, duration);
+		else
+			schedule(down, at, duration);
+	}
+
+	// The fogs within radius of the given one, by the straight-line distance between their places, fail at time at for duration
+	public void regional(Fog centre, double radius, double at, double duration){
+		schedule(region(centre, radius), at, duration);
+	}
+
+	// Every fog alternates up and down times drawn independently, exponential with means mtbf and mttr
+	public void random(double mtbf, double mttr){
+		random(new ExponentialGen(stream, 1 / mtbf), new ExponentialGen(stream, 1 / mttr));
+	}
+
+	// Every fog alternates up and down times drawn independently from upTime and downTime
+	public void random(final RandomVariateGen upTime, final RandomVariateGen downTime){
+		plans.add(() -> {
+			for (Fog f : fogs)
+				new Flapping(f, upTime, downTime).schedule(upTime.nextDouble());
+		});
+	}
+
+	// Regional failures every exponential time of mean interval, of the fogs within radius of a random fog, for an exponential time of mean duration
+	public void randomRegions(double interval, double radius, double duration){
+		final ExponentialGen next = new ExponentialGen(stream, 1 / interval), length = new ExponentialGen(stream, 1 / duration);
+		plans.add(() -> new Regions(next, radius, length).schedule(next.nextDouble()));
+	}
+
+	List<Fog> region(Fog centre, double radius){
+		List<Fog> region = new ArrayList<Fog>();
+		for (Fog f : fogs){
+			if (Math.hypot(f.fog.getLongitude() - centre.fog.getLongitude(), f.fog.getLatitude() - centre.fog.getLatitude()) <= radius)
+				region.add(f);
+		}
+		return region;
+	}
+
+	// One more failure of f; it goes down with the first
+	void fail(Fog f){
+		int j = f.ordinal;
+		if (outages[j]++ > 0)
+			return;
+		failed++;
+		downSince[j] = context.simulator.time();
+		context.fail(f, mode);
+	}
+
+	// One failure of f less; it is up again when none is left
+	void recover(Fog f){
+		int j = f.ordinal;
+		if (outages[j] == 0 || --outages[j] > 0)
+			return;
+		recovered++;
+		downTime += context.simulator.time() - downSince[j];
+		context.recover(f);
+	}
+
+	void degrade(Fog f, double fraction){
+		int j = f.ordinal;
+		degradations[j]++;
+		degraded++;
+		resize(f, Math.max(2, (int) Math.round(nominal[j] * fraction))); // a request holds 2 units
+	}
+
+	void restore(Fog f){
+		int j = f.ordinal;
+		if (degradations[j] == 0 || --degradations[j] > 0)
+			return;
+		resize(f, nominal[j]);
+	}
+
+	// A capacity measured on f, see JAMCloud.sampleCapacity: 0 fails it until a later sample, another capacity
+	// becomes its nominal one, taken at once unless a degradation is in effect, which keeps its capacity until it ends
+	void sample(Fog f, int capacity){
+		int j = f.ordinal;
+		if (capacity == 0){
+			if (!sampledDown[j]){
+				sampledDown[j] = true;
+				fail(f);
+			}
+			return;
+		}
+		nominal[j] = capacity;
+		if (degradations[j] == 0)
+			resize(f, capacity);
+		if (sampledDown[j]){
+			sampledDown[j] = false;
+			recover(f);
+		}
+	}
+
+	private void resize(Fog f, int capacity){
+		f.jresource.setCapacity(capacity);
+		context.fogLoad.resize(f);
+	}
+
+	public String toString(){
+		return "Fog failures : " + failed + ", recoveries : " + recovered + ", fog time down : " + JAMCloud.df.format(downTime)
+				+ ", degradations : " + degraded;
+	}
+
+	// A failure, for a fraction of 0, or a degradation of some fogs, then their recovery after duration
+	class Outage extends Event {
+		final List<Fog> fogs;
+		final double fraction, duration;
+		boolean on;
+
+		Outage(List<Fog> fogs, double fraction, double duration){
+			super(context.simulator);
+			this.fogs = new ArrayList<Fog>(fogs);
+			this.fraction = fraction;
+			this.duration = duration;
+		}
+
+		public void actions(){
+			on = !on;
+			for (Fog f : fogs){
+				if (fraction == 0){
+					if (on)
+						fail(f);
+					else
+						recover(f);
+				}
+				else if (on)
+					degrade(f, fraction);
+				else
+					restore(f);
+			}
+			if (on && duration < Double.POSITIVE_INFINITY)
+				schedule(duration);
+		}
+	}
+
+	// The random failures of a fog
+	class Flapping extends Event {
+		final Fog fog;
+		final RandomVariateGen upTime, downTime;
+		boolean down;
+
+		Flapping(Fog fog, RandomVariateGen upTime, RandomVariateGen downTime){
+			super(context.simulator);
+			this.fog = fog;
+			this.upTime = upTime;
+			this.downTime = downTime;
+		}
+
+		public void actions(){
+			down = !down;
+			if (down){
+				fail(fog);
+				schedule(downTime.nextDouble());
+			}
+			else {
+				recover(fog);
+				schedule(upTime.nextDouble());
+			}
+		}
+	}
+
+	// The random regional failures
+	class Regions extends Event {
+		final RandomVariateGen next, length;
+		final double radius;
+
+		Regions(RandomVariateGen next, double radius, RandomVariateGen length){
+			super(context.simulator);
+			this.next = next;
+			this.radius = radius;
+			this.length = length;
+		}
+
+		public void actions(){
+			Fog centre = fogs.get(stream.nextInt(0, fogs.size() - 1));
+			new Outage(region(centre, radius), 0, length.nextDouble()).actions();
+			schedule(next.nextDouble());
+		}
+	}
+}
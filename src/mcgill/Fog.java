@@ -12,7 +12,9 @@ public class Fog {
 	Resource jresource;
 	Util.UtilizationMap utilise; 
 	Util.SaveRealDummy dummyVals = new Util.SaveRealDummy();
-	List<Double> util_values;
+	Util.DoubleSeries util_values;
+	int ordinal = -1; // position in JAMCloud.fogN, set when the fogs are built, used to address the link table
+	int node = Topology.NO_NODE; // topology ordinal of the node a located fog was made from, see Routes
 	
 	static double numOff = 0;
 	
@@ -71,10 +73,23 @@ public class Fog {
 		jresource = new Resource(this.cpu.intValue(), ID.toString()); // Use this - Its the Real one
 
 		utilise = new Util.UtilizationMap();
-		util_values = new ArrayList<Double>();
+		util_values = new Util.DoubleSeries();
 
 	}
 	
+	// Copy of a capacitated fog for one simulation context, with its own resource on that context's simulator
+	public Fog(Fog f, ProcessSimulator sim){
+		this.id = f.id;
+		this.fog = f.fog;
+		this.cpu = f.cpu;
+		this.memory = f.memory;
+		
+		jresource = new Resource(sim, this.cpu.intValue(), id.toString());
+		
+		utilise = new Util.UtilizationMap();
+		util_values = new Util.DoubleSeries();
+	}
+	
 	public void incrementNumOff(){
 		numOff++;
 	}
@@ -0,0 +1,158 @@
+package mcgill;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Uniform grid of buckets over the fog coordinates (the located node, f.fog), used to find the
+ * fogs closest to a device without computing Creator.Latency.DFLatency to every fog.
+ * DFLatency scales the straight-line distance by a factor shared by all fogs, so the closest
+ * fogs by distance are also the ones with the lowest latency.
+ *
+ * Queries walk rings of cells around the device's cell and stop once no farther ring can
+ * beat the k-th best distance found. They reuse internal buffers, so they do not allocate,
+ * and a grid must only be queried from the simulation thread.
+ */
+public class FogGrid {
+	static final int FOGS_PER_CELL = 2;
+
+	Fog[] fogs; // bucketed: cell c holds fogs[cellStart[c]] .. fogs[cellStart[c + 1] - 1]
+	double[] xs, ys;
+	int[] cellStart;
+	int cols, rows;
+	double minX, minY, cellW, cellH;
+
+	// Scratch for the k best candidates of the current query, ascending by distance
+	private Fog[] best = new Fog[8];
+	private double[] bestDist = new double[8];
+	private int found;
+
+	public FogGrid(List<Fog> allFogs){
+		int n = 0;
+		minX = Double.MAX_VALUE; minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (Fog f : allFogs){
+			if (f == null) continue;
+			minX = Math.min(minX, f.fog.getLongitude()); maxX = Math.max(maxX, f.fog.getLongitude());
+			minY = Math.min(minY, f.fog.getLatitude()); maxY = Math.max(maxY, f.fog.getLatitude());
+			n++;
+		}
+		if (n == 0)
+			throw new IllegalArgumentException("Cannot index an empty list of fogs");
+
+		int side = Math.max(1, (int) Math.ceil(Math.sqrt((double) n / FOGS_PER_CELL)));
+		cols = rows = side;
+		cellW = (maxX > minX) ? (maxX - minX) / cols : 1.0;
+		cellH = (maxY > minY) ? (maxY - minY) / rows : 1.0;
+
+		// Counting sort of the fogs into their cells
+		int[] cellOf = new int[n];
+		cellStart = new int[cols * rows + 1];
+		int k = 0;
+		for (Fog f : allFogs){
+			if (f == null) continue;
+			cellOf[k] = cell(column(f.fog.getLongitude()), row(f.fog.getLatitude()));
+			cellStart[cellOf[k] + 1]++;
+			k++;
+		}
+		for (int c = 0; c < cols * rows; c++){
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] next = Arrays.copyOf(cellStart, cols * rows);
+		fogs = new Fog[n];
+		xs = new double[n];
+		ys = new double[n];
+		k = 0;
+		for (Fog f : allFogs){
+			if (f == null) continue;
+			int at = next[cellOf[k++]]++;
+			fogs[at] = f;
+			xs[at] = f.fog.getLongitude();
+			ys[at] = f.fog.getLatitude();
+		}
+	}
+
+	private int column(double x){
+		return Math.min(cols - 1, Math.max(0, (int) ((x - minX) / cellW)));
+	}
+
+	private int row(double y){
+		return Math.min(rows - 1, Math.max(0, (int) ((y - minY) / cellH)));
+	}
+
+	private int cell(int c, int r){
+		return r * cols + c;
+	}
+
+	public int getSize(){
+		return fogs.length;
+	}
+
+	// Closest fog to the point
+	public Fog nearest(double x, double y){
+		search(x, y, 1);
+		return best[0];
+	}
+
+	/*
+	 * Writes the k fogs closest to the point into out, closest first, and returns how many were
+	 * written (fewer than k only when the grid holds fewer fogs).
+	 */
+	public int nearest(double x, double y, int k, Fog[] out){
+		search(x, y, k);
+		System.arraycopy(best, 0, out, 0, found);
+		return found;
+	}
+
+	private void search(double x, double y, int k){
+		k = Math.min(k, fogs.length);
+		if (best.length < k){
+			best = new Fog[k];
+			bestDist = new double[k];
+		}
+		found = 0;
+		int cx = column(x), cy = row(y);
+		for (int r = 0; ; r++){
+			int left = cx - r, right = cx + r, bottom = cy - r, top = cy + r;
+			if (left < 0 && right >= cols && bottom < 0 && top >= rows)
+				break; // every cell has been visited
+			for (int c = Math.max(0, left); c <= Math.min(cols - 1, right); c++){
+				if (bottom >= 0) visit(cell(c, bottom), x, y, k);
+				if (top < rows && top != bottom) visit(cell(c, top), x, y, k);
+			}
+			for (int rr = Math.max(0, bottom + 1); rr <= Math.min(rows - 1, top - 1); rr++){
+				if (left >= 0) visit(cell(left, rr), x, y, k);
+				if (right < cols && right != left) visit(cell(right, rr), x, y, k);
+			}
+			if (found == k && ringBound(x, y, cx, cy, r) >= bestDist[k - 1])
+				break;
+		}
+	}
+
+	// Smallest distance from the point to any cell outside the rings already visited
+	private double ringBound(double x, double y, int cx, int cy, int r){
+		double bound = Double.MAX_VALUE;
+		if (cx - r - 1 >= 0) bound = Math.min(bound, x - (minX + (cx - r) * cellW));
+		if (cx + r + 1 < cols) bound = Math.min(bound, (minX + (cx + r + 1) * cellW) - x);
+		if (cy - r - 1 >= 0) bound = Math.min(bound, y - (minY + (cy - r) * cellH));
+		if (cy + r + 1 < rows) bound = Math.min(bound, (minY + (cy + r + 1) * cellH) - y);
+		return Math.max(0, bound);
+	}
+
+	private void visit(int c, double x, double y, int k){
+		for (int i = cellStart[c]; i < cellStart[c + 1]; i++){
+			double d = Math.sqrt((x - xs[i]) * (x - xs[i]) + (y - ys[i]) * (y - ys[i]));
+			if (found == k && d >= bestDist[k - 1])
+				continue;
+			// Insertion into the sorted candidates, dropping the worst one when full
+			int at = (found < k) ? found++ : k - 1;
+			while (at > 0 && bestDist[at - 1] > d){
+				best[at] = best[at - 1];
+				bestDist[at] = bestDist[at - 1];
+				at--;
+			}
+			best[at] = fogs[i];
+			bestDist[at] = d;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package mcgill;
+
+import java.util.Arrays;
+import java.util.List;
+
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/*
+ * Load of every fog of a context, for the load-aware routings: the number of requests at a fog,
+ * waiting or served, and their work, the service time they need over the number of requests the fog
+ * serves at once. A request counts from just before it asks the fog's Resource for its units (arrive)
+ * until just after it releases them (leave).
+ *
+ * The fogs are also kept ordered by load, the fogs of each load being a run of the order whose start is
+ * kept, so a request arriving or leaving moves its fog to the edge of its run with one swap, in O(1).
+ * The least loaded fogs, and the idle ones, are then always the first of the order. A binary heap on
+ * the work finds the fog with the least of it; keeping it costs O(log k) for k fogs.
+ *
+ * A fog that failed (fail) keeps its load, but is moved past the fogs taking requests, at the end of
+ * the order, and to the bottom of the heap, so the routings no longer give it until it recovers.
+ */
+public class FogLoad {
+	Fog[] fogs;
+	int[] load; // requests at every fog
+	double[] work; // service time of the requests at every fog
+	double[] speed; // requests every fog serves at once
+	int[] order; // ordinals of the fogs, least loaded first
+	int[] position; // position[j]: of fog j in order
+	int[] start; // start[c]: first position in order of the fogs with a load of c or more
+	int[] heap; // ordinals of the fogs in a binary heap on work / speed
+	int[] slot; // slot[j]: position of fog j in heap
+	boolean[] failed; // failed[j]: fog j takes no request
+	int live; // fogs taking requests, the first of the order
+
+	// The fogs of a context, each with its position in it as ordinal
+	public FogLoad(List<Fog> fogList){
+		int n = fogList.size();
+		fogs = fogList.toArray(new Fog[n]);
+		load = new int[n];
+		work = new double[n];
+		speed = new double[n];
+		order = new int[n];
+		position = new int[n];
+		heap = new int[n];
+		slot = new int[n];
+		failed = new boolean[n];
+		live = n;
+		for (int j = 0; j < n; j++){
+			if (fogs[j].ordinal != j)
+				throw new IllegalArgumentException("Fog " + fogs[j].getId() + " has ordinal " + fogs[j].ordinal + ", not " + j);
+			speed[j] = Math.max(1, fogs[j].jresource.getCapacity() / 2); // a request holds 2 units
+			order[j] = position[j] = heap[j] = slot[j] = j;
+		}
+		start = new int[] {0, n, n, n};
+	}
+
+	public boolean contains(Fog f){
+		return f != null && f.ordinal >= 0 && f.ordinal < fogs.length && fogs[f.ordinal] == f;
+	}
+
+	public int size(){
+		return fogs.length;
+	}
+
+	// Number of fogs taking requests
+	public int live(){
+		return live;
+	}
+
+	// The fog at position p < live() of the order
+	public Fog live(int p){
+		return fogs[order[p]];
+	}
+
+	// False if f is a fog of the context that failed
+	public boolean isUp(Fog f){
+		return !contains(f) || !failed[f.ordinal];
+	}
+
+	// A request needing service arrives at f; the cloud and fogs of other contexts are not followed
+	public void arrive(Fog f, double service){
+		if (!contains(f))
+			return;
+		int j = f.ordinal;
+		int c = load[j]++;
+		if (c + 4 > start.length){ // two loads past the highest stay empty, see recover
+			int size = start.length;
+			start = Arrays.copyOf(start, 2 * size);
+			Arrays.fill(start, size, start.length, live);
+		}
+		if (!failed[j])
+			swap(position[j], --start[c + 1]);
+		work[j] += service;
+		siftDown(slot[j]);
+	}
+
+	// A request that needed service leaves f
+	public void leave(Fog f, double service){
+		if (!contains(f) || load[f.ordinal] == 0)
+			return;
+		int j = f.ordinal;
+		int c = load[j]--;
+		if (!failed[j])
+			swap(position[j], start[c]++);
+		work[j] = load[j] == 0 ? 0 : work[j] - service; // no rounding left on an idle fog
+		siftUp(slot[j]);
+	}
+
+	// f takes no more request: it is raised run by run to the end of the live fogs, which then end before it
+	public void fail(Fog f){
+		if (!isUp(f))
+			return;
+		int j = f.ordinal;
+		int c = load[j];
+		while (start[c + 1] < live){
+			swap(position[j], --start[c + 1]);
+			c++;
+		}
+		swap(position[j], live - 1);
+		live--;
+		for (int b = c + 1; b < start.length; b++)
+			start[b] = live;
+		failed[j] = true;
+		siftDown(slot[j]);
+	}
+
+	// f takes requests again: it joins the live fogs in the empty run past the highest load, and is lowered run by run to its own
+	public void recover(Fog f){
+		if (!contains(f) || !failed[f.ordinal])
+			return;
+		int j = f.ordinal;
+		swap(position[j], live);
+		live++;
+		int c = start.length - 2;
+		start[c + 1] = live;
+		while (c > load[j])
+			swap(position[j], start[c--]++);
+		failed[j] = false;
+		siftUp(slot[j]);
+	}
+
+	// The capacity of f changed: it serves as many requests at once as its Resource holds pairs of units
+	public void resize(Fog f){
+		if (!contains(f))
+			return;
+		int j = f.ordinal;
+		speed[j] = Math.max(1, fogs[j].jresource.getCapacity() / 2);
+		siftUp(slot[j]);
+		siftDown(slot[j]);
+	}
+
+	public int load(Fog f){
+		return load[f.ordinal];
+	}
+
+	// Time the requests at f keep it busy
+	public double work(Fog f){
+		return work[f.ordinal] / speed[f.ordinal];
+	}
+
+	// One of the least loaded fogs, each as likely, or null if every fog failed
+	public Fog leastLoaded(RandomStream stream){
+		if (live == 0)
+			return null;
+		int tied = start[load[order[0]] + 1];
+		return fogs[order[tied == 1 ? 0 : stream.nextInt(0, tied - 1)]];
+	}
+
+	// One of the fogs with no request, each as likely, or null if every fog has some
+	public Fog idle(RandomStream stream){
+		int idle = start[1];
+		if (idle == 0)
+			return null;
+		return fogs[order[idle == 1 ? 0 : stream.nextInt(0, idle - 1)]];
+	}
+
+	// One of the fogs taking requests, each as likely, or null if every fog failed
+	public Fog any(RandomStream stream){
+		if (live == 0)
+			return null;
+		int p = stream.nextInt(0, live - 1);
+		return fogs[live == fogs.length ? p : order[p]]; // by ordinal while no fog failed
+	}
+
+	// The fog whose requests need the least time, or null if every fog failed
+	public Fog leastWork(){
+		return live == 0 ? null : fogs[heap[0]];
+	}
+
+	private void swap(int p, int q){
+		int a = order[p], b = order[q];
+		order[p] = b;
+		position[b] = p;
+		order[q] = a;
+		position[a] = q;
+	}
+
+	private double key(int j){
+		return failed[j] ? Double.POSITIVE_INFINITY : work[j] / speed[j];
+	}
+
+	private void siftUp(int i){
+		int j = heap[i];
+		double k = key(j);
+		while (i > 0){
+			int p = (i - 1) >>> 1;
+			if (key(heap[p]) <= k)
+				break;
+			heap[i] = heap[p];
+			slot[heap[i]] = i;
+			i = p;
+		}
+		heap[i] = j;
+		slot[j] = i;
+	}
+
+	private void siftDown(int i){
+		int j = heap[i];
+		double k = key(j);
+		int child;
+		while ((child = 2 * i + 1) < heap.length){
+			if (child + 1 < heap.length && key(heap[child + 1]) < key(heap[child]))
+				child++;
+			if (key(heap[child]) >= k)
+				break;
+			heap[i] = heap[child];
+			slot[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = j;
+		slot[j] = i;
+	}
+}
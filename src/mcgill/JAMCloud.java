@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,25 +32,46 @@ import umontreal.iro.lecuyer.randvar.*;
 import umontreal.iro.lecuyer.stat.*;
 import umontreal.iro.lecuyer.util.Chrono;
 
+/*
+ * One simulation context: the fogs, devices, applications and statistics of a run, on their own
+ * process simulator. Contexts share nothing that changes during a run (the topology read by Creator
+ * is copied), so independent replications or parameter points can run at the same time, see ReplicationRunner.
+ */
 public class JAMCloud {
 	
- static List<Fog> fogN;
- static List<Fog> CLOUD;
-	static List<Device> devices;
+	List<Fog> fogN;
+	List<Fog> CLOUD;
+	List<Device> devices;
 	static int totalNumberOfRequests = 100; // Total number of tasks to simulate.
 	static int WARMUP = 10; // Number of tasks for warmup
 	int nbTasks; // Number of tasks ended so far;
 	static DecimalFormat df = new DecimalFormat("#0.0000000");
 	
-	static int failPoint = 50, bringBackPoint = 80;
+	// Simulated times the first fogs fail and come back at, when the run is given fogs to fail. The applications
+	// send a request once the last is answered, so the pace depends on the routing: by default, about when
+	// HOMEFOG applications reach their 50th and 80th tasks
+	static double failTime = Double.parseDouble(System.getProperty("jamcloud.failAt", "590"));
+	static double bringBackTime = Double.parseDouble(System.getProperty("jamcloud.backAt", "945"));
 	
-	static List<Integer> capacityValues ;
+	Failures failures; // the failures and degradations of fogs the run injects
 	
-	static List<Link> fogLinks;
+	List<Link> fogLinks;
+	LinkTable linkTable; // dense index over fogLinks, one slot per fog pair
+	FogGrid fogGrid; // spatial index over fogN for home fog selection
+	PoolIndex poolIndex; // neighbors of every fog sorted by link latency, see poolFogs
+	FogLoad fogLoad; // requests and work at every fog, for the load-aware routings
+	Creator.Latency deviceLatency = new Creator.Latency(); // device to fog latency, with the load of this context
+	static final int NEAREST_K = 8; // closest fogs cached per device
 	
-	static List<Double> responseNumbers;// = new ArrayList<Double>();
+	static final String ASSIGNMENTS = "ATwo.txt", HOME_ASSIGNMENTS = "AOne.txt"; // allocation optimizer output
+	Assignments assignments, homeAssignments; // loaded once, see selectHomeAndPoolFogs
 	
-	static Tally meanResponse = new Tally("Mean Response Time"); 
+	// Response times per algorithm and tier, in constant memory; see recordResponse
+	Map<Integer, ResponseStats[]> responseStats = new TreeMap<Integer, ResponseStats[]>();
+	public static final int TIER_HOME = 0, TIER_POOL = 1, TIER_CLOUD = 2;
+	static final String[] TIER_NAMES = {"home", "pool", "cloud"};
+	
+	Tally meanResponse = new Tally("Mean Response Time"); 
 	public static final int HOMEFOG = 1;
 	public static final int CLOUDALG = 2;	
 	public static final int PO2 = 3;
@@ -62,24 +85,42 @@ public class JAMCloud {
 	public static final int IMPRPOOL = 9;
 	public static final int MODPOOL = 10;
 	
+	// Load-aware routings, over every fog, see FogLoad
+	public static final int JSQ = 11; // join the shortest queue
+	public static final int POWER_OF_D = 12; // the least loaded of D random fogs
+	public static final int JIQ = 13; // join an idle queue
+	public static final int LEAST_WORK = 14; // the fog with the least expected work
+	static final int D = Integer.getInteger("jamcloud.d", 2); // fogs sampled by POWER_OF_D
+	
 	public static final int LOCAL = 1;
 	public static final int REMOTE = 2;
 	
 	public static final int REAL = 1;
 	public static final int DUMMY  = 2;
-	RandomStream streamArr = new MRG32k3a();
+	
+	ProcessSimulator simulator = ProcessSimulator.newInstance(); // clock and event list of this context only
+	// Applications of the algorithms that allow it run as chains of events instead of processes, see Arrival
+	static final boolean EVENTS = Boolean.getBoolean("jamcloud.events");
+	boolean eventDriven = EVENTS;
+	// Links between every pair of fogs along the straight line between them, instead of routes over the topology
+	static final boolean MESH = Boolean.getBoolean("jamcloud.mesh");
+	int replication; // substream used by every random stream of the context, see stream
+	
+	// Stream i of every context; streams are created once, in order, and contexts draw from copies of them
+	private static final List<MRG32k3a> streams = new ArrayList<MRG32k3a>();
 	
 	static String RESULTS, SUBMITTED, GOODPUT, FOGUTIL; //Good
-	static double ALPHA, DECAY, ORDER;
-	static int NUMAPP, OPTION, NUMDEVICES, NUMBER_OF_FOGS_FAILED;
+	double ALPHA, DECAY, ORDER; // run parameters, given to the constructor
+	int NUMAPP, NUMBER_OF_FOGS_FAILED;
+	static int OPTION, NUMDEVICES;
 	
-	static int numberOfFogsToFail = NUMBER_OF_FOGS_FAILED;
+	int numberOfFogsToFail = NUMBER_OF_FOGS_FAILED;
 //	static int numberOfFogsToFail = 5;
-	static double fog_only = 0, pool_only = 0, cloud_only = 0, fog_to_pool = 0, fog_pool_to_cloud = 0, totalApplicationRequests = 0;
+	double fog_only = 0, pool_only = 0, cloud_only = 0, fog_to_pool = 0, fog_pool_to_cloud = 0, totalApplicationRequests = 0;
 	
 	
-	static double homevfogcount = 0, poolvfogcount = 0, vfogequalcount = 0, cloudvfogcount = 0;
-	static double percentHome, percentCloud, percentPool, totalPercent, homeGoodput, poolGoodput, totalGoodput, minHome, minNeighbor, minCloud, cloudGoodput;
+	double homevfogcount = 0, poolvfogcount = 0, vfogequalcount = 0, cloudvfogcount = 0;
+	double percentHome, percentCloud, percentPool, totalPercent, homeGoodput, poolGoodput, totalGoodput, minHome, minNeighbor, minCloud, cloudGoodput;
 	
 	static String HOMEREP, HOMEUTIL, HOMEWAIT, HOMESERV, HOMETHRU, HOMESOJ, HOMERESP;
 	static String POOLREP, POOLUTIL, POOLWAIT, POOLSERV, POOLTHRU, POOLSOJ, POOLRESP, DUMMYREAL;
@@ -91,25 +132,54 @@ public class JAMCloud {
 	static String REPORT, UTILIZATION, THROUGHPUT, WAIT, SERV, SOJ, RESPTIME, CLOUDUTIL; //Good
 	
 	
-	static List <Application> applicationList = new ArrayList<Application>();
-	static int totalFogRequests = 0, totalDeviceRequests = 0;
+	List <Application> applicationList = new ArrayList<Application>();
+	int totalFogRequests = 0, totalDeviceRequests = 0;
+	TraceWorkload workload; // arrivals and service demands from a trace, null for the Weibull service times
 	
 	public Tally waitTimeAvg, servTimeAvg, sojTimeAvg, devRespTime;	
 	public Tally remoteWaitAvg;
 	
+	double decay; // of the thresholds of the pool and cloud algorithms; the rest of their state is in the Routing of each application
 	
+	// Requests counted by tier, over all the applications of the context
+	double homeCount = 0, poolCount = 0, dummyPoolCount = 0;
+	double homeMinCount = 0, neighborCount = 0, cloudCount = 0;
 	
-	public JAMCloud(int choice) throws FileNotFoundException, IOException{
+	public JAMCloud(int choice, double alpha, double decayFactor, double order, int numApp, int fogsFailed) throws FileNotFoundException, IOException{
+		this(choice, alpha, decayFactor, order, numApp, fogsFailed, 0);
+	}
+	
+	public JAMCloud(int choice, double alpha, double decayFactor, double order, int numApp, int fogsFailed, int replication) throws FileNotFoundException, IOException{
+			ALPHA = alpha;
+			DECAY = decayFactor;
+			ORDER = order;
+			NUMAPP = numApp;
+			NUMBER_OF_FOGS_FAILED = fogsFailed;
+			numberOfFogsToFail = fogsFailed;
+			decay = decayFactor;
+			this.replication = replication;
 			
 		// Creates devices first from previous work but note that getNodeEdge was needed to create fogs
 //			devices = Creator.createDevicesForFogs();  //old declaration where devices have same location info as fogs
-			devices = Creator.createNewDevicesFromFile();
+			// The scenario is loaded once; this context takes its own copies of the devices and fogs
+			Scenario scenario = Creator.scenario();
+			devices = new ArrayList<Device>();
+			for (Device d : scenario.devices){
+				devices.add(new Device(d));
+			}
 			// Creates the fogs
-			fogN = Creator.googleFogs;
-			CLOUD = Creator.cloudNodes;
+			fogN = new ArrayList<Fog>();
+			for (Fog f : scenario.fogs){
+				Fog fog = new Fog(f, simulator);
+				fog.ordinal = fogN.size();
+				fogN.add(fog);
+			}
+			CLOUD = new ArrayList<Fog>();
+			for (Fog c : scenario.clouds){
+				CLOUD.add(new Fog(c, simulator));
+			}
 			
-			responseNumbers = new ArrayList<Double>();
-//			responseNumbers.add(1.0);
+			responseStats(choice);
 				
 			double j = 0;
 			for (Device d : devices){
@@ -150,36 +220,56 @@ public class JAMCloud {
 //				}
 //			}
 			
-			// Code below is for a single distinct link between 2 fogs
-			
-			for (int source = 0; source < fogN.size()-1; source++){
-				for (int destination = source + 1; destination  < fogN.size(); destination++ ){
-					Link link = new Link(fogN.get(source), fogN.get(destination), 1000); // bandwidth = 1GB
-					fogLinks.add(link);
+			// Code below is for a single distinct link between 2 fogs, as listed by the scenario, over the shortest
+			// route between them in the topology; the links share the edges of their routes
+			Routes routes = MESH ? null : Creator.routes();
+			Edge[] edges = routes == null ? null : new Edge[scenario.topology.getEdgeCount()];
+			int[] route = routes == null ? null : new int[scenario.topology.getSize()];
+			for (int l = 0; l < scenario.getLinkCount(); l++){
+				int a = scenario.linkSource[l], b = scenario.linkTarget[l];
+				int hops = routes == null ? Routes.NONE : routes.route(a, b, route);
+				Link link;
+				if (hops == Routes.NONE){
+					link = new Link(simulator, fogN.get(a), fogN.get(b), scenario.linkBandwidth[l]);
+				}
+				else {
+					Edge[] path = new Edge[hops];
+					for (int h = 0; h < hops; h++){
+						if (edges[route[h]] == null)
+							edges[route[h]] = new Edge(simulator, Scenario.LINK_BANDWIDTH);
+						path[h] = edges[route[h]];
+					}
+					link = new Link(fogN.get(a), fogN.get(b), path, routes.distance(a, b));
 				}
+				fogLinks.add(link);
+			}
+			// Every link lookup goes through the table instead of scanning fogLinks
+			linkTable = new LinkTable(fogN, fogLinks);
+			fogGrid = new FogGrid(fogN);
+			poolIndex = new PoolIndex(fogN, linkTable);
+			fogLoad = new FogLoad(fogN);
+			
+			// The assignment-driven algorithms read the optimizer output once here, not on every request
+			if (choice == VFOG || choice == CLOUDALG || choice == VFR){
+				assignments = scenario.assignments(ASSIGNMENTS, fogN);
 			}
 			
 			// Fault Tolerance
 			
-			capacityValues = new ArrayList<Integer>();
-			int capacity = 0;
-			for (int k = 0; k < NUMBER_OF_FOGS_FAILED; k++){
-				capacity = fogN.get(k).jresource.getCapacity();
-				capacityValues.add(capacity);
-			}
+			failures = Failures.fromProperties(this, replication);
+			if (NUMBER_OF_FOGS_FAILED > 0)
+				failures.outage(fogN.subList(0, NUMBER_OF_FOGS_FAILED), failTime, bringBackTime - failTime);
 		}
 	
-		 static class Application extends SimProcess{
+		 class Application extends SimProcess{
 			
 	//		fogN;
 			Fog fogServer;
 			int choice;
 			Device dev;
 			double latency, roundtrip;
-			static double homefoglat =  0.0, poollat = 0.0, curdelay = 0.0, totaldelay = 0.0, decay = DECAY, pool_probe = 0.0, totalCloudDelay = 0.0, cloudlat = 0.0, cloud_probes = 0.0;
 			int id = 0;
-			Fog tempFog, tFog;
-			double min = 1000000000;
+			Routing routing; // of the requests, by the algorithm choice
 			double responseTime;
 			public  Tally appResponseTime; 
 			public  Tally taskStatsSojourn;
@@ -194,29 +284,25 @@ public class JAMCloud {
 			double alpha     = 1.0;   // Parameters of the Weibull service times.
 			double lambda    = 4.0;   //               ''
 			double delta     = 0.0;   //               ''
-			RandomStream streamServ   = new MRG32k3a ("Gen. for service requirements");
+			// The application's streams are numbered by its position in applicationList
+			RandomStream streamServ   = stream(2 * applicationList.size(), replication); // service requirements
+			RandomStream streamRoute  = stream(2 * applicationList.size() + 1, replication); // random fog choices and cloud probes
 
 			RandomVariateGen taskServ = new WeibullGen (streamServ, alpha, lambda, delta);
 			
-			static double homeCount = 0, poolCount = 0, dummyPoolCount = 0;
-			static double homeMinCount = 0, neighborCount = 0, cloudCount = 0;
-			static boolean visit_cloud = false, takeHome = false, takePool = false, takeCloud = false;
-			
-			static boolean probe_cloud = false;
-			static double Tmin = 0, Tmax = 0.0, cloud_decay = 0.5, cap_level = 0.8, probe_pool = 0, cloud_probe_prob = 0.5;
-			static double homeLat = 0, poolLat = 0, cloudLat = 0, tPoolDelay = 0, cloudDelay = 0, Pinc = 0.1;
-			double minimum = 1000000;
-			
 			public Application(Fog f, int choice){
+				super(simulator);
 				this.fogServer = f;
 				this.choice = choice;
 			}
 			
 			public Application(int choice){
+				super(simulator);
 				this.choice = choice;
 			}
 			
 			public Application (Device d, int choice, double arr){
+				super(simulator);
 				this.dev = d;
 				this.choice = choice;
 				taskStatsSojourn = new Tally(d.getDevice_id().toString());
@@ -225,19 +311,22 @@ public class JAMCloud {
 				pool_response = new Tally(d.getDevice_id().toString());
 				cloud_response = new Tally(d.getDevice_id().toString());
 				this.arrRate = arr;
-				
+				routing = policy(choice).routing(JAMCloud.this, this);
 			}
 			
 			 public Integer getID(){
 				 return this.id++;
 			 }
 			 
-			 public String getTaskID(){
-				 
-				 String id = dev.getDeviceID().toString() +  getID().toString();
-				 return id;
+			 public long getTaskID(){
+				 return Util.taskId(dev.getDeviceID(), getID());
 			 }			
 	
+			 // Adds a response after warmup to the statistics of this application's algorithm
+			 void recordResponse(int tier, double response){
+				 responseStats(choice)[tier].add(response);
+			 }
+			 
 			 public double minimum(double a, double b){
 				 return Math.min(a, b);
 			 }
@@ -246,1135 +335,1189 @@ public class JAMCloud {
 				 return Math.min(Math.min(a, b), c);
 			 }
 			 
-			 public static List<Fog> APPPO2 (List<Fog> Fogs){
+			 public List<Fog> APPPO2 (List<Fog> Fogs){
 				 
 				 List<Fog> po2 = new ArrayList<Fog>();
 
-				 int random  = (int)(Math.random() * Fogs.size() );
+				 int random  = (int)(streamRoute.nextDouble() * Fogs.size() );
 		
 				 po2.add(Fogs.get(random));
 				 
-				 int anotherRandom = (int)(Math.random() * Fogs.size() );
+				 int anotherRandom = (int)(streamRoute.nextDouble() * Fogs.size() );
 		
 				 while (random == anotherRandom){
-					 anotherRandom = (int)(Math.random() * Fogs.size() );
+					 anotherRandom = (int)(streamRoute.nextDouble() * Fogs.size() );
 				 }
 				 po2.add(Fogs.get(anotherRandom));		 
 				 
 				 return po2;
 			 }
+			 
+			 // The fog of the two with the fewer requests in its wait queue
+			 Fog lessLoaded(List<Fog> po2){
+				 int first = po2.get(0).jresource.waitList().size(); // number of requests on the wait queue of the first fog
+				 int second = po2.get(1).jresource.waitList().size();
+				 if (first < second)
+					 return po2.get(0);
+				 if (first > second)
+					 return po2.get(1);
+				 int random = (int)(streamRoute.nextDouble() * 2); // break ties at random
+				 return po2.get(random);
+			 }
 			 // HomeFog and other algorithms performTask function
 			
 			public double performTask(Fog source, double servTime, double arrTime, Fog destination){
-				double latency = 0, returnLatency = 0, roundtrip = 0;
+				double latency = 0;
 				double requestResponse = 0, releaseResponse = 0;
 				
-				if (destination.jresource.getCapacity() == 0){
-					roundtrip = 12000;
-					return roundtrip;
-				}
-				else{
-					
-					
-					destination.jresource.setAlpha(ALPHA);
-					requestResponse = destination.jresource.request(2, servTime);
-					delay(servTime);
-					releaseResponse = destination.jresource.release(2);
-					
-					if (source.equals(destination)){
-						latency = dev.getDevLatatency() + Creator.Latency.DFLatency(dev, destination);
-						// Here we should use dynamic network latency, probably make the method foglatency static 
-						
-					}
-					else{
-						for (Link i : fogLinks){
-							if (source.equals(i.getSource()) && destination.equals(i.getDestination()) || source.equals(i.getDestination()) && destination.equals(i.getSource())){
-								i.incrementRequestMb(1);
-								latency = dev.getDevLatatency() + i.FogLatency();
-							}
-						}
-					}
-					
-					
-					if (nbTasks > WARMUP){
-						double res = (double) ((double)(destination.jresource.getCapacity()- (double)destination.jresource.getAvailable())/(double)destination.jresource.getCapacity());
-						destination.utilise.update(res, Sim.time());		
-						
-						 double avg = destination.jresource.statOnUtil().average() / destination.jresource.statOnUtil().max();
-						 destination.util_values.add(avg);
-					}
-					
-					if (source.equals(destination)){
-						roundtrip = (Sim.time() - arrTime + (2 * latency));
-					}
-					else{//  we want return latency
-						for (Link i : fogLinks){
-							if (source.equals(i.getSource()) && destination.equals(i.getDestination()) || source.equals(i.getDestination()) && destination.equals(i.getSource())){
-								i.incrementRequestMb(1);
-								returnLatency = dev.getDevLatatency() + i.FogLatency();
-								i.decrementRequestMB(2);
-							}
-						}
-						roundtrip = (Sim.time() - arrTime )+ latency + returnLatency;
-					}
-					return roundtrip + requestResponse + releaseResponse;
-
+				// A failed fog takes no request, the closest one that does serves it
+				source = failover(source);
+				destination = failover(destination);
+				
+				destination.jresource.setAlpha(ALPHA);
+				fogLoad.arrive(destination, servTime);
+				requestResponse = destination.jresource.request(2, servTime);
+				if (Double.isNaN(requestResponse)){
+					// The fog failed while the request waited for it
+					fogLoad.leave(destination, servTime);
+					return performTask(source, servTime, arrTime, destination);
 				}
+				delay(servTime);
+				releaseResponse = destination.jresource.release(2);
+				fogLoad.leave(destination, servTime);
+				
+				latency = latency(source, destination, 1);
+				recordUtilization(destination);
+				return roundtrip(source, destination, arrTime, latency, 1) + requestResponse + releaseResponse;
 				
 			}
 			
 // Function for VFR
-			public double performTask(String id, int queue, int classifier, double servTime, double arrTime, Fog source, Fog destination){
-				double latency = 0, returnLatency = 0, roundtrip = 0; 
+			public double performTask(long id, int queue, int classifier, double servTime, double arrTime, Fog source, Fog destination){
+				double latency = 0, roundtrip = 0; 
 				double reqestResponse = 0, releaseResponse = 0;
-				if (destination.jresource.getCapacity() == 0){
-					roundtrip = 12000;
-					return roundtrip;
-				}
-				else {
-					
-					if (source.equals(destination)){
-						latency = dev.getDevLatatency() + Creator.Latency.DFLatency(dev, destination);
-					}
-					else {
-						// For 2 disticnt links between 2 Fogs (Fog A -> FogB is different from FogB -> FogA), use code below
-	//					for (Link i : fogLinks){
-	//						if (source.equals(i.getSource()) && destination.equals(i.getDestination())){
-	//							i.incrementRequestMb(1);
-	//							latency = dev.getDevLatatency() + i.FogLatency();
-	//							i.decrementRequestMB(1);
-	//						}
-	//					}
-						
-						// For a single link between 2 fogs, no difference btn fogA -> fogB and fogB -> fogA
-						for (Link i : fogLinks){
-							if (source.equals(i.getSource()) && destination.equals(i.getDestination()) || source.equals(i.getDestination()) && destination.equals(i.getSource())){
-								i.incrementRequestMb(100);
-								latency = dev.getDevLatatency() + i.FogLatency();
-	//							i.decrementRequestMB(1);
-							}
-						}
-					}
-									
+				
+				source = failover(source);
+				destination = failover(destination);
+				
+				latency = latency(source, destination, 100);
+								
+				for (;;){
 					destination.jresource.setAlpha(ALPHA);
+					if (classifier != DUMMY)
+						fogLoad.arrive(destination, servTime);
 					reqestResponse = destination.jresource.request(2, queue, classifier, id, servTime, arrTime);
-					if (classifier != DUMMY){
-
-						delay(servTime);					 
-						releaseResponse = destination.jresource.release(2, "S");
-						
-						if (nbTasks > WARMUP){
-							double res = (double) ((double)(destination.jresource.getCapacity()- (double)destination.jresource.getAvailable())/(double)destination.jresource.getCapacity());
-							 destination.utilise.update(res, Sim.time());
-							 
-							 double avg = destination.jresource.statOnUtil().average() / destination.jresource.statOnUtil().max();
-							 destination.util_values.add(avg);
-						}
-						if (source.equals(destination)){
-							roundtrip = (Sim.time() - arrTime + (2 * latency));
-						}
-						else{//  we want return latency
-							for (Link i : fogLinks){
-								if (source.equals(i.getSource()) && destination.equals(i.getDestination()) || source.equals(i.getDestination()) && destination.equals(i.getSource())){
-									i.incrementRequestMb(100);
-									returnLatency = dev.getDevLatatency() + i.FogLatency();
-									i.decrementRequestMB(200);
-								}
-							}
-							roundtrip = Sim.time() - arrTime + latency + returnLatency;
-						}
-					 }
-					else 
-						roundtrip = 1000000000;
-					return roundtrip + reqestResponse + releaseResponse;
+					if (!Double.isNaN(reqestResponse))
+						break;
+					// The fog failed while the request waited for it; the request goes on to the fog taking over
+					if (classifier != DUMMY)
+						fogLoad.leave(destination, servTime);
+					Fog takeover = failover(destination);
+					latency += hop(destination, takeover, 100);
+					destination = takeover;
 				}
+				if (classifier != DUMMY){
+
+					delay(servTime);					 
+					releaseResponse = destination.jresource.release(2, "S");
+					fogLoad.leave(destination, servTime);
+					
+					recordUtilization(destination);
+					roundtrip = roundtrip(source, destination, arrTime, latency, 100);
+				 }
+				else 
+					roundtrip = 1000000000;
+				return roundtrip + reqestResponse + releaseResponse;
 
 			}
 			
+			// Latency from the device to destination through source; the request, of mb, is sent on the link between the fogs
+			// and charged the time it takes at the rate it gets when sent
+			double latency(Fog source, Fog destination, int mb){
+				if (source.equals(destination))
+					return dev.getDevLatatency() + deviceLatency.DFLatency(dev, destination);
+				// For a single link between 2 fogs, no difference btn fogA -> fogB and fogB -> fogA
+				Link i = linkTable.get(source, destination);
+				if (i == null)
+					return 0;
+				return dev.getDevLatatency() + i.send(mb).latency();
+			}
+			
+			// Latency of a request, of mb, sent on from the fog it waited for to the one taking over
+			double hop(Fog failed, Fog takeover, int mb){
+				Link i = linkTable.get(failed, takeover);
+				return i == null ? 0 : i.send(mb).latency();
+			}
+			
+			// Response of a request served at destination and sent back, the answer being of mb too
+			double roundtrip(Fog source, Fog destination, double arrTime, double latency, int mb){
+				if (source.equals(destination))
+					return simulator.time() - arrTime + (2 * latency);
+				double returnLatency = 0;
+				Link i = linkTable.get(source, destination);
+				if (i != null)
+					returnLatency = dev.getDevLatatency() + i.send(mb).latency();
+				return simulator.time() - arrTime + latency + returnLatency;
+			}
+			
+			// Utilization of destination once a request leaves it, after warmup
+			void recordUtilization(Fog destination){
+				if (nbTasks > WARMUP){
+					double res = (double) ((double)(destination.jresource.getCapacity()- (double)destination.jresource.getAvailable())/(double)destination.jresource.getCapacity());
+					destination.utilise.update(res, simulator.time());
+					
+					double avg = destination.jresource.statOnUtil().average() / destination.jresource.statOnUtil().max();
+					destination.util_values.add(avg);
+				}
+			}
+			
 			public void actions() {
 				double arriveTime;
 				double serviceTime;
-
-				
 				
 				while (nbTasks < totalNumberOfRequests){
-					totalApplicationRequests++;
-					arriveTime = Sim.time();
-
-					serviceTime = taskServ.nextDouble(); // Exponential
-					
-					if (nbTasks >= failPoint && nbTasks < bringBackPoint){
-//		
-						for (int i = 0; i < NUMBER_OF_FOGS_FAILED; i++){
-							fogN.get(i).jresource.setCapacity(0);
-
-						}
-						
+					if (workload != null){
+						// The next record of the trace, sent once its arrival time is reached
+						if (!workload.next())
+							break;
+						// A record arriving while the previous request is served waits for it, and its response
+						// counts from its arrival
+						arriveTime = workload.arrival;
+						serviceTime = workload.service;
+						if (arriveTime > simulator.time())
+							delay(arriveTime - simulator.time());
 					}
-					else if (nbTasks >= bringBackPoint){
-						for (int i = 0; i < capacityValues.size(); i++){
-							fogN.get(i).jresource.setCapacity(capacityValues.get(i));
-
-						}
+					else{
+						serviceTime = taskServ.nextDouble(); // Exponential
+						arriveTime = simulator.time();
 					}
+					totalApplicationRequests++;
 					
-					// Implementation of the algorithms
-					switch (choice){
-					
-					case CLOSER: // The initial VFR algorithm without routing requests to the cloud where the closest fog is selected
-	
-						
-						String id_closer = null;
-						if (id_closer == null){
-							id_closer = getTaskID();
-						}
-						
-						// send to homeFog
-						Fog homecloserfog = selectHomeFog(dev,fogN);
-						List<Fog> pool_closer = poolFogs(dev, homecloserfog,fogN, 3);
-						
-						homeLat = performTask(id_closer, LOCAL, REAL, serviceTime, arriveTime, homecloserfog, homecloserfog);
-
-						// send to pool
-						if (homeLat > tPoolDelay){
-//							poolCount++; //pool_only++;
-							if (tFog == null){
-								for (Fog p : pool_closer){
-									poolLat = performTask(id_closer, REMOTE, REAL, serviceTime, arriveTime, homecloserfog, p);//poolCount++;
-									if (poolLat < min){
-										minimum = poolLat;
-										tFog = p;
-									}
-									poolLat = minimum;
-								}
-								
-							}
-							else{
-								poolLat = performTask(id_closer, REMOTE, REAL, serviceTime, arriveTime, homecloserfog, tFog);//poolCount++;
-							}
-							probe_pool++;
-							tPoolDelay = Math.abs(poolLat - homeLat) * Math.pow(probe_pool, ORDER); 
-							
-							if (homeLat < poolLat){
-								fog_only++; homeCount++;
-								if (nbTasks > WARMUP){
-									home_response.add(homeLat);
-	//								taskStatsSojourn.add(homeLat); 
-									appResponseTime.add(homeLat);
-									meanResponse.add(homeLat);
-									responseNumbers.add(homeLat);
-								}
-							}
-							else{
-								pool_only++; poolCount++;
-								if (nbTasks > WARMUP){
-									pool_response.add(poolLat); 
-	//								taskStatsSojourn.add(poolLat); 
-									appResponseTime.add(poolLat);
-									meanResponse.add(poolLat);
-									responseNumbers.add(poolLat);
-								}
-							}
-								
-						}
-						// Here means if we did not probe the pool, then the homeFog was good
-						else{
-							tPoolDelay *= decay;
-							homeCount++; fog_only++; 
-							if (nbTasks > WARMUP){
-								home_response.add(homeLat);
-								appResponseTime.add(homeLat);
-								meanResponse.add(homeLat);
-								responseNumbers.add(homeLat);
-							}
-						}
-						
-						
-						
-						nbTasks++;
-						break;
-					
-					case VFOG: // The VFR algorithm without routing requests to the cloud
-	
-						
-						String idcW = null;
-						if (idcW == null){
-							idcW = getTaskID();
-						}
-						
-						// send to homeFog
-//						Fog homecwfog = selectHomeFog(dev,fogN);
-//						List<Fog> poolw = poolFogs(dev, homecwfog,fogN, 3);
-						
-						List<Fog> selectedFogsw = null;
-						try {
-							selectedFogsw = selectHomeAndPoolFogs(dev, fogN);
-//							homecfog = selectHomeAndPoolFogs(dev, fogN);
-						} catch (FileNotFoundException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (IOException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-												
-						Fog homecwfog = selectedFogsw.get(0); 
-						Fog pool1w = selectedFogsw.get(1); 
-						
-						List<Fog>poolw = new ArrayList<Fog>();
-						poolw.add(pool1w);
-						
-						homeLat = performTask(idcW, LOCAL, REAL, serviceTime, arriveTime, homecwfog, homecwfog);
-
-						// send to pool
-						if (homeLat > tPoolDelay){
-//							poolCount++; //pool_only++;
-							if (tFog == null){
-								for (Fog p : poolw){
-									poolLat = performTask(idcW, REMOTE, REAL, serviceTime, arriveTime, homecwfog, p);//poolCount++;
-									if (poolLat < min){
-										minimum = poolLat;
-										tFog = p;
-									}
-									poolLat = minimum;
-								}
-								
-							}
-							else{
-								poolLat = performTask(idcW, REMOTE, REAL, serviceTime, arriveTime, homecwfog, tFog);//poolCount++;
-							}
-							probe_pool++;
-							tPoolDelay = Math.abs(poolLat - homeLat) * Math.pow(probe_pool, ORDER); 
-							
-							if (homeLat < poolLat){
-								fog_only++; homeCount++;
-								if (nbTasks > WARMUP){
-									home_response.add(homeLat);
-	//								taskStatsSojourn.add(homeLat); 
-									appResponseTime.add(homeLat);
-									meanResponse.add(homeLat);
-									responseNumbers.add(homeLat);
-								}
-							}
-							else{
-								pool_only++; poolCount++;
-								if (nbTasks > WARMUP){
-									pool_response.add(poolLat); 
-	//								taskStatsSojourn.add(poolLat); 
-									appResponseTime.add(poolLat);
-									meanResponse.add(poolLat);
-									responseNumbers.add(poolLat);
-								}
-							}
-								
-						}
-						// Here means if we did not probe the pool, then the homeFog was good
-						else{
-							tPoolDelay *= decay;
-							homeCount++; fog_only++; 
-							if (nbTasks > WARMUP){
-								home_response.add(homeLat);
-								appResponseTime.add(homeLat);
-								meanResponse.add(homeLat);
-								responseNumbers.add(homeLat);
-							}
-						}
-						
-						
-						
-						nbTasks++;
-						break;
-					
-					
-					case CLOUDALG:
-						
-						//Let us initialize Tmin and Tmax to be the average and max of the response times seen so far
-						if (taskStatsSojourn.numberObs() != 0){
-							Tmin = taskStatsSojourn.average();
-							Tmax = taskStatsSojourn.max();
-						}
-						
-						if (Tmin > Tmax){
-							System.out.println("Bad");
-						}
-						
-
-						//send probe to home fog + pool
-						
-						String idc = null;
-						if (idc == null){
-							idc = getTaskID();
-						}
-//						Fog homecfog = null;
-						// send to home fog
-//						Fog homecfog = selectHomeFog(dev,fogN);
-//						List<Fog> pool = poolFogs(dev, homecfog,fogN, 3);
-						
-						List<Fog> selectedFogs = null;
-						try {
-							selectedFogs = selectHomeAndPoolFogs(dev, fogN);
-//							homecfog = selectHomeAndPoolFogs(dev, fogN);
-						} catch (FileNotFoundException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (IOException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-												
-						Fog homecfog = selectedFogs.get(0); 
-						Fog pool1 = selectedFogs.get(1); 
-						
-						List<Fog>pool = new ArrayList<Fog>();
-						pool.add(pool1);
-						
-						homeLat = performTask(idc, LOCAL, REAL, serviceTime, arriveTime, homecfog, homecfog);
-//						homeCount++;
-						
-						
-						// send to pool
-						if (homeLat > tPoolDelay){
-//							poolCount++; //pool_only++;
-							if (tFog == null){
-								for (Fog p : pool){
-									poolLat = performTask(idc, REMOTE, REAL, serviceTime, arriveTime, homecfog, p);//poolCount++;
-									if (poolLat < min){
-										minimum = poolLat;
-										tFog = p;
-									}
-									poolLat = minimum;
-								}
-								
-							}
-							else{
-								poolLat = performTask(idc, REMOTE, REAL, serviceTime, arriveTime, homecfog, tFog);//poolCount++;
-							}
-							probe_pool++;
-							tPoolDelay = Math.abs(poolLat - homeLat) * Math.pow(probe_pool, ORDER); 
-							
-							if (homeLat < poolLat){
-								 
-								if (nbTasks > WARMUP){	
-									home_response.add(homeLat);
-									homeCount++; fog_only++;
-								}
-//								homeCount++; fog_only++;
-								taskStatsSojourn.add(homeLat); 
-							}
-							else{
-								 
-								if (nbTasks > WARMUP){	
-									pool_response.add(poolLat); 
-									poolCount++; pool_only++; 
-								} 
-//								poolCount++; pool_only++; 
-								taskStatsSojourn.add(poolLat); 
-							}
-								
-						}
-						// Here means if we did not probe the pool, then the homefog was good
-						else{
-							tPoolDelay *= decay;
-							
-							if (nbTasks > WARMUP){	
-								home_response.add(homeLat);
-								homeCount++; fog_only++; 
-							}
-							taskStatsSojourn.add(homeLat); 
-
-						}
-						
-						if (probe_cloud){
-							
-							cloudLat = performTask(idc, LOCAL, REAL, serviceTime, arriveTime, CLOUD.get(CLOUD.size()-1),  CLOUD.get(CLOUD.size()-1));
-							
-							if (homeLat < cloudLat || poolLat < cloudLat){
-								cloud_probe_prob *= cloud_decay;
-								double r = Math.random(); // a random number
-
-								if (r < (1-cloud_probe_prob)){
-									probe_cloud = false;
-								}
-								
-								if (homeLat < poolLat){
-									if (nbTasks > WARMUP){
-										appResponseTime.add(homeLat);
-										meanResponse.add(homeLat); 
-										responseNumbers.add(homeLat);
-										if (homeLat == 0) System.out.println("HOMELAT IS ZERO");
-									}
-								}
-								else{
-									if (nbTasks > WARMUP){
-										appResponseTime.add(poolLat);
-										meanResponse.add(poolLat);
-										responseNumbers.add(poolLat);	
-										if (poolLat == 0) System.out.println("POOLLAT IS ZERO");
-									}
-								}
-									
-							}
-							// If cloud response is better
-							else{
-
-								if (nbTasks > WARMUP){
-									cloud_only++; cloudCount++;
-									cloud_response.add(cloudLat); 
-									appResponseTime.add(cloudLat);
-									meanResponse.add(cloudLat);
-									responseNumbers.add(cloudLat);
-									if (cloudLat == 0) System.out.println("CLOUDLAT IS ZERO");
-								}
-							}
-						}
-						else{
-
-							if (homeLat < Tmin || poolLat < Tmin){
-								if (cloud_probe_prob < cap_level){
-									cloud_probe_prob += Pinc;
-								}
-								else{
-									cloud_probe_prob = cap_level;
-								}
-								
-								if (homeLat < poolLat){
-									if (nbTasks > WARMUP){
-										appResponseTime.add(homeLat);
-										meanResponse.add(homeLat);
-										responseNumbers.add(homeLat);
-										if (homeLat == 0) System.out.println("HOMELAT IS ZERO");
-									}
-								}
-								else{
-									if (nbTasks > WARMUP){
-										appResponseTime.add(poolLat);
-										meanResponse.add(poolLat);
-										responseNumbers.add(poolLat);
-										if (poolLat == 0) System.out.println("POOLLAT IS ZERO");
-									}
-								}
-							}
-							else if (homeLat > Tmin && poolLat > Tmin){
-								double r  = Math.random();
-
-								if (r < cloud_probe_prob){
-									probe_cloud = true;
-									cloudLat = performTask(idc, LOCAL, REAL, serviceTime, arriveTime, CLOUD.get(CLOUD.size()-1),  CLOUD.get(CLOUD.size()-1));
-
-									if (nbTasks > WARMUP){
-										cloud_only++; cloudCount++;
-										cloud_response.add(cloudLat); 
-										appResponseTime.add(cloudLat); meanResponse.add(cloudLat);
-										responseNumbers.add(cloudLat);
-										if (cloudLat == 0) System.out.println("CLOUDLAT IS ZERO");
-									}
-								}
-							}
-							else if (homeLat > Tmax && poolLat > Tmax){
-									probe_cloud = true;
-									cloudLat = performTask(idc, LOCAL, REAL, serviceTime, arriveTime, CLOUD.get(CLOUD.size()-1),  CLOUD.get(CLOUD.size()-1));
-																		
-//									cloud_only++; cloudCount++;
-										if (nbTasks > WARMUP){
-											cloud_only++; cloudCount++;
-										cloud_response.add(cloudLat); 
-										appResponseTime.add(cloudLat); meanResponse.add(cloudLat);
-										responseNumbers.add(cloudLat);
-										if (cloudLat == 0) System.out.println("CLOUDLAT IS ZERO");
-									}
-							}
-						}
-
-						
-						nbTasks++;
-						break;
-						
-						// HOMEFOG ALGORITHM
-					case HOMEFOG:
-						
-						
-						Fog hFog = selectHomeFog(dev, fogN);
-//						List<Fog> selectedFog = null;
-//						try {
-//							selectedFog = selectHomeAndPoolFogs(dev, fogN);
-////							homecfog = selectHomeAndPoolFogs(dev, fogN);
-//						} catch (FileNotFoundException e) {
-//							// TODO Auto-generated catch block
-//							e.printStackTrace();
-//						} catch (IOException e) {
-//							// TODO Auto-generated catch block
-//							e.printStackTrace();
-//						}
-//												
-//						Fog hFog = selectedFog.get(0); 
-						
-						
-						responseTime = performTask(hFog, serviceTime, arriveTime, hFog);
-						
-						nbTasks++;
-						break;
-						
-					case PO2:						
-						List <Fog> po2 = APPPO2(fogN); // Gets two random fogs
-						int first = po2.get(0).jresource.waitList().size(); // number of requests on the wait queue of the first fog
-						int second = po2.get(1).jresource.waitList().size();
-						
-						if (first < second){
-							responseTime = performTask(po2.get(0), serviceTime, arriveTime, po2.get(0));
-						 }
-						 else if (first > second)
-						 {
-							 responseTime = performTask(po2.get(1), serviceTime, arriveTime, po2.get(1));
-
-						 } 
-						 else if (first == second){ // break arbitrary ties
-							 int random = (int)(Math.random() * 1 + 1);
-							 responseTime = performTask(po2.get(random), serviceTime, arriveTime, po2.get(random));
-//
+					routing.route(serviceTime, arriveTime);
+					nbTasks++;
+				}
+				
+				routing.report();
+				simulator.stop(); // N tasks have now completed
+			}
+			
+			// The first WARMUP requests of an application are not recorded, nor the one ending then
+			boolean warm(){
+				return nbTasks > WARMUP;
+			}
+			
+			// Records the response of a request, answered by a fog of tier, once the warmup is over
+			void record(int tier, double response){
+				if (warm()){
+					tierResponse(tier).add(response);
+					recordMean(tier, response);
+				}
+			}
+			
+			// Records the response of a request in the means and the response records, not in the tally of its tier
+			void recordMean(int tier, double response){
+				appResponseTime.add(response);
+				meanResponse.add(response);
+				recordResponse(tier, response);
+			}
+			
+			Tally tierResponse(int tier){
+				return tier == TIER_HOME ? home_response : tier == TIER_POOL ? pool_response : cloud_response;
+			}
+			
+		}
+		 
+		 /*
+		  * Routing algorithms. The policy registered for the choice of an application makes its Routing,
+		  * which sends every request of the application to fogs, picked by the algorithm, and records the
+		  * response with Application.record. The last answers, thresholds and probe counts an algorithm
+		  * learns from the responses are kept in the RoutingState of its Routing, with the pool fog it settled
+		  * on, so every application adapts to its own responses. An algorithm is added by registering a
+		  * policy under a new choice; the request loops of Application and Arrival are the same for every
+		  * algorithm.
+		  */
+		 public interface RoutingPolicy {
+			 Routing routing(JAMCloud context, Application app);
+		 }
+		 
+		 private static final Map<Integer, RoutingPolicy> POLICIES = new HashMap<Integer, RoutingPolicy>();
+		 static {
+			 register(HOMEFOG, (c, app) -> c.new HomeFogRouting(app));
+			 register(PO2, (c, app) -> c.new Po2Routing(app));
+			 register(MODPO2, (c, app) -> c.new ModPo2Routing(app));
+			 register(CLOSER, (c, app) -> c.new CloserRouting(app)); // and MODPOOL, the same choice
+			 register(VFOG, (c, app) -> c.new VfogRouting(app));
+			 register(CLOUDALG, (c, app) -> c.new CloudAlgRouting(app));
+			 register(VFR, (c, app) -> c.new VfrRouting(app));
+			 register(MINDELAY, (c, app) -> c.new MinDelayRouting(app, true));
+			 register(WITHOUT_CLOUD_MINDELAY, (c, app) -> c.new MinDelayRouting(app, false));
+			 register(JSQ, (c, app) -> c.new JsqRouting(app));
+			 register(POWER_OF_D, (c, app) -> c.new PowerOfDRouting(app, D));
+			 register(JIQ, (c, app) -> c.new JiqRouting(app));
+			 register(LEAST_WORK, (c, app) -> c.new LeastWorkRouting(app));
+		 }
+		 
+		 // Routes the applications of choice made from now on with policy, in place of the one registered
+		 public static synchronized void register(int choice, RoutingPolicy policy){
+			 POLICIES.put(choice, policy);
+		 }
+		 
+		 static synchronized RoutingPolicy policy(int choice){
+			 RoutingPolicy policy = POLICIES.get(choice);
+			 if (policy == null)
+				 throw new IllegalArgumentException("No routing policy for algorithm " + choice);
+			 return policy;
+		 }
+		 
+		 // What the adaptive routings learned from the responses: last answers, thresholds and probe counts
+		 static class RoutingState {
+			 double homeLat = 0, poolLat = 0; // last answers of the home fog and of the pool
+			 double tPoolDelay = 0, probePool = 0; // threshold on the home fog answer, and number of probes of the pool
+			 double Tmin = 0, Tmax = 0, cloudLat = 0; // CLOUDALG
+			 boolean probeCloud = false;
+			 double cloudProbeProb = 0.5;
+			 double homefoglat = 0, poollat = 0, cloudlat = 0; // VFR, last answers
+			 double totaldelay = 0, poolProbe = 0; // pool threshold and probes
+			 double totalCloudDelay = 0, cloudProbes = 0; // cloud threshold and probes
+			 boolean visitCloud = false;
+		 }
+		 
+		 /*
+		  * An algorithm routing the requests of one application, a step at a time: start picks the first fog a
+		  * request is sent to, and answered is told every response, picking the next fog or ending the request.
+		  * route runs the steps in the process of the application, Arrival runs the same steps as events.
+		  */
+		 abstract class Routing {
+			 final Application app;
+			 
+			 final RoutingState state; // of the application alone
+			 
+			 // The next fog the request is sent to, through source; queue LOCAL or REMOTE for the VFR performTask,
+			 // 0 for the other one, id the request for the first
+			 long id;
+			 Fog source, destination;
+			 int queue;
+			 
+			 Routing(Application app){
+				 this.app = app;
+				 state = new RoutingState();
+			 }
+			 
+			 // A request arrives; false if it is sent to no fog, else true with the fog it is sent to first
+			 abstract boolean start();
+			 
+			 // The fog the request was sent to answered; true if the request is sent to another fog, false once done
+			 abstract boolean answered(double response);
+			 
+			 // Sets the next fog; true
+			 boolean send(Fog source, Fog destination, int queue){
+				 this.source = source;
+				 this.destination = destination;
+				 this.queue = queue;
+				 return true;
+			 }
+			 
+			 // Sends a request arriving at arriveTime, served for serviceTime, until it has its response
+			 final void route(double serviceTime, double arriveTime){
+				 if (!start())
+					 return;
+				 double response;
+				 do {
+					 if (queue == 0)
+						 response = app.performTask(source, serviceTime, arriveTime, destination);
+					 else
+						 response = app.performTask(id, queue, REAL, serviceTime, arriveTime, source, destination);
+				 } while (answered(response));
+			 }
+			 
+			 // Once the application sent all its requests
+			 void report(){
+			 }
+			 
+			 // The share of every tier among the requests counted, as MINDELAY and CLOUDALG report it
+			 void reportTiers(){
+				 double total = fog_only + pool_only + cloud_only;
+				 minHome = fog_only / total * 100;
+				 minNeighbor = pool_only / total * 100;
+				 minCloud = cloud_only / total * 100;
+				 
+				 System.out.println("HomeFog Application Requests : " + fog_only + "Percentage : " + (fog_only/total * 100));
+				 System.out.println("Pool Application Requests : " + pool_only + "Percentage : " + (pool_only/total * 100));
+				 System.out.println("Cloud Application Requests : " + cloud_only + "Percentage : " + (cloud_only/total * 100));
+				 
+				 System.out.println();
+				 
+				 System.out.println("HomeFog Response Average : " + app.home_response.average());
+				 System.out.println("Pool Response Average : " + app.pool_response.average());
+				 System.out.println("Cloud Response Average : " + app.cloud_response.average());
+			 }
+		 }
+		 
+		 // A request goes to one fog, picked when it arrives
+		 abstract class SingleFogRouting extends Routing {
+			 final int tier; // of the fog picked, in the response records
+			 
+			 SingleFogRouting(Application app, int tier){
+				 super(app);
+				 this.tier = tier;
+			 }
+			 
+			 abstract Fog pick();
+			 
+			 boolean start(){
+				 Fog fog = pick();
+				 return send(fog, fog, 0);
+			 }
+			 
+			 // The request is counted as ended before it is recorded, and only in the means, not by tier
+			 boolean answered(double response){
+				 app.responseTime = response;
+				 if (app.nbTasks + 1 > WARMUP)
+					 app.recordMean(tier, response);
+				 return false;
+			 }
+		 }
+		 
+		 // HOMEFOG: the closest fog
+		 class HomeFogRouting extends SingleFogRouting {
+			 HomeFogRouting(Application app){
+				 super(app, TIER_HOME);
+			 }
+			 
+			 Fog pick(){
+				 return selectHomeFog(app.dev, fogN);
+			 }
+		 }
+		 
+		 // PO2: the less loaded of two random fogs
+		 class Po2Routing extends SingleFogRouting {
+			 Po2Routing(Application app){
+				 super(app, TIER_POOL);
+			 }
+			 
+			 Fog pick(){
+				 return app.lessLoaded(app.APPPO2(fogN));
+			 }
+		 }
+		 
+		 // MODPO2: the less loaded of two random fogs among the 5 closest to the home fog
+		 class ModPo2Routing extends SingleFogRouting {
+			 ModPo2Routing(Application app){
+				 super(app, TIER_POOL);
+			 }
+			 
+			 Fog pick(){
+				 List<Fog> zones = poolFogs(app.dev, selectHomeFog(app.dev, fogN), fogN, 5); // make 5 fogs per zone
+				 return app.lessLoaded(app.APPPO2(zones));
+			 }
+		 }
+		 
+		 /*
+		  * The load-aware routings, over every fog, by the FogLoad of the context. Ties are broken with the
+		  * route stream of the application, so a run is reproduced from its seed. Failed fogs are not given;
+		  * when every fog failed, the request goes to the cloud.
+		  */
+		 
+		 // JSQ: one of the fogs with the fewest requests
+		 class JsqRouting extends SingleFogRouting {
+			 JsqRouting(Application app){
+				 super(app, TIER_POOL);
+			 }
+			 
+			 Fog pick(){
+				 Fog f = fogLoad.leastLoaded(app.streamRoute);
+				 return f != null ? f : CLOUD.get(CLOUD.size() - 1);
+			 }
+		 }
+		 
+		 // POWER_OF_D: the one with the fewest requests of d fogs drawn at random, d being at most the number of fogs
+		 class PowerOfDRouting extends SingleFogRouting {
+			 final int[] drawn; // ordinals of the fogs drawn for the request
+			 
+			 PowerOfDRouting(Application app, int d){
+				 super(app, TIER_POOL);
+				 if (d < 1)
+					 throw new IllegalArgumentException("POWER_OF_D needs d >= 1, not " + d);
+				 drawn = new int[d];
+			 }
+			 
+			 Fog pick(){
+				 RandomStream stream = app.streamRoute;
+				 int k = fogLoad.size();
+				 int best = -1, tied = 0;
+				 for (int i = 0; i < drawn.length && i < k; i++){
+					 int j = draw(stream, k, i);
+					 drawn[i] = j;
+					 if (fogLoad.failed[j])
+						 continue;
+					 int load = fogLoad.load[j];
+					 if (best < 0 || load < fogLoad.load[best]){
+						 best = j;
+						 tied = 1;
+					 }
+					 else if (load == fogLoad.load[best] && stream.nextInt(0, tied++) == 0)
+						 best = j; // each of the tied fogs is kept as likely
+				 }
+				 if (best >= 0)
+					 return fogLoad.fogs[best];
+				 Fog f = fogLoad.any(stream); // every fog drawn failed
+				 return f != null ? f : CLOUD.get(CLOUD.size() - 1);
+			 }
+			 
+			 // A fog other than the i drawn already
+			 private int draw(RandomStream stream, int k, int i){
+				 for (;;){
+					 int j = stream.nextInt(0, k - 1);
+					 int p = 0;
+					 while (p < i && drawn[p] != j)
+						 p++;
+					 if (p == i)
+						 return j;
+				 }
+			 }
+		 }
+		 
+		 // JIQ: one of the idle fogs, or any fog if none is idle
+		 class JiqRouting extends SingleFogRouting {
+			 JiqRouting(Application app){
+				 super(app, TIER_POOL);
+			 }
+			 
+			 Fog pick(){
+				 Fog f = fogLoad.idle(app.streamRoute);
+				 if (f == null)
+					 f = fogLoad.any(app.streamRoute);
+				 return f != null ? f : CLOUD.get(CLOUD.size() - 1);
+			 }
+		 }
+		 
+		 // LEAST_WORK: the fog whose requests need the least service time, for the requests it serves at once
+		 class LeastWorkRouting extends SingleFogRouting {
+			 LeastWorkRouting(Application app){
+				 super(app, TIER_POOL);
+			 }
+			 
+			 Fog pick(){
+				 Fog f = fogLoad.leastWork();
+				 return f != null ? f : CLOUD.get(CLOUD.size() - 1);
+			 }
+		 }
+		 
+		 /*
+		  * A request goes to the home fog, and to the pool too when the home fog answered slower than a
+		  * threshold; the faster of the two answers. The first time, every fog of the pool is probed and one
+		  * is kept for the next requests. The threshold is then the gap between the home fog and the pool,
+		  * growing with the number of probes, and decays while the home fog answers within it.
+		  */
+		 abstract class PoolRouting extends Routing {
+			 Fog home, tFog; // home fog of the request, and the pool fog kept
+			 List<Fog> pool; // of the request
+			 int step; // 0 at the home fog, then the number of pool fogs sent to
+			 boolean probe; // sending to every pool fog, as no fog was kept yet
+			 double min = 1000000000, minimum = 1000000; // the pool answers under min are kept while probing
+			 
+			 PoolRouting(Application app){
+				 super(app);
+			 }
+			 
+			 // Sets the home fog and the pool of a request
+			 abstract void select();
+			 
+			 boolean start(){
+				 id = app.getTaskID();
+				 select();
+				 step = 0;
+				 return send(home, home, LOCAL);
+			 }
+			 
+			 boolean answered(double response){
+				 if (step == 0){
+					 if (homeAnswered(response))
+						 return false;
+					 probe = tFog == null;
+					 if (!probe || !pool.isEmpty()){
+						 step = 1;
+						 return send(home, probe ? pool.get(0) : tFog, REMOTE);
+					 }
+				 }
+				 else if (probe){
+					 probed(pool.get(step - 1), response);
+					 if (step < pool.size()){
+						 step++;
+						 return send(home, pool.get(step - 1), REMOTE);
+					 }
+				 }
+				 else
+					 state.poolLat = response;
+				 poolAnswered();
+				 return false;
+			 }
+			 
+			 // The home fog answered; true if it was within the threshold, the pool is then not probed
+			 boolean homeAnswered(double response){
+				 state.homeLat = response;
+				 if (state.homeLat > state.tPoolDelay)
+					 return false;
+				 state.tPoolDelay *= decay;
+				 chose(TIER_HOME, state.homeLat);
+				 return true;
+			 }
+			 
+			 // A fog p of the pool answered a probe
+			 void probed(Fog p, double response){
+				 if (response < min){
+					 minimum = response;
+					 tFog = p;
+				 }
+				 state.poolLat = minimum;
+			 }
+			 
+			 // The pool answered, after the home fog
+			 void poolAnswered(){
+				 state.probePool++;
+				 state.tPoolDelay = Math.abs(state.poolLat - state.homeLat) * Math.pow(state.probePool, ORDER);
+				 if (state.homeLat < state.poolLat)
+					 chose(TIER_HOME, state.homeLat);
+				 else
+					 chose(TIER_POOL, state.poolLat);
+			 }
+			 
+			 // The answer of the home fog or of the pool was the faster
+			 void chose(int tier, double response){
+				 if (tier == TIER_HOME){
+					 homeCount++; fog_only++;
+				 }
+				 else{
+					 poolCount++; pool_only++;
+				 }
+				 app.record(tier, response);
+			 }
+		 }
+		 
+		 // CLOSER: the pool is the 3 fogs closest to the home fog
+		 class CloserRouting extends PoolRouting {
+			 CloserRouting(Application app){
+				 super(app);
+			 }
+			 
+			 void select(){
+				 home = selectHomeFog(app.dev, fogN);
+				 pool = poolFogs(app.dev, home, fogN, 3);
+			 }
+		 }
+		 
+		 // VFOG: the home fog and the pool fog assigned to the device by the optimizer
+		 class VfogRouting extends PoolRouting {
+			 VfogRouting(Application app){
+				 super(app);
+			 }
+			 
+			 void select(){
+				 List<Fog> selected;
+				 try {
+					 selected = selectHomeAndPoolFogs(app.dev, fogN);
+				 } catch (IOException e){
+					 throw new UncheckedIOException(e);
+				 }
+				 home = selected.get(0);
+				 pool = selected.subList(1, 2);
+			 }
+		 }
+		 
+		 /*
+		  * CLOUDALG: VFOG, then the cloud. While the cloud is probed, it answers every request, and it is
+		  * left with a probability growing as it is slower than the fogs. Otherwise a fog answering faster
+		  * than the mean response so far (Tmin) makes the cloud more likely to be probed again, and when
+		  * both are slower the cloud is probed with that probability, or always once both are slower than
+		  * the slowest response so far (Tmax).
+		  */
+		 class CloudAlgRouting extends VfogRouting {
+			 static final double CLOUD_DECAY = 0.5, CAP_LEVEL = 0.8, P_INC = 0.1;
+			 boolean atCloud; // the request was sent to the cloud, after the fogs
+			 boolean probing; // the cloud was probed already when the request was sent to it
+			 
+			 CloudAlgRouting(Application app){
+				 super(app);
+			 }
+			 
+			 boolean start(){
+				 // Tmin and Tmax are the average and max of the response times seen so far
+				 if (app.taskStatsSojourn.numberObs() != 0){
+					 state.Tmin = app.taskStatsSojourn.average();
+					 state.Tmax = app.taskStatsSojourn.max();
+				 }
+				 atCloud = false;
+				 return super.start();
+			 }
+			 
+			 boolean answered(double response){
+				 if (atCloud){
+					 state.cloudLat = response;
+					 if (!probing)
+						 recordCloud();
+					 else if (state.homeLat < state.cloudLat || state.poolLat < state.cloudLat){
+						 state.cloudProbeProb *= CLOUD_DECAY;
+						 if (app.streamRoute.nextDouble() < 1 - state.cloudProbeProb)
+							 state.probeCloud = false;
+						 recordFogs();
+					 }
+					 else
+						 recordCloud();
+					 return false;
+				 }
+				 if (super.answered(response))
+					 return true;
+				 
+				 if (state.probeCloud)
+					 return sendCloud(true);
+				 else if (state.homeLat < state.Tmin || state.poolLat < state.Tmin){
+					 state.cloudProbeProb = state.cloudProbeProb < CAP_LEVEL ? state.cloudProbeProb + P_INC : CAP_LEVEL;
+					 recordFogs();
+				 }
+				 else if (state.homeLat > state.Tmin && state.poolLat > state.Tmin){
+					 if (app.streamRoute.nextDouble() < state.cloudProbeProb){
+						 state.probeCloud = true;
+						 return sendCloud(false);
+					 }
+				 }
+				 else if (state.homeLat > state.Tmax && state.poolLat > state.Tmax){
+					 state.probeCloud = true;
+					 return sendCloud(false);
+				 }
+				 return false;
+			 }
+			 
+			 boolean sendCloud(boolean probing){
+				 Fog cloud = CLOUD.get(CLOUD.size() - 1);
+				 atCloud = true;
+				 this.probing = probing;
+				 return send(cloud, cloud, LOCAL);
+			 }
+			 
+			 // The fogs are only counted and tallied by tier here; the response is recorded once the cloud is decided on
+			 void chose(int tier, double response){
+				 if (app.warm()){
+					 app.tierResponse(tier).add(response);
+					 if (tier == TIER_HOME){
+						 homeCount++; fog_only++;
+					 }
+					 else{
+						 poolCount++; pool_only++;
+					 }
+				 }
+				 app.taskStatsSojourn.add(response);
+			 }
+			 
+			 void recordFogs(){
+				 if (!app.warm())
+					 return;
+				 if (state.homeLat < state.poolLat)
+					 app.recordMean(TIER_HOME, state.homeLat);
+				 else
+					 app.recordMean(TIER_POOL, state.poolLat);
+			 }
+			 
+			 void recordCloud(){
+				 if (app.warm()){
+					 cloud_only++; cloudCount++;
+				 }
+				 app.record(TIER_CLOUD, state.cloudLat);
+			 }
+			 
+			 void report(){
+				 reportTiers();
+			 }
+		 }
+		 
+		 /*
+		  * VFR: as VFOG with the optimizer's home and pool fogs, and the cloud behind them. The cloud is
+		  * probed when the pool was, and both the home fog and the pool answered slower than a threshold on
+		  * the cloud, which follows the gap between the cloud and the faster fog as the pool threshold does.
+		  * The fastest answer of the request is its response.
+		  */
+		 class VfrRouting extends Routing {
+			 static final int AT_HOME = 0, AT_POOL = 1, AT_CLOUD = 2; // where the request was sent
+			 Fog tempFog; // pool fog kept
+			 double min = 1000000000;
+			 List<Fog> pool; // of the request
+			 Fog home;
+			 int at, step; // where the request was sent, and the number of pool fogs probed
+			 boolean probe; // sending to every pool fog, as no fog was kept yet
+			 double relative; // faster answer of the fogs, when the cloud was sent to
+			 
+			 VfrRouting(Application app){
+				 super(app);
+			 }
+			 
+			 boolean start(){
+				 id = app.getTaskID();
+				 List<Fog> selected;
+				 try {
+					 selected = selectHomeAndPoolFogs(app.dev, fogN);
+				 } catch (IOException e){
+					 throw new UncheckedIOException(e);
+				 }
+				 home = selected.get(0);
+				 pool = selected.subList(1, 2);
+				 at = AT_HOME;
+				 return send(home, home, LOCAL);
+			 }
+			 
+			 boolean answered(double response){
+				 if (at == AT_HOME){
+					 state.homefoglat = response;
+					 homeCount++;
+					 
+					 // No reply from the home fog within the threshold
+					 if (state.homefoglat > state.totaldelay){
+						 poolCount++; homeCount--;
+						 probe = tempFog == null;
+						 if (!probe || !pool.isEmpty()){
+							 at = AT_POOL;
+							 step = 1;
+							 return send(home, probe ? pool.get(0) : tempFog, REMOTE);
 						 }
-						nbTasks++;
-						break;
-						
-					case MODPO2:
-						
-						
-						Fog home_zone_fog = selectHomeFog(dev, fogN);
-						List<Fog> zones = poolFogs(dev, home_zone_fog, fogN, 5); // make 5 fogs per zone
-
-						 List<Fog> modPo2 = APPPO2(zones);
-						  			 				 
-						 int first1 = modPo2.get(0).jresource.waitList().size(); // check number on the queue
-						 int second1 = modPo2.get(1).jresource.waitList().size();
-						 
-						 if (first1 < second1){							 
-							 responseTime = performTask(modPo2.get(0), serviceTime, arriveTime, modPo2.get(0));
+						 poolAnswered();
+					 }
+					 else{
+						 state.totaldelay *= decay;
+						 state.visitCloud = false;
+					 }
+				 }
+				 else if (at == AT_POOL){
+					 state.poollat = response;
+					 state.visitCloud = true;
+					 dummyPoolCount++;
+					 if (probe){
+						 if (state.poollat < min){
+							 min = state.poollat;
+							 tempFog = pool.get(step - 1);
 						 }
-						 else if (first1 > second1)
-						 {
-							 responseTime = performTask(modPo2.get(1), serviceTime, arriveTime, modPo2.get(1));
-						 } 
-						 else if (first1 == second1){ // break arbitrary ties
-							 int random = (int)(Math.random() * 1 + 1);
-							 responseTime = performTask(modPo2.get(random), serviceTime, arriveTime, modPo2.get(random));
+						 state.poollat = min;
+						 if (step < pool.size()){
+							 step++;
+							 return send(home, pool.get(step - 1), REMOTE);
 						 }
-						 nbTasks++;
-						break;
-						
-						
-					case VFR : // Our proposed algorithm. Includes sending request to the cloud if vFog is bbehaving badly
-						
-						
-						String id = null;
-						if (id == null){
-							id = getTaskID();
-						}
-
-						// Send to home fog 
-						
-//						Fog homevfog = selectHomeFog(dev, fogN);
-
-//						List<Fog> tempPool = poolFogs(dev, homevfog, fogN, 3);
-						
-						List<Fog> selectedvFogs = null;
-						try {
-							selectedvFogs = selectHomeAndPoolFogs(dev, fogN);
-//							homecfog = selectHomeAndPoolFogs(dev, fogN);
-						} catch (FileNotFoundException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (IOException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-												
-						Fog homevfog = selectedvFogs.get(0); 
-						Fog vpool = selectedvFogs.get(1); 
-						
-						List<Fog>tempPool = new ArrayList<Fog>();
-						tempPool.add(vpool);
-						
-						// Send to homefog if waiting time is less than threshold
-						if (homevfog == null){
-							homefoglat = 1000000.0;
-							System.out.println("Failed  " + homevfog.fog.toGString() );
-						}
-
-						homefoglat = performTask(id, LOCAL, REAL, serviceTime, arriveTime, homevfog, homevfog);
-						takeHome = true; // We used home fog
-						
-						if (homevfog != null)
-							homeCount++;
-						
-						Double dumlat = 0.0;
-						double poolResponse = 0;
-						//No reply from home fog after waiting for pool_delay
-						if (homefoglat > totaldelay || homevfog == null){
-							poolCount++; homeCount--;
-							
-							if (tempFog == null){ // If tempfog had not been previous assigned
-								for (Fog p : tempPool){
-									poollat = performTask(id, REMOTE, REAL, serviceTime, arriveTime, homevfog, p);
-									visit_cloud = true; takePool = true;
-
-									dummyPoolCount++;
-
-									if (poollat < min){
-										min = poollat;
-										tempFog = p;
-									}
-									poollat = min;
-								}
-								
-							}
-							else{
-								poollat = performTask(id, REMOTE, REAL, serviceTime, arriveTime, homevfog, tempFog);
-								visit_cloud = true; takePool = true;
-								dummyPoolCount++;
-							}
-							pool_probe++;
-							totaldelay = (Math.abs(poollat - homefoglat)) * Math.pow(pool_probe,ORDER);
-							
-						}
-						else{
-							totaldelay = totaldelay * decay; takePool = false; visit_cloud = false;
-						}
-//						
-						if (visit_cloud){
-							
-						// USe the cloud if no reply from homefog and pool
-							double relative_lat = minimum (homefoglat, poollat); // Takes the fstest respone i.e., the node rel
-							if (homefoglat > totalCloudDelay && poollat > totalCloudDelay){
-								cloudCount++;  
-
-								cloudlat = performTask(id, LOCAL, REAL, serviceTime, arriveTime, CLOUD.get(CLOUD.size()-1),  CLOUD.get(CLOUD.size()-1));
-								cloud_probes++;  visit_cloud = false; takeCloud = true;
-								totalCloudDelay = (Math.abs(cloudlat - relative_lat)) * Math.pow(cloud_probes,ORDER);
-							}
-							else {
-								totalCloudDelay *= decay;
-
-							}
-						}
-						
-						double minTime = 0;
-						if (cloudlat != 0)
-							minTime = minimum(homefoglat, poollat, cloudlat);
-						else 
-							minTime = minimum(homefoglat, poollat);
-
-						
-						if (minTime == homefoglat){
-							if (nbTasks > WARMUP){
-								meanResponse.add(homefoglat); homevfogcount++;
-								appResponseTime.add(homefoglat);
-							}
-						}
-						else if (minTime == poollat){
-							if (nbTasks > WARMUP){
-								meanResponse.add(poollat); poolvfogcount++;
-								appResponseTime.add(poollat);
-							}
-						}else if (minTime == cloudlat){
-							if (nbTasks > WARMUP){
-								meanResponse.add(cloudlat); cloudvfogcount++;
-								appResponseTime.add(cloudlat);
-							}
-						}
-
-
-						id = null;
-						nbTasks++;
-						break;
-						
-					case WITHOUT_CLOUD_MINDELAY : // Related Algorithm implementation without the sending requests to the cloud
-						//Get domains.
-						// Domains can be unique or not, unique is harder as we have to have a specified number, better to go with non unique
-						
-//						List<Fog> domain = poolFogs(dev, fogN, 4);
-						int numOffm = 0, offLimitm = 500;
-						double thresholdm = 0.05, minm = 100000000;
-						
-						Fog tempFogm = null;
-						int countm = 0;
-						Fog homefogm = selectHomeFog(dev, fogN);
-						// Send to homefog if waiting time is less than threshold
-						if (homefogm == null)
-							throw new IllegalArgumentException ("HomeFog is null");
-						List<Fog> domainm = poolFogs(dev, homefogm, fogN, 4);
-
-						double waitTimem = homefogm.jresource.getWaitingTime();
-						List<Fog> neighborsm = getSortedNeighbors(dev, homefogm, domainm);
-
-						if ( waitTimem < thresholdm){
-
-							responseTime = performTask(homefogm, serviceTime, arriveTime, homefogm);
-							homeMinCount++; fog_only++;
-							if (nbTasks > WARMUP){
-								home_response.add(responseTime); 
-								meanResponse.add(responseTime);
-								responseNumbers.add(responseTime);
-								appResponseTime.add(responseTime);
-							}
-							
-						}
-						else{
-							
-							
-							for (countm = 0; countm < neighborsm.size() - 1; countm++){
-
-								if (neighborsm.get(countm).jresource.getWaitingTime() < thresholdm){
-
-									responseTime = performTask(neighborsm.get(countm), serviceTime, arriveTime, neighborsm.get(countm));
-									neighborCount++; pool_only++;
-									if (nbTasks > WARMUP){
-										pool_response.add(responseTime); 
-										meanResponse.add(responseTime);
-										responseNumbers.add(responseTime);
-										appResponseTime.add(responseTime);
-									}
-
-									break;
-								}	
-								
-							}
-							
-							if (countm == neighborsm.size() - 1){
-
-								responseTime = performTask(neighborsm.get(countm), serviceTime, arriveTime, neighborsm.get(countm));
-								pool_only++;
-								if (nbTasks > WARMUP){
-									pool_response.add(responseTime);
-									meanResponse.add(responseTime);
-									responseNumbers.add(responseTime);
-									appResponseTime.add(responseTime);
-								}
-							}
-					
-						}
-													
-						nbTasks++;
-					break;
-						
-						// Related Algorithm implementation starts here
-						case MINDELAY :
-							//Get domains.
-							// Domains can be unique or not, unique is harder as we have to have a specified number, better to go with non unique
-							
-//							List<Fog> domain = poolFogs(dev, fogN, 4);
-							int numOff = 0, offLimit = 500;
-							double threshold = 0.05, min = 100000000;
-							
-							Fog tempFog = null;
-							int count = 0;
-//							Map <Fog, Double> domainFogs = new HashMap<Fog, Double>();
-							Fog homefog = selectHomeFog(dev, fogN);
-							// Send to homefog if waiting time is less than threshold
-							if (homefog == null)
-								throw new IllegalArgumentException ("HomeFog is null");
-							List<Fog> domain = poolFogs(dev, homefog, fogN, 4);
-//							List<Fog> domain = poolFogs(dev, fogN, 4);
-							double waitTime = homefog.jresource.getWaitingTime();
-							List<Fog> neighbors = getSortedNeighbors(dev, homefog, domain);
-
-							if ( waitTime < threshold){
-
-								responseTime = performTask(homefog, serviceTime, arriveTime, homefog);
-
-								if (nbTasks > WARMUP){
-									homeMinCount++; fog_only++;
-									home_response.add(responseTime); 
-									meanResponse.add(responseTime);
-									responseNumbers.add(responseTime);
-									appResponseTime.add(responseTime);
-								}
-
-							}
-							else{
-								
-								
-								for (count = 0; count < neighbors.size(); count++){
-
-									if (neighbors.get(count).jresource.getWaitingTime() < threshold){
-
-										responseTime = performTask(neighbors.get(count), serviceTime, arriveTime, neighbors.get(count));
-
-										if (nbTasks > WARMUP){
-											neighborCount++; pool_only++;
-											pool_response.add(responseTime); 
-											meanResponse.add(responseTime);
-											responseNumbers.add(responseTime);
-											appResponseTime.add(responseTime);
-										}
-
-										break;
-									}	
-									
-								}
-								
-								if (count == neighbors.size()){
-									responseTime = performTask(CLOUD.get(CLOUD.size()-1), serviceTime, arriveTime, CLOUD.get(CLOUD.size()-1));
-									if (nbTasks > WARMUP){
-										cloudCount++; cloud_only++;
-										cloud_response.add(responseTime); 
-										meanResponse.add(responseTime);
-										responseNumbers.add(responseTime);
-										appResponseTime.add(responseTime);
-									}
-								}
-						
-							}
-														
-							nbTasks++;
-						break;
-					}	
-					
-					
-					if (choice == HOMEFOG || choice == PO2 || choice == MODPO2){
-						
-						// Take observation after warmup is over
-						if (nbTasks > WARMUP){
-
-							meanResponse.add(responseTime);
-							appResponseTime.add(responseTime);
-							responseNumbers.add(responseTime);
-							
-						}
-					}
-				}
+					 }
+					 poolAnswered();
+				 }
+				 else{
+					 state.cloudlat = response;
+					 state.cloudProbes++;
+					 state.visitCloud = false;
+					 state.totalCloudDelay = Math.abs(state.cloudlat - relative) * Math.pow(state.cloudProbes, ORDER);
+					 return chose();
+				 }
 				 
+				 // The cloud, if neither the home fog nor the pool answered within its threshold
+				 if (state.visitCloud){
+					 relative = app.minimum(state.homefoglat, state.poollat);
+					 if (state.homefoglat > state.totalCloudDelay && state.poollat > state.totalCloudDelay){
+						 cloudCount++;
+						 Fog cloud = CLOUD.get(CLOUD.size() - 1);
+						 at = AT_CLOUD;
+						 return send(cloud, cloud, LOCAL);
+					 }
+					 else
+						 state.totalCloudDelay *= decay;
+				 }
+				 return chose();
+			 }
+			 
+			 // The pool answered, after the home fog
+			 void poolAnswered(){
+				 state.poolProbe++;
+				 state.totaldelay = Math.abs(state.poollat - state.homefoglat) * Math.pow(state.poolProbe, ORDER);
+			 }
+			 
+			 // Records the fastest answer of the request in the means, not by tier; false
+			 boolean chose(){
+				 if (!app.warm())
+					 return false;
+				 double minTime = state.cloudlat != 0 ? app.minimum(state.homefoglat, state.poollat, state.cloudlat) : app.minimum(state.homefoglat, state.poollat);
+				 if (minTime == state.homefoglat){
+					 homevfogcount++;
+					 app.recordMean(TIER_HOME, state.homefoglat);
+				 }
+				 else if (minTime == state.poollat){
+					 poolvfogcount++;
+					 app.recordMean(TIER_POOL, state.poollat);
+				 }
+				 else if (minTime == state.cloudlat){
+					 cloudvfogcount++;
+					 app.recordMean(TIER_CLOUD, state.cloudlat);
+				 }
+				 return false;
+			 }
+			 
+			 void report(){
+				 homeGoodput = homevfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100;
+				 poolGoodput = poolvfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100;
+				 cloudGoodput = cloudvfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100;
 				 
-
-				 if (choice == VFR ){
-
-					 
-					homeGoodput = homevfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100;
-					poolGoodput = poolvfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100;
-					cloudGoodput = cloudvfogcount/(homevfogcount+poolvfogcount + cloudvfogcount) * 100; 			
-					
-					double total = fog_only + pool_only + cloud_only;
-					System.out.println("Total Application Requests : " + totalApplicationRequests);
-					System.out.println("HomeFog Application Requests : " + fog_only + "Percentage : " + (fog_only/total * 100));
-					System.out.println("Pool Application Requests : " + pool_only + "Percentage : " + (pool_only/total * 100));
-					System.out.println("Cloud Application Requests : " + cloud_only + "Percentage : " + (cloud_only/total * 100));
-					
-					System.out.println();
-					
-					System.out.println("HomeFog Response Average : " + home_response.average());
-					System.out.println("Pool Response Average : " + pool_response.average());
-					System.out.println("Cloud Response Average : " + cloud_response.average());
-					
-					
-					totalPercent = homeCount + poolCount + cloudCount;
-					percentHome = ((homeCount)/ totalPercent ) * 100;
-					percentPool = (poolCount / totalPercent) * 100;
-					percentCloud = (cloudCount / totalPercent) * 100;
-					
-					System.out.println("Home requests submission : " + homeCount + " % : " + percentHome);
-					System.out.println("Pool requests submission : " + poolCount + " % : " + percentPool + " DummyCount : " + dummyPoolCount);
-					System.out.println("Cloud requests submission : " + cloudCount + " % : " + percentCloud);
-					System.out.println("Total Home and Pool submission " + totalPercent);
-				}
-				
-				Sim.stop(); // N tasks have now completed
-				
-				 if (choice == MINDELAY || choice == CLOUDALG){
-					 double total = fog_only + pool_only + cloud_only;
-					 minHome =  fog_only/total * 100;
-					 minNeighbor = pool_only/total * 100;
-					 minCloud = cloud_only/total * 100;
-					 
-						System.out.println("HomeFog Application Requests : " + fog_only + "Percentage : " + (fog_only/total * 100));
-						System.out.println("Pool Application Requests : " + pool_only + "Percentage : " + (pool_only/total * 100));
-						System.out.println("Cloud Application Requests : " + cloud_only + "Percentage : " + (cloud_only/total * 100));
-						
-						System.out.println();
-						
-						System.out.println("HomeFog Response Average : " + home_response.average());
-						System.out.println("Pool Response Average : " + pool_response.average());
-						System.out.println("Cloud Response Average : " + cloud_response.average());
+				 double total = fog_only + pool_only + cloud_only;
+				 System.out.println("Total Application Requests : " + totalApplicationRequests);
+				 System.out.println("HomeFog Application Requests : " + fog_only + "Percentage : " + (fog_only/total * 100));
+				 System.out.println("Pool Application Requests : " + pool_only + "Percentage : " + (pool_only/total * 100));
+				 System.out.println("Cloud Application Requests : " + cloud_only + "Percentage : " + (cloud_only/total * 100));
+				 
+				 System.out.println();
+				 
+				 System.out.println("HomeFog Response Average : " + app.home_response.average());
+				 System.out.println("Pool Response Average : " + app.pool_response.average());
+				 System.out.println("Cloud Response Average : " + app.cloud_response.average());
+				 
+				 totalPercent = homeCount + poolCount + cloudCount;
+				 percentHome = ((homeCount)/ totalPercent ) * 100;
+				 percentPool = (poolCount / totalPercent) * 100;
+				 percentCloud = (cloudCount / totalPercent) * 100;
+				 
+				 System.out.println("Home requests submission : " + homeCount + " % : " + percentHome);
+				 System.out.println("Pool requests submission : " + poolCount + " % : " + percentPool + " DummyCount : " + dummyPoolCount);
+				 System.out.println("Cloud requests submission : " + cloudCount + " % : " + percentCloud);
+				 System.out.println("Total Home and Pool submission " + totalPercent);
+			 }
+		 }
+		 
+		 /*
+		  * MINDELAY: the home fog if its waiting time is under THRESHOLD, else the first of the 4 fogs closest
+		  * to it, by latency and waiting time, under it, else the cloud. Without the cloud
+		  * (WITHOUT_CLOUD_MINDELAY), the last of these fogs takes the requests the cloud would.
+		  */
+		 class MinDelayRouting extends Routing {
+			 static final double THRESHOLD = 0.05;
+			 final boolean cloud;
+			 int tier; // of the fog the request was sent to
+			 boolean last; // the fog is the last of the neighbors, taking the requests without the cloud
+			 
+			 MinDelayRouting(Application app, boolean cloud){
+				 super(app);
+				 this.cloud = cloud;
+			 }
+			 
+			 boolean start(){
+				 Fog home = selectHomeFog(app.dev, fogN);
+				 if (home == null)
+					 throw new IllegalArgumentException ("HomeFog is null");
+				 List<Fog> domain = poolFogs(app.dev, home, fogN, 4);
+				 double waitTime = home.jresource.getWaitingTime();
+				 List<Fog> neighbors = getSortedNeighbors(app.dev, home, domain);
+				 
+				 if (waitTime < THRESHOLD)
+					 return serve(home, TIER_HOME, false);
+				 int last = cloud ? neighbors.size() : neighbors.size() - 1; // the fog or cloud when none is under THRESHOLD
+				 for (int count = 0; count < last; count++){
+					 Fog n = neighbors.get(count);
+					 if (n.jresource.getWaitingTime() < THRESHOLD)
+						 return serve(n, TIER_POOL, false);
+				 }
+				 if (cloud)
+					 return serve(CLOUD.get(CLOUD.size() - 1), TIER_CLOUD, false);
+				 else if (last >= 0)
+					 return serve(neighbors.get(last), TIER_POOL, true);
+				 return false;
+			 }
+			 
+			 boolean answered(double response){
+				 app.responseTime = response;
+				 app.record(tier, response);
+				 // MINDELAY counts the requests once the warmup is over, WITHOUT_CLOUD_MINDELAY every one
+				 if (!cloud || app.warm()){
+					 if (tier == TIER_HOME){
+						 homeMinCount++; fog_only++;
+					 }
+					 else if (tier == TIER_CLOUD){
+						 cloudCount++; cloud_only++;
+					 }
+					 else if (!last){
+						 neighborCount++; pool_only++;
+					 }
+					 else
+						 pool_only++;
 				 }
-				
-			}	
-			
-		}
+				 return false;
+			 }
+			 
+			 // Sends the request to fog, of tier, the last of the neighbors taking it without the cloud
+			 boolean serve(Fog fog, int tier, boolean last){
+				 this.tier = tier;
+				 this.last = last;
+				 return send(fog, fog, 0);
+			 }
+			 
+			 void report(){
+				 if (cloud)
+					 reportTiers();
+			 }
+		 }
+		 
+		 /*
+		  * The loop of Application.actions as a chain of events: a request arrives, is routed by the steps of
+		  * the application's Routing, requests 2 units of a fog's Resource, is served, releases them and the
+		  * Routing is told the response, sending the request on to another fog or ending it. A request that
+		  * has to queue is handed the units by the Resource scheduling its Service event, not by resuming a
+		  * thread, so an application costs a few objects and no thread. The Application keeps its streams,
+		  * counters and tallies as in a process run, but is never started; the events happen in the order the
+		  * processes would run, so both give the same results.
+		  */
+		 class Arrival extends Event {
+			 final Application app;
+			 final Service service;
+			 boolean waiting; // until the arrival time of the next trace record
+			 double serviceTime, arriveTime;
+			 
+			 Arrival(Application app){
+				 super(simulator);
+				 this.app = app;
+				 service = new Service(this);
+			 }
+			 
+			 public void actions(){
+				 if (waiting){
+					 waiting = false;
+					 if (!arrive())
+						 return;
+				 }
+				 next();
+			 }
+			 
+			 // Sends requests until one waits for a fog, or the application is done
+			 void next(){
+				 while (app.nbTasks < totalNumberOfRequests){
+					 if (workload != null){
+						 // The next record of the trace, sent once its arrival time is reached
+						 if (!workload.next())
+							 break;
+						 serviceTime = workload.service;
+						 if (workload.arrival > simulator.time()){
+							 waiting = true;
+							 schedule(workload.arrival - simulator.time());
+							 return;
+						 }
+					 }
+					 else
+						 serviceTime = app.taskServ.nextDouble(); // Exponential
+					 if (!arrive())
+						 return;
+				 }
+				 app.routing.report();
+				 simulator.stop(); // N tasks have now completed
+			 }
+			 
+			 // Routes a request sent now, arrived at the time of its trace record or now; true if it is done
+			 // already, false while it is at a fog
+			 boolean arrive(){
+				 totalApplicationRequests++;
+				 arriveTime = workload != null ? workload.arrival : simulator.time();
+				 if (app.routing.start())
+					 return send();
+				 app.nbTasks++;
+				 return true;
+			 }
+			 
+			 // Sends the request to the fog the Routing picked; false, as the request is then at a fog
+			 boolean send(){
+				 Routing r = app.routing;
+				 return send(r.source, r.destination, r.queue);
+			 }
+			 
+			 // Sends the request to destination, or the fog taking over from it if it failed; false
+			 boolean send(Fog source, Fog destination, int queue){
+				 service.start(failover(source), failover(destination), queue);
+				 return false;
+			 }
+			 
+			 // A fog answered the request; true once the request is done, false if it went on to another fog
+			 boolean served(double response){
+				 if (app.routing.answered(response))
+					 return send();
+				 app.nbTasks++;
+				 return true;
+			 }
+		 }
 		 
-		 private static List<Fog> getSortedNeighbors(Device dev, Fog homefog, List<Fog> domain){
+		 // One request of an Arrival at a fog: scheduled when the Resource grants the units, then at the end of the service
+		 class Service extends Event {
+			 final Arrival arrival;
+			 Fog source, destination;
+			 int queue; // LOCAL or REMOTE as in the VFR performTask, 0 as in the other one
+			 double latency;
+			 boolean serving;
+			 boolean withdrawn; // from the queue of the fog, which failed
+			 
+			 Service(Arrival arrival){
+				 super(simulator);
+				 this.arrival = arrival;
+			 }
+			 
+			 void start(Fog source, Fog destination, int queue){
+				 this.source = source;
+				 this.queue = queue;
+				 if (queue != 0)
+					 latency = arrival.app.latency(source, destination, 100);
+				 request(destination);
+			 }
+			 
+			 // Requests the units of destination, then serves the request once they are granted
+			 void request(Fog destination){
+				 this.destination = destination;
+				 serving = false;
+				 boolean granted;
+				 destination.jresource.setAlpha(ALPHA);
+				 fogLoad.arrive(destination, arrival.serviceTime);
+				 if (queue == 0)
+					 granted = destination.jresource.request(2, arrival.serviceTime, this);
+				 else
+					 granted = destination.jresource.request(2, queue, REAL, arrival.app.routing.id, arrival.serviceTime, arrival.arriveTime, this);
+				 if (granted)
+					 actions();
+			 }
+			 
+			 public void actions(){
+				 if (withdrawn){
+					 // The request is sent again, to the fog taking over, as performTask does
+					 withdrawn = false;
+					 fogLoad.leave(destination, arrival.serviceTime);
+					 if (queue == 0)
+						 arrival.send(source, destination, queue);
+					 else {
+						 Fog takeover = failover(destination);
+						 latency += arrival.app.hop(destination, takeover, 100);
+						 request(takeover);
+					 }
+					 return;
+				 }
+				 if (!serving){
+					 serving = true;
+					 schedule(arrival.serviceTime);
+					 return;
+				 }
+				 Application app = arrival.app;
+				 double roundtrip;
+				 if (queue == 0){
+					 double releaseResponse = destination.jresource.release(2, this);
+					 fogLoad.leave(destination, arrival.serviceTime);
+					 latency = app.latency(source, destination, 1);
+					 app.recordUtilization(destination);
+					 roundtrip = app.roundtrip(source, destination, arrival.arriveTime, latency, 1) + releaseResponse;
+				 }
+				 else {
+					 double releaseResponse = destination.jresource.release(2, "S", this);
+					 fogLoad.leave(destination, arrival.serviceTime);
+					 app.recordUtilization(destination);
+					 roundtrip = app.roundtrip(source, destination, arrival.arriveTime, latency, 100) + releaseResponse;
+				 }
+				 if (arrival.served(roundtrip))
+					 arrival.next();
+			 }
+			 
+			 // The fog failed while the request waited for it; the event runs next, as a process resumed would
+			 void withdraw(){
+				 withdrawn = true;
+				 scheduleNext();
+			 }
+		 }
+		 
+		 // f if it takes requests, else the fog with the lowest link latency from it that does, or the cloud if none does
+		 Fog failover(Fog f){
+			 if (fogLoad.isUp(f))
+				 return f;
+			 Fog takeover = poolIndex.closest(f, fogLoad.failed);
+			 return takeover != null ? takeover : CLOUD.get(CLOUD.size() - 1);
+		 }
+		 
+		 // f takes no more request; with Failures.REROUTE, the requests waiting for it are sent to the fogs taking over
+		 void fail(Fog f, int mode){
+			 fogLoad.fail(f);
+			 if (mode == Failures.REROUTE){
+				 for (Event grant : f.jresource.withdrawWaiting())
+					 ((Service) grant).withdraw();
+			 }
+		 }
+		 
+		 void recover(Fog f){
+			 fogLoad.recover(f);
+		 }
+		 
+		 private List<Fog> getSortedNeighbors(Device dev, Fog homefog, List<Fog> domain){
 			 List<Fog> myNeighbors;
 			 double latency = 0, delay = 0;
 			 Map <Fog, Double> domainFogs = new HashMap<Fog, Double>();
 			 
 			 for (Fog neighbor : domain){
-				 for (Link link : fogLinks){
-					 	if (homefog.equals(link.getSource()) && neighbor.equals(link.getDestination()) || homefog.equals(link.getDestination()) && neighbor.equals(link.getSource())){
-						latency = dev.getDevLatatency() + link.FogLatency();
-						delay = latency + neighbor.jresource.getWaitingTime();
-						domainFogs.put(neighbor, delay);	
-					 }
+				 Link link = linkTable.get(homefog, neighbor);
+				 if (link != null){
+					latency = dev.getDevLatatency() + link.FogLatency();
+					delay = latency + neighbor.jresource.getWaitingTime();
+					domainFogs.put(neighbor, delay);	
 				 }
 				}
-				Stream<Map.Entry<Fog, Double>> sorted = domainFogs.entrySet().stream().sorted(Map.Entry.comparingByValue());
-				
-				Map<Fog, Double> sortedFogs = domainFogs.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(domain.size()).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)); 
-				 
-				 myNeighbors = new ArrayList<>(sortedFogs.keySet());
+				// Collect the keys into a list, a map would drop the sort order
+				 myNeighbors = domainFogs.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(domain.size()).map(Map.Entry::getKey).collect(Collectors.toList());
 				 return myNeighbors;
 		 }
 		 
 		 // Selects homefog in order of latencies in case of failure
-		 public static Fog selectHomeFog(Device dev, List<Fog> allFogs){
-			 double latency = 0;
-			 
-			 
-			 List<Fog> myHomeFog;
-			 
-			 HashMap<Fog, Double> myFogMap = new HashMap<Fog, Double>();
-			 		 
+		 public Fog selectHomeFog(Device dev, List<Fog> allFogs){
+			 if (fogGrid != null && allFogs == fogN){
+				 Fog[] nearest = nearestFogs(fogGrid, dev);
+				 return nearest.length > 0 ? nearest[0] : null;
+			 }
+			 // Lists other than fogN are not indexed, keep the closest fog in a single pass
+			 double latency = 0, best = Double.MAX_VALUE;
 			 Fog homefog = null;
 			 for (Fog f: allFogs){
 				 if (f != null){
-					 latency = Creator.Latency.DFLatency(dev, f);
-					 myFogMap.put(f, latency);
+					 latency = deviceLatency.DFLatency(dev, f);
+					 if (latency < best){
+						 best = latency;
+						 homefog = f;
+					 }
 				 }
 			 }
-			 Stream<Map.Entry<Fog, Double>> sorted = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue());
-			 Map<Fog, Double> closestFog = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(1).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-			 myHomeFog = new ArrayList<>(closestFog.keySet());
-			 
-			 homefog = myHomeFog.get(0);
 			 return homefog;
 		 }
 		 
- private static List<Fog> selectHomeAndPoolFogs(Device dev, List<Fog> allFogs) throws FileNotFoundException, IOException {
+		 // The NEAREST_K fogs of grid closest to the device, closest first. Devices do not move, so this is searched once per device
+		 static Fog[] nearestFogs(FogGrid grid, Device dev){
+			 if (dev.nearestFogs == null){
+				 Fog[] nearest = new Fog[NEAREST_K];
+				 int n = grid.nearest(dev.getDeviceLongitude(), dev.getDeviceLatitude(), NEAREST_K, nearest);
+				 dev.nearestFogs = Arrays.copyOf(nearest, n);
+			 }
+			 return dev.nearestFogs;
+		 }
+		 
+ private List<Fog> selectHomeAndPoolFogs(Device dev, List<Fog> allFogs) throws FileNotFoundException, IOException {
 			 
-			 List<Fog> fogs = new ArrayList<Fog>();
-			 Fog homeFog = null, pool = null;
-			 try(BufferedReader reader = new BufferedReader(new FileReader("ATwo.txt"))){
-					String curLine;
-					String[] splits;
-					
-					Integer devID, fogID, poolID; 
-					while ((curLine = reader.readLine()) != null) {
-						curLine.trim();
-						splits = curLine.split(" ");
-						devID = Integer.parseInt(splits[0]);
-						fogID = Integer.parseInt(splits[1]);
-						poolID = Integer.parseInt(splits[2]);
-						
-						if (dev.getDeviceID().equals(devID)) {
-							for (Fog f : allFogs) {
-								if (fogID.equals(f.fog.getId())) {
-									homeFog = f;									
-								}
-								
-								if (poolID.equals(f.fog.getId())) {
-									pool = f;									
-								}
-							}
-						}
-						
-					
-					}
-					fogs.add(homeFog);
-					fogs.add(pool);
-					
-				}
+			 if (assignments == null){
+				 assignments = Creator.scenario().assignments(ASSIGNMENTS, allFogs);
+			 }
+			 List<Fog> fogs = new ArrayList<Fog>(2);
+			 fogs.add(assignments.getHome(dev.getDeviceID()));
+			 fogs.add(assignments.getPool(dev.getDeviceID()));
 			 return fogs ;
 		}
 		 
  // Using the allocation output of the q-coverage by choosing the appropriate homefog and pool, noticed that a lot of requests were getting dropped
-		 private static List<Fog> selectHomeAndPoolFogs2(Device dev, List<Fog> allFogs) throws FileNotFoundException, IOException {
-			 
-			 List<Fog> fogs = new ArrayList<Fog>();
-			 Fog homeFog = null, pool = null;
-//			 try(BufferedReader reader = new BufferedReader(new FileReader("ADevice.txt"))){
-//					String curLine;
-//					String[] splits;
-//					
-//					Integer devID, fogID, poolID; 
-//					while ((curLine = reader.readLine()) != null) {
-//						curLine.trim();
-//						splits = curLine.split(" ");
-//						devID = Integer.parseInt(splits[0]);
-//						fogID = Integer.parseInt(splits[1]);
-//						poolID = Integer.parseInt(splits[2]);
-//						
-//						if (dev.getDeviceID().equals(devID)) {
-//							for (Fog f : allFogs) {
-//								if (fogID.equals(f.fog.getId())) {
-//									homeFog = f;									
-//								}
-//								
-//								if (poolID.equals(f.fog.getId())) {
-//									pool = f;									
-//								}
-//							}
-//						}
-//						
-//					
-//					}
-//					fogs.add(homeFog);
-//					fogs.add(pool);
-//					
-//				}
+		 private List<Fog> selectHomeAndPoolFogs2(Device dev, List<Fog> allFogs) throws FileNotFoundException, IOException {
 			 
-			 try(BufferedReader reader = new BufferedReader(new FileReader("AOne.txt"))){
-					String curLine;
-					String[] splits;
-					
-					Integer devID, fogID, poolID; 
-					while ((curLine = reader.readLine()) != null) {
-						curLine.trim();
-						splits = curLine.split(" ");
-						devID = Integer.parseInt(splits[0]);
-						fogID = Integer.parseInt(splits[1]);
-						
-						if (dev.getDeviceID().equals(devID)) {
-							for (Fog f : allFogs) {
-								if (fogID.equals(f.fog.getId())) {
-									homeFog = f;									
-								}
-							}
-						}
-
-					}
-					fogs.add(homeFog);
-					
-				}
+			 if (homeAssignments == null){
+				 homeAssignments = Creator.scenario().assignments(HOME_ASSIGNMENTS, allFogs);
+			 }
+			 if (assignments == null){
+				 assignments = Creator.scenario().assignments(ASSIGNMENTS, allFogs);
+			 }
 			 
-			 try(BufferedReader reader = new BufferedReader(new FileReader("ATwo.txt"))){
-					String curLine;
-					String[] splits;
-					
-					Integer devID, fogID, poolID; 
-					while ((curLine = reader.readLine()) != null) {
-						curLine.trim();
-						splits = curLine.split(" ");
-						devID = Integer.parseInt(splits[0]);
-						fogID = Integer.parseInt(splits[1]);
-						poolID = Integer.parseInt(splits[2]);
-						
-						// If our initial homefog is equal to the poolID, make the first occurence the pool otherwise make the poolID the pool fog
-						if(homeFog.fog.getId().equals(poolID)) {
-							for (Fog f : allFogs) {
-								if (fogID.equals(f.fog.getId())) {
-									pool = f;									
-								}
-							}
-						}
-						else {
-							for (Fog f : allFogs) {
-								if (poolID.equals(f.fog.getId())) {
-									pool= f;									
-								}
-							}
-						}					
-					}					
-					fogs.add(pool);					
-				}
+			 List<Fog> fogs = new ArrayList<Fog>(2);
+			 Fog homeFog = homeAssignments.getHome(dev.getDeviceID());
+			 fogs.add(homeFog);
+			 // If our initial homefog is equal to the poolID, make the first occurence the pool otherwise make the poolID the pool fog
+			 fogs.add(assignments.getFallbackPool(homeFog));
 			 return fogs;
 		 }
-		private void simulOneRun() {
-		   SimProcess.init();
+		void simulOneRun() {
+		   simulator.init();
 		  
 		   for (Fog c : CLOUD){
 			   c.jresource.init();
@@ -1385,19 +1528,54 @@ public class JAMCloud {
 			  
 			   f.jresource.setStatCollecting(true); 
 		   }
+		   for (Link l : fogLinks){
+			   for (Edge e : l.edges){
+				   e.transfers.clear(); // their end events went with the event list
+			   }
+		   }
+		   failures.start();
 		   
 		   for (Application t : applicationList){
 
 			   t.taskStatsSojourn.init();
 
-			   t.schedule(t.arrRate);
+			   if (eventDriven)
+				   new Arrival(t).schedule(t.arrRate);
+			   else
+				   t.schedule(t.arrRate);
 		   }
 		   
-		   Sim.start();
+		   simulator.start();
 		    
 		   
 		 }
 		
+		// Ends the process threads left suspended when the run stopped; the context cannot run again afterwards.
+		// The trace columns shared by the contexts are left to the owner, see main.
+		void dispose(){
+			simulator.dispose();
+			try {
+				if (workload != null)
+					workload.trace.close();
+			} catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		// Sets the capacity of fog i at the given simulation time, through the failures: 0 fails it, any other
+		// capacity, of 2 units a request at least, becomes its nominal one. Any thread may call it during a run,
+		// e.g., with the load measured on a real fog; the simulator adds it before its next event
+		void sampleCapacity(int fog, final int capacity, double time){
+			if (capacity != 0 && capacity < 2)
+				throw new IllegalArgumentException("A fog holds 2 units a request, its capacity is 0 or at least 2, not " + capacity);
+			final Fog f = fogN.get(fog);
+			simulator.inject(new Event(simulator){
+				public void actions(){
+					failures.sample(f, capacity);
+				}
+			}, time);
+		}
+		
 		public void printReport(int choice) throws IOException{
 			double average = 0, sum = 0;
 			double totalUtil = 0, totalServ = 0, totalSoj = 0, totalWait = 0, totalThru = 0, remoteWait = 0;
@@ -1507,13 +1685,11 @@ public class JAMCloud {
 				if (!fogN.get(i).jresource.remoteWaitList().isEmpty())
 					remoteWait += remoteWaitAvg.average();
 				
-				for (int j = 0; j < fogN.get(i).utilise.getSize(); j++){
-					sum += fogN.get(i).utilise.getResource(j);
-				}
-				average = sum / fogN.get(i).utilise.getSize();
-				totalFogRequests +=  fogN.get(i).utilise.getSize();
+				sum += fogN.get(i).utilise.getResourceSum();
+				average = sum / fogN.get(i).utilise.getCount();
+				totalFogRequests +=  fogN.get(i).utilise.getCount();
 				totalUtil += average;
-				totalThru += fogN.get(i).utilise.getSize();
+				totalThru += fogN.get(i).utilise.getCount();
 				
 
 
@@ -1525,7 +1701,7 @@ public class JAMCloud {
 			totalWait = totalWait / fogN.size();
 			totalServ = totalServ / fogN.size();
 			totalSoj = totalSoj / fogN.size();
-			totalThru = totalThru / Sim.time();
+			totalThru = totalThru / simulator.time();
 			
 			fog_utilization = avg_util/max_util;
 			
@@ -1563,13 +1739,54 @@ public class JAMCloud {
 				home_resp.close(); pool_resp.close(); cloud_resp.close();
 				cloudutil.close();
 			}
-			System.out.println("Number of responses : " + responseNumbers.size());
-			double sumResp = 0;
-			for (int i = 0; i < responseNumbers.size(); i++){
-				sumResp += responseNumbers.get(i);
+			ResponseStats all = allResponses(choice);
+			System.out.println("Number of responses : " + all.numberObs());
+			System.out.println("Average Response Time :  " + all.average());
+			for (ResponseStats tier : responseStats(choice)){
+				System.out.println(tier.report());
+			}
+			System.out.println(all.report());
+		}
+		
+		// Statistics of the algorithm, one per tier (TIER_HOME, TIER_POOL, TIER_CLOUD)
+		final ResponseStats[] responseStats(int choice){
+			ResponseStats[] stats = responseStats.get(choice);
+			if (stats == null){
+				stats = new ResponseStats[TIER_NAMES.length];
+				for (int t = 0; t < stats.length; t++){
+					stats[t] = new ResponseStats(choice + "/" + TIER_NAMES[t]);
+				}
+				responseStats.put(choice, stats);
+			}
+			return stats;
+		}
+		
+		// Every response of the algorithm, whatever the tier
+		ResponseStats allResponses(int choice){
+			ResponseStats all = new ResponseStats(choice + "/all");
+			for (ResponseStats tier : responseStats(choice)){
+				all.merge(tier);
+			}
+			return all;
+		}
+		
+		/*
+		 * Stream i positioned at the start of substream `replication`. Every context gets stream i for the
+		 * same purpose, so replications are independent (disjoint substreams) and parameter points compared
+		 * at the same replication use common random numbers.
+		 */
+		static RandomStream stream(int i, int replication){
+			MRG32k3a s;
+			synchronized (streams){
+				while (streams.size() <= i){
+					streams.add(new MRG32k3a());
+				}
+				s = streams.get(i).clone();
 			}
-			double avgResp = sumResp / responseNumbers.size();
-			System.out.println("Average Response Time :  " + avgResp);		
+			for (int r = 0; r < replication; r++){
+				s.resetNextSubstream();
+			}
+			return s;
 		}
 		
 		public void printLongReport(int choice) throws IOException{
@@ -1677,15 +1894,13 @@ public class JAMCloud {
 				serv.write(df.format(servTimeAvg.average()) + "\n");
 				soj.write(df.format(sojTimeAvg.average()) + "\n");
 				
-				for (int j = 0; j < fogN.get(i).utilise.getSize(); j++){
-					sum += fogN.get(i).utilise.getResource(j);
-				}
-				average = sum / fogN.get(i).utilise.getSize();
-				totalFogRequests +=  fogN.get(i).utilise.getSize();
-				report.write("Sum: " + sum + " Size " + fogN.get(i).utilise.getSize() + " Average : " + average + "\n");
+				sum += fogN.get(i).utilise.getResourceSum();
+				average = sum / fogN.get(i).utilise.getCount();
+				totalFogRequests +=  fogN.get(i).utilise.getCount();
+				report.write("Sum: " + sum + " Size " + fogN.get(i).utilise.getCount() + " Average : " + average + "\n");
 				
 				util.write(df.format(average) + "\n");
-				thru.write(fogN.get(i).utilise.getSize()+ "\n");
+				thru.write(fogN.get(i).utilise.getCount()+ "\n");
 							
 
 			}
@@ -1726,8 +1941,12 @@ public class JAMCloud {
 //			 return myPool3;		
 //		 }		
 //		
-		public static List<Fog> poolFogs(Device dev, Fog homefog, List<Fog> fog, int choice){
+		public List<Fog> poolFogs(Device dev, Fog homefog, List<Fog> fog, int choice){
 			// return the 3 closest fogs
+			 if (poolIndex != null && fog == fogN && poolIndex.contains(homefog)){
+				 // The device latency is added to every candidate and does not change the order
+				 return poolIndex.closest(homefog, choice);
+			 }
 			 List<Fog> myPool3;// = new ArrayList<Fog>();
 			 double latency = 0;
 			 HashMap<Fog, Double> myFogMap = new HashMap<Fog, Double>();
@@ -1735,21 +1954,16 @@ public class JAMCloud {
 			 //Lets randomly pick 3 fogs
 			 for (Fog g : fog){
 				 
-				 for (Link link : fogLinks){
-					 	if (homefog.equals(link.getSource()) && g.equals(link.getDestination()) || homefog.equals(link.getDestination()) && g.equals(link.getSource())){
-						latency = dev.getDevLatatency() + link.FogLatency();
-//						System.out.println("Im here in poolFogs " );
-						 myFogMap.put(g, latency);						
-					 }
+				 Link link = linkTable.get(homefog, g);
+				 if (link != null){
+					latency = dev.getDevLatatency() + link.FogLatency();
+//					System.out.println("Im here in poolFogs " );
+					 myFogMap.put(g, latency);						
 				 }
 			 }
 			 
-			 // For ascending order of latencies
-			 Stream<Map.Entry<Fog, Double>> sorted = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue());		 
-			 // To take the top 3 fogs for a pool
-			 Map<Fog, Double> top3 = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(choice).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)); 
-			 
-			 myPool3 = new ArrayList<>(top3.keySet());
+			 // To take the top 3 fogs for a pool, in ascending order of latencies
+			 myPool3 = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(choice).map(Map.Entry::getKey).collect(Collectors.toList());
 	
 			 return myPool3;		
 		 }
@@ -1772,12 +1986,8 @@ public class JAMCloud {
 				 }
 			 }
 			 
-			 // For ascending order of latencies
-			 Stream<Map.Entry<Fog, Double>> sorted = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue());		 
-			 // To take the top 3 fogs for a pool
-			 Map<Fog, Double> top3 = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(choice).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)); 
-			 
-			 myPool3 = new ArrayList<>(top3.keySet());
+			 // To take the top 3 fogs for a pool, in ascending order of latencies
+			 myPool3 = myFogMap.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(choice).map(Map.Entry::getKey).collect(Collectors.toList());
 	
 			 return myPool3;		
 		 }
@@ -1810,20 +2020,26 @@ public class JAMCloud {
 		 POOL_RESP = args[4];
 		 CLOUD_RESP = args[5];
 		 RESPTIME = args[6];
-		 ALPHA = Double.valueOf(args[7]);// Integer.valueOf(args[1]);
-		 DECAY = Double.valueOf(args[8]);
-		 ORDER = Double.valueOf(args[9]);
-		 NUMAPP = Integer.valueOf(args[10]);
+		 double alpha = Double.valueOf(args[7]);// Integer.valueOf(args[1]);
+		 double decay = Double.valueOf(args[8]);
+		 double order = Double.valueOf(args[9]);
+		 int numApp = Integer.valueOf(args[10]);
 		 OPTION = Integer.valueOf(args[11]);
-		 NUMBER_OF_FOGS_FAILED = Integer.valueOf(args[12]);
+		 int fogsFailed = Integer.valueOf(args[12]);
 
 		
-			 JAMCloud sim = new JAMCloud(OPTION);		 
+			 JAMCloud sim = new JAMCloud(OPTION, alpha, decay, order, numApp, fogsFailed);		 
+			 // Optional trace replay: task_events file, time scale, service scale
+			 if (args.length > 13)
+				 sim.useTrace(args[13], args.length > 14 ? Double.valueOf(args[14]) : 1.0, args.length > 15 ? Double.valueOf(args[15]) : 1.0);
 			 sim.simulOneRun(); 
 			 sim.printReport(OPTION);
-			 System.out.println("Home % : " + df.format(JAMCloud.percentHome));
-			 System.out.println("Pool % : " + df.format(JAMCloud.percentPool));
-			 System.out.println("Cloud % : " + df.format(JAMCloud.percentCloud));
+			 System.out.println("Home % : " + df.format(sim.percentHome));
+			 System.out.println("Pool % : " + df.format(sim.percentPool));
+			 System.out.println("Cloud % : " + df.format(sim.percentCloud));
+			 if (sim.failures.failed + sim.failures.degraded > 0)
+				 System.out.println(sim.failures);
+			 Util.Compress.close(); // off-heap trace columns, once the run is done
 
 		 System.out.println ("Total CPU time: " + timer.format() + "Algorithm : " + OPTION);
 		 
@@ -1888,17 +2104,73 @@ public class JAMCloud {
 	 }
 	 */
 	 
+	 // Replays a task_events trace in the applications of this context, see TraceWorkload
+	 void useTrace(String fileName, double timeScale, double serviceScale) throws FileNotFoundException, IOException{
+		 workload = new TraceWorkload(TraceReader.tasks(fileName), timeScale, serviceScale);
+	 }
+	 
+	 /*
+	  * Arrivals and service demands replayed from a task_events trace instead of the Weibull service
+	  * times. Applications take the records in trace order, whichever asks first; a record arrives at
+	  * (time - time of the first record) * timeScale and asks for cpu * serviceScale of service.
+	  * The trace is streamed, so memory does not grow with its length, and the applications stop
+	  * when it runs out.
+	  */
+	 static class TraceWorkload {
+		 TraceReader trace;
+		 double timeScale, serviceScale;
+		 double first = Double.NaN;
+		 double arrival, service; // of the record taken last
+		 
+		 TraceWorkload(TraceReader trace, double timeScale, double serviceScale){
+			 this.trace = trace;
+			 this.timeScale = timeScale;
+			 this.serviceScale = serviceScale;
+		 }
+		 
+		 boolean next(){
+			 try {
+				 if (!trace.next())
+					 return false;
+			 } catch (IOException e){
+				 throw new UncheckedIOException(e);
+			 }
+			 if (Double.isNaN(first))
+				 first = trace.getTime();
+			 arrival = (trace.getTime() - first) * timeScale;
+			 service = trace.getCpu() * serviceScale;
+			 return true;
+		 }
+	 }
+	 
+	 /*
+	  * The connection between two fogs: the edges of the shortest route between them in the topology (see
+	  * Routes), or a direct edge of its own between fogs that are not routed. A transfer is sent over every
+	  * edge of the route at once, at its max-min fair rate (see Edge), and its latency is the propagation
+	  * delay along the route plus the time it takes.
+	  */
 	 static class Link{
 		 Fog source;
 		 Fog destination;
-		 double total_mb_used;
-		 double bandwidth;
+		 final Edge[] edges;
+		 final double delay; // propagation delay, the length of the route
+		 boolean stale; // the rates over its edges were set since the PoolIndex last read its latency
 		 
 		 public Link(Fog A, Fog B, double bandwidth){
+			 this(Simulator.getDefaultSimulator(), A, B, bandwidth);
+		 }
+		 
+		 // A direct edge, as long as the straight line between the fogs
+		 public Link(Simulator sim, Fog A, Fog B, double bandwidth){
+			 this(A, B, new Edge[] {new Edge(sim, bandwidth)}, Math.sqrt(Math.pow(A.fog.getLongitude() - B.fog.getLongitude(), 2) + 
+					 Math.pow(A.fog.getLatitude() - B.fog.getLatitude(), 2)));
+		 }
+		 
+		 public Link(Fog A, Fog B, Edge[] edges, double delay){
 			 this.source = A;
 			 this.destination = B;
-			 total_mb_used = 0;
-			 this.bandwidth = bandwidth;
+			 this.edges = edges;
+			 this.delay = delay;
 		 }
 		 
 		 public Fog getSource(){
@@ -1908,35 +2180,422 @@ public class JAMCloud {
 		 public Fog getDestination(){
 			 return destination;
 		 }
-		// At the start of the transfer, we increment the total_mb by the specified mb required for the task
-		 public double incrementRequestMb(int mb_required){
-			 total_mb_used += mb_required; 
-			 return total_mb_used; 
+		 
+		 public int getHops(){
+			 return edges.length;
+		 }
+		 
+		 // Starts a transfer of mb now over the route
+		 public Transfer send(double mb){
+			 Transfer t = new Transfer(edges, mb, delay);
+			 for (Edge e : edges){
+				 e.transfers.add(t);
+			 }
+			 Edge.rate(edges);
+			 return t;
 		 }
 		 
-		 // At the end of the transfer, we decrement the total_mb by the mb used by the task
-		 public double decrementRequestMB(int mb_required){
-			 total_mb_used -= mb_required;
-			 return total_mb_used;
+		 // Propagation and transfer time of mb sent now, at the rate a new transfer would get
+		 public double latency(double mb){
+			 double rate = Double.POSITIVE_INFINITY;
+			 for (Edge e : edges){
+				 rate = Math.min(rate, e.share());
+			 }
+			 return delay + mb / rate;
 		 }
 		 
-		 public double FogLatency(){					
-				
-				double delay =  Math.sqrt((Math.pow(source.fog.getLongitude()- source.fog.getLongitude(),2)) + 
-						Math.pow(source.fog.getLatitude() - destination.fog.getLatitude(), 2));
-
-				double latency =total_mb_used/bandwidth * delay;
-
-
-				if(total_mb_used <= bandwidth){
-
-					return delay;
-				}
-				else{
-
-					return latency;
-				}
-
-			}
+		 // Latency of a request of 1 MB, by which poolFogs ranks the links
+		 public double FogLatency(){
+			 return latency(1);
+		 }
+	 }
+	 
+	 /*
+	  * An edge of the topology and the transfers in flight over it. The transfers share the bandwidth of
+	  * the edges max-min fairly, by progressive filling: the rates of all the transfers grow together, a
+	  * transfer stops growing once an edge of its route is full, and the others go on filling the edges
+	  * left. So a transfer held back on one edge of its route leaves the bandwidth it does not use on the
+	  * others to the transfers there. The rates are set again when a transfer starts or ends, over the
+	  * transfers sharing edges with it, directly or through others, and the end of every transfer is an
+	  * event, moved when its rate changes.
+	  */
+	 static class Edge{
+		 final double bandwidth;
+		 final Simulator sim;
+		 final List<Transfer> transfers = new ArrayList<Transfer>(); // in flight over the edge
+		 PoolIndex pools; // told when the rates are set, for the links over this edge to be ranked again
+		 final List<Link> links = new ArrayList<Link>(1); // over this edge, as the PoolIndex ranks them
+		 
+		 private double left; // bandwidth not given yet, while the rates are set
+		 private int open; // transfers with no rate yet, while the rates are set
+		 private boolean seen; // reached, while the transfers sharing edges are gathered
+		 
+		 public Edge(Simulator sim, double bandwidth){
+			 this.sim = sim;
+			 this.bandwidth = bandwidth;
+		 }
+		 
+		 public int getInFlight(){
+			 return transfers.size();
+		 }
+		 
+		 // The rate a new transfer would get on this edge alone: an even share of the bandwidth, and more
+		 // if some of the transfers over it are held back elsewhere below that share
+		 public double share(){
+			 int n = transfers.size();
+			 if (n == 0)
+				 return bandwidth;
+			 double[] rates = new double[n];
+			 for (int i = 0; i < n; i++){
+				 rates[i] = transfers.get(i).rate;
+			 }
+			 Arrays.sort(rates);
+			 double left = bandwidth;
+			 int k = n + 1;
+			 for (double r : rates){
+				 if (r >= left / k)
+					 break;
+				 left -= r;
+				 k--;
+			 }
+			 return left / k;
+		 }
+		 
+		 // Sets again the rates of the transfers sharing edges, directly or through others, with the given edges
+		 static void rate(Edge[] from){
+			 List<Edge> edges = new ArrayList<Edge>();
+			 List<Transfer> transfers = new ArrayList<Transfer>();
+			 for (Edge e : from){
+				 if (!e.seen){
+					 e.seen = true;
+					 edges.add(e);
+				 }
+			 }
+			 for (int i = 0; i < edges.size(); i++){
+				 for (Transfer t : edges.get(i).transfers){
+					 if (t.seen)
+						 continue;
+					 t.seen = true;
+					 transfers.add(t);
+					 for (Edge e : t.edges){
+						 if (!e.seen){
+							 e.seen = true;
+							 edges.add(e);
+						 }
+					 }
+				 }
+			 }
+			 
+			 double now = from[0].sim.time();
+			 for (Transfer t : transfers){
+				 t.settle(now);
+				 t.fixed = false;
+			 }
+			 for (Edge e : edges){
+				 e.left = e.bandwidth;
+				 e.open = e.transfers.size();
+			 }
+			 // Progressive filling: the fullest edge fixes the rate of the transfers over it, one edge at a time
+			 int fixed = 0;
+			 while (fixed < transfers.size()){
+				 Edge bottleneck = null;
+				 for (Edge e : edges){
+					 if (e.open > 0 && (bottleneck == null || e.left / e.open < bottleneck.left / bottleneck.open))
+						 bottleneck = e;
+				 }
+				 double rate = Math.max(bottleneck.left, 0) / bottleneck.open;
+				 for (Transfer t : bottleneck.transfers){
+					 if (t.fixed)
+						 continue;
+					 t.fixed = true;
+					 fixed++;
+					 for (Edge e : t.edges){
+						 e.left -= rate;
+						 e.open--;
+					 }
+					 t.setRate(rate);
+				 }
+			 }
+			 
+			 for (Edge e : edges){
+				 e.seen = false;
+				 if (e.pools != null)
+					 e.pools.changed(e);
+			 }
+			 for (Transfer t : transfers){
+				 t.seen = false;
+			 }
+		 }
+	 }
+	 
+	 /*
+	  * A transfer in flight over the edges of a route, until its end event. Its time is known once it
+	  * ended; before, it is the time so far and the time left at the rate it has now.
+	  */
+	 static class Transfer extends Event{
+		 final Edge[] edges;
+		 final double delay; // propagation delay of the route
+		 final double start;
+		 double end = Double.NaN;
+		 double rate; // MB per time unit, set by Edge.rate
+		 private double left; // MB left to send when the rate was last set
+		 private double updated; // time the rate was last set
+		 private boolean seen, fixed; // while the rates are set
+		 
+		 Transfer(Edge[] edges, double mb, double delay){
+			 super(edges[0].sim);
+			 this.edges = edges;
+			 this.delay = delay;
+			 start = updated = simulator().time();
+			 left = mb;
+		 }
+		 
+		 // Propagation delay and time of the transfer
+		 public double latency(){
+			 if (!Double.isNaN(end))
+				 return delay + end - start;
+			 double now = simulator().time();
+			 return delay + now - start + Math.max(0, left - rate * (now - updated)) / rate;
+		 }
+		 
+		 public boolean ended(){
+			 return !Double.isNaN(end);
+		 }
+		 
+		 private void settle(double now){
+			 left = Math.max(0, left - rate * (now - updated));
+			 updated = now;
+		 }
+		 
+		 private void setRate(double rate){
+			 boolean scheduled = this.rate > 0;
+			 if (scheduled && rate == this.rate)
+				 return;
+			 this.rate = rate;
+			 if (scheduled)
+				 reschedule(left / rate);
+			 else
+				 schedule(left / rate);
+		 }
+		 
+		 public void actions(){
+			 end = simulator().time();
+			 for (Edge e : edges){
+				 e.transfers.remove(this);
+			 }
+			 Edge.rate(edges);
+		 }
+	 }
+	 
+	 // Triangular table holding the single link between every pair of fogs, addressed by fog ordinal
+	 static class LinkTable{
+		 Link[] links;
+		 int size;
+		 
+		 public LinkTable(List<Fog> fogs, List<Link> fogLinks){
+			 size = fogs.size();
+			 for (int i = 0; i < size; i++){
+				 if (fogs.get(i).ordinal != i)
+					 throw new IllegalArgumentException("Fog " + fogs.get(i).getId() + " has ordinal " + fogs.get(i).ordinal + ", not " + i);
+			 }
+			 links = new Link[size * (size - 1) / 2];
+			 for (Link link : fogLinks){
+				 put(link);
+			 }
+		 }
+		 
+		 // Position of the pair (i, j), i < j, in the flattened upper triangle
+		 private int slot(int i, int j){
+			 return i * (2 * size - i - 1) / 2 + (j - i - 1);
+		 }
+		 
+		 public void put(Link link){
+			 int a = link.getSource().ordinal, b = link.getDestination().ordinal;
+			 if (a < 0 || b < 0 || a == b)
+				 throw new IllegalArgumentException("Link endpoints are not distinct fogs of this table");
+			 links[a < b ? slot(a, b) : slot(b, a)] = link;
+		 }
+		 
+		 // Returns the link between the two fogs in either direction, or null if there is none
+		 public Link get(Fog source, Fog destination){
+			 int a = source.ordinal, b = destination.ordinal;
+			 if (a < 0 || b < 0 || a == b || a >= size || b >= size)
+				 return null;
+			 return links[a < b ? slot(a, b) : slot(b, a)];
+		 }
+		 
+		 public int getSize(){
+			 return size;
+		 }
+	 }
+	 
+	 /*
+	  * For every fog, the k other fogs with the lowest latency of the link to them, as poolFogs ranks them,
+	  * k being the largest pool asked for. When the rates of the transfers over an edge are set again, the
+	  * links over it are only marked; a read first takes the latency of the marked links and moves their
+	  * two fogs in each other's top, so a transfer costs the links its edges carry, and a read the k fogs of
+	  * the top. A row is selected again, over all its fogs, only once a fog of its top gets slower than the
+	  * last of the others there, as a fog outside could then be closer.
+	  */
+	 static class PoolIndex{
+		 Fog[] fogs;
+		 Link[][] links; // links[h][j]: the link between h and j, null if there is none
+		 int[][] linked; // linked[h]: ordinals of the fogs linked to h
+		 double[][] latency; // latency[h][j]: FogLatency of the link between h and j when it was last read
+		 int[][] top; // top[h]: the min(k, linked) fogs closest to h, closest first
+		 private final boolean[] select; // row h is to be selected again
+		 private final List<Link> stale = new ArrayList<Link>(); // links marked since the last read
+		 int k = 1;
+		 
+		 public PoolIndex(List<Fog> fogList, LinkTable table){
+			 int n = fogList.size();
+			 fogs = fogList.toArray(new Fog[n]);
+			 links = new Link[n][n];
+			 linked = new int[n][];
+			 latency = new double[n][n];
+			 top = new int[n][];
+			 select = new boolean[n];
+			 for (int h = 0; h < n; h++){
+				 int count = 0;
+				 for (int j = 0; j < n; j++){
+					 Link link = links[h][j] = table.get(fogs[h], fogs[j]);
+					 if (link != null){
+						 if (j > h){
+							 for (Edge e : link.edges){
+								 e.pools = this;
+								 e.links.add(link);
+							 }
+						 }
+						 latency[h][j] = link.FogLatency();
+						 count++;
+					 }
+				 }
+				 linked[h] = new int[count];
+				 for (int j = 0, p = 0; j < n; j++){
+					 if (links[h][j] != null)
+						 linked[h][p++] = j;
+				 }
+				 top[h] = new int[Math.min(k, count)];
+				 select[h] = true;
+			 }
+		 }
+		 
+		 public boolean contains(Fog f){
+			 return f != null && f.ordinal >= 0 && f.ordinal < fogs.length && fogs[f.ordinal] == f;
+		 }
+		 
+		 // The rates of the transfers over e were set again: marks the links over it
+		 void changed(Edge e){
+			 for (Link l : e.links){
+				 if (!l.stale){
+					 l.stale = true;
+					 stale.add(l);
+				 }
+			 }
+		 }
+		 
+		 // The k fogs with the lowest link latency from the home fog, closest first
+		 public List<Fog> closest(Fog home, int k){
+			 if (k > this.k)
+				 grow(k);
+			 int[] row = row(home.ordinal);
+			 List<Fog> pool = new ArrayList<Fog>(Math.min(k, row.length));
+			 for (int p = 0; p < k && p < row.length; p++){
+				 pool.add(fogs[row[p]]);
+			 }
+			 return pool;
+		 }
+		 
+		 // The fog with the lowest link latency from the home fog among those not down, null if there is none
+		 public Fog closest(Fog home, boolean[] down){
+			 int h = home.ordinal;
+			 int[] row = row(h);
+			 for (int j : row){
+				 if (!down[j])
+					 return fogs[j];
+			 }
+			 if (row.length == linked[h].length)
+				 return null;
+			 int best = -1;
+			 for (int j : linked[h]){
+				 if (!down[j] && (best < 0 || latency[h][j] < latency[h][best]))
+					 best = j;
+			 }
+			 return best < 0 ? null : fogs[best];
+		 }
+		 
+		 // Top of row h, once the marked links are read
+		 private int[] row(int h){
+			 for (Link l : stale){
+				 l.stale = false;
+				 int a = l.source.ordinal, b = l.destination.ordinal;
+				 double d = l.FogLatency();
+				 latency[a][b] = latency[b][a] = d;
+				 place(a, b);
+				 place(b, a);
+			 }
+			 stale.clear();
+			 if (select[h])
+				 select(h);
+			 return top[h];
+		 }
+		 
+		 // Moves j in the top of row h, its latency having changed
+		 private void place(int h, int j){
+			 if (select[h])
+				 return;
+			 int[] row = top[h];
+			 int n = row.length, p = 0;
+			 while (p < n && row[p] != j)
+				 p++;
+			 if (p == n){
+				 // Outside the top: it takes the place of the last if it is closer now
+				 if (n == 0 || latency[h][j] >= latency[h][row[n - 1]])
+					 return;
+				 p = n - 1;
+			 }
+			 else if (n < linked[h].length && p < n - 1 && latency[h][j] > latency[h][row[n - 1]]
+					 || n < linked[h].length && p == n - 1 && (n == 1 || latency[h][j] > latency[h][row[n - 2]])){
+				 // Slower than the last of the others in the top, it might be passed by a fog outside
+				 select[h] = true;
+				 return;
+			 }
+			 // Sorted again by insertion, j moving from p
+			 while (p > 0 && latency[h][row[p - 1]] > latency[h][j]){
+				 row[p] = row[p - 1];
+				 p--;
+			 }
+			 while (p < n - 1 && latency[h][row[p + 1]] < latency[h][j]){
+				 row[p] = row[p + 1];
+				 p++;
+			 }
+			 row[p] = j;
+		 }
+		 
+		 // Selects the top of row h over all the fogs linked to h
+		 private void select(int h){
+			 int[] row = top[h];
+			 int n = 0;
+			 for (int j : linked[h]){
+				 if (n == row.length && (n == 0 || latency[h][j] >= latency[h][row[n - 1]]))
+					 continue;
+				 int p = n < row.length ? n++ : n - 1;
+				 while (p > 0 && latency[h][row[p - 1]] > latency[h][j]){
+					 row[p] = row[p - 1];
+					 p--;
+				 }
+				 row[p] = j;
+			 }
+			 select[h] = false;
+		 }
+		 
+		 // Keeps the k closest fogs from now on, every row being selected again
+		 private void grow(int k){
+			 this.k = k;
+			 for (int h = 0; h < fogs.length; h++){
+				 top[h] = new int[Math.min(k, linked[h].length)];
+				 select[h] = true;
+			 }
+		 }
 	 }
-}
\ No newline at end of file
+}
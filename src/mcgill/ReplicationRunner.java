@@ -0,0 +1,177 @@
+package mcgill;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import umontreal.iro.lecuyer.stat.Tally;
+
+/*
+ * Independent replications of JAMCloud run in parallel on a thread pool. Every replication is a
+ * separate context (its own simulator, fogs, devices and statistics) whose random streams start at
+ * the substream of the replication, see JAMCloud.stream. Each replication adds one observation,
+ * its mean, to the tallies below, and the report gives Student confidence intervals across replications.
+ *
+ * Several parameter points share the pool; replication r of every point uses the same substreams.
+ *
+ * Usage: java mcgill.ReplicationRunner alpha[,alpha...] decay order numApp option fogsFailed replications [threads] [level]
+ */
+public class ReplicationRunner {
+	int choice, numApp, fogsFailed;
+	double alpha, decay, order;
+
+	// One observation per replication
+	Tally meanResponse = new Tally("Mean response");
+	Tally p95Response = new Tally("95th percentile response");
+	Tally[] tierResponse = new Tally[JAMCloud.TIER_NAMES.length];
+	Tally utilization = new Tally("Fog utilization");
+
+	public ReplicationRunner(int choice, double alpha, double decay, double order, int numApp, int fogsFailed){
+		this.choice = choice;
+		this.alpha = alpha;
+		this.decay = decay;
+		this.order = order;
+		this.numApp = numApp;
+		this.fogsFailed = fogsFailed;
+		for (int t = 0; t < tierResponse.length; t++){
+			tierResponse[t] = new Tally("Mean " + JAMCloud.TIER_NAMES[t] + " response");
+		}
+	}
+
+	// What is kept of a replication once its context is released
+	static class Replication {
+		int index;
+		double mean, p95, utilization;
+		double[] tierMeans = new double[JAMCloud.TIER_NAMES.length];
+	}
+
+	public Callable<Replication> replication(final int index){
+		return () -> {
+			JAMCloud cloud = new JAMCloud(choice, alpha, decay, order, numApp, fogsFailed, index);
+			try {
+				cloud.simulOneRun();
+				return summarize(cloud, index);
+			} finally {
+				cloud.dispose();
+			}
+		};
+	}
+
+	Replication summarize(JAMCloud cloud, int index){
+		Replication rep = new Replication();
+		rep.index = index;
+		ResponseStats all = cloud.allResponses(choice);
+		rep.mean = all.average();
+		rep.p95 = all.quantile(0.95);
+		ResponseStats[] tiers = cloud.responseStats(choice);
+		for (int t = 0; t < tiers.length; t++){
+			rep.tierMeans[t] = tiers[t].average();
+		}
+		// Same utilization as printReport: time-average over capacity, averaged over the fogs
+		double util = 0;
+		for (Fog f : cloud.fogN){
+			util += f.jresource.statOnUtil().average() / f.jresource.statOnUtil().max();
+		}
+		rep.utilization = util / cloud.fogN.size();
+		return rep;
+	}
+
+	// Tiers an algorithm never used have no mean and add no observation
+	void add(Replication rep){
+		add(meanResponse, rep.mean);
+		add(p95Response, rep.p95);
+		for (int t = 0; t < tierResponse.length; t++){
+			add(tierResponse[t], rep.tierMeans[t]);
+		}
+		add(utilization, rep.utilization);
+	}
+
+	private static void add(Tally tally, double x){
+		if (!Double.isNaN(x))
+			tally.add(x);
+	}
+
+	public String report(double level){
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Algorithm %d, alpha %.3f, decay %.3f, order %.3f, %d applications per device, %d fogs failed%n",
+				choice, alpha, decay, order, numApp, fogsFailed));
+		sb.append(line(meanResponse, level));
+		sb.append(line(p95Response, level));
+		for (Tally t : tierResponse){
+			sb.append(line(t, level));
+		}
+		sb.append(line(utilization, level));
+		return sb.toString();
+	}
+
+	private static String line(Tally tally, double level){
+		if (tally.numberObs() < 2)
+			return String.format("  %-28s n=%d mean=%.4f%n", tally.getName(), tally.numberObs(), tally.numberObs() == 0 ? Double.NaN : tally.average());
+		double[] ci = new double[2];
+		tally.confidenceIntervalStudent(level, ci);
+		return String.format("  %-28s n=%d mean=%.4f %.0f%% CI [%.4f, %.4f]%n", tally.getName(), tally.numberObs(),
+				ci[0], 100 * level, ci[0] - ci[1], ci[0] + ci[1]);
+	}
+
+	/*
+	 * Runs the replications of every point on a pool of the given number of threads. Observations are
+	 * added in replication order once all the runs are done, so the report does not depend on scheduling.
+	 */
+	public static void runAll(List<ReplicationRunner> points, int replications, int threads) throws InterruptedException, ExecutionException{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<List<Future<Replication>>> futures = new ArrayList<List<Future<Replication>>>();
+			for (ReplicationRunner point : points){
+				List<Future<Replication>> runs = new ArrayList<Future<Replication>>();
+				for (int r = 0; r < replications; r++){
+					runs.add(pool.submit(point.replication(r)));
+				}
+				futures.add(runs);
+			}
+			for (int p = 0; p < points.size(); p++){
+				for (Future<Replication> run : futures.get(p)){
+					points.get(p).add(run.get());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException{
+		String[] alphas = args[0].split(",");
+		double decay = Double.parseDouble(args[1]);
+		double order = Double.parseDouble(args[2]);
+		int numApp = Integer.parseInt(args[3]);
+		int choice = Integer.parseInt(args[4]);
+		int fogsFailed = Integer.parseInt(args[5]);
+		int replications = Integer.parseInt(args[6]);
+		int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+		double level = args.length > 8 ? Double.parseDouble(args[8]) : 0.95;
+
+		// Read the topology before the pool starts, so the runs only copy it
+		Creator.loadDevicesFromFile();
+
+		List<ReplicationRunner> points = new ArrayList<ReplicationRunner>();
+		for (String a : alphas){
+			points.add(new ReplicationRunner(choice, Double.parseDouble(a), decay, order, numApp, fogsFailed));
+		}
+		long start = System.nanoTime();
+		try {
+			runAll(points, replications, threads);
+		} finally {
+			Util.Compress.close(); // off-heap trace columns shared by the contexts, once all are done
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		for (ReplicationRunner point : points){
+			System.out.print(point.report(level));
+		}
+		System.out.printf("%d replications of %d points on %d threads in %.1f s%n", replications, points.size(), threads, seconds);
+	}
+}
@@ -0,0 +1,128 @@
+package mcgill;
+
+import java.util.Arrays;
+
+/*
+ * Streaming statistics for response times in constant memory: count, mean and variance (Welford),
+ * min, max, and a quantile sketch. The sketch counts observations in buckets whose bounds grow
+ * geometrically by GAMMA = (1 + ACCURACY) / (1 - ACCURACY), so any quantile is returned within
+ * ACCURACY relative error. Responses at or below MIN_VALUE share the lowest bucket and responses
+ * above MAX_VALUE share the highest, whose quantile is then the largest response seen.
+ *
+ * Two stats merge exactly (the sketch buckets add up), so runs or replications can be combined.
+ */
+public class ResponseStats {
+	public static final double ACCURACY = 0.01;
+	public static final double MIN_VALUE = 1e-6, MAX_VALUE = 1e10; // covers the 1e9 sentinel responses of DUMMY requests
+	static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+	static final double LOG_GAMMA = Math.log(GAMMA);
+	static final int OFFSET = (int) Math.ceil(Math.log(MIN_VALUE) / LOG_GAMMA);
+	static final int BUCKETS = (int) Math.ceil(Math.log(MAX_VALUE) / LOG_GAMMA) - OFFSET + 3;
+
+	String name;
+	long count;
+	double mean, m2; // running mean and sum of squared deviations
+	double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+	long[] buckets = new long[BUCKETS];
+
+	public ResponseStats(String name){
+		this.name = name;
+	}
+
+	// Bucket 0 < i < BUCKETS - 1 holds the responses in (GAMMA^(i+OFFSET-2), GAMMA^(i+OFFSET-1)]
+	private static int bucket(double x){
+		if (!(x > MIN_VALUE))
+			return 0;
+		if (x > MAX_VALUE)
+			return BUCKETS - 1;
+		return Math.min(BUCKETS - 2, Math.max(1, (int) Math.ceil(Math.log(x) / LOG_GAMMA) - OFFSET + 1));
+	}
+
+	// Value reported for bucket i: the point within ACCURACY of every response in it
+	private double value(int i){
+		if (i == 0)
+			return Math.max(min, 0);
+		if (i == BUCKETS - 1)
+			return max;
+		double v = 2 * Math.pow(GAMMA, i + OFFSET - 1) / (GAMMA + 1);
+		return Math.min(Math.max(v, min), max);
+	}
+
+	public void add(double x){
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+		if (x < min) min = x;
+		if (x > max) max = x;
+		buckets[bucket(x)]++;
+	}
+
+	public void merge(ResponseStats other){
+		if (other.count == 0)
+			return;
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		count = n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] += other.buckets[i];
+	}
+
+	// Response below which a fraction q of the responses fall, within ACCURACY relative error
+	public double quantile(double q){
+		if (count == 0)
+			return Double.NaN;
+		long rank = (long) Math.ceil(q * count);
+		rank = Math.max(1, Math.min(count, rank));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++){
+			seen += buckets[i];
+			if (seen >= rank)
+				return value(i);
+		}
+		return max;
+	}
+
+	public long numberObs(){
+		return count;
+	}
+
+	public double average(){
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	public double variance(){
+		return count < 2 ? Double.NaN : m2 / (count - 1);
+	}
+
+	public double standardDeviation(){
+		return Math.sqrt(variance());
+	}
+
+	public double min(){
+		return min;
+	}
+
+	public double max(){
+		return max;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public void init(){
+		count = 0; mean = 0; m2 = 0;
+		min = Double.POSITIVE_INFINITY; max = Double.NEGATIVE_INFINITY;
+		Arrays.fill(buckets, 0);
+	}
+
+	public String report(){
+		return String.format("%-12s n=%d mean=%.4f sd=%.4f p50=%.4f p95=%.4f p99=%.4f p99.9=%.4f max=%.4f",
+				name, count, average(), standardDeviation(), quantile(0.5), quantile(0.95), quantile(0.99), quantile(0.999), max);
+	}
+}
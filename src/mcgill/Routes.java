@@ -0,0 +1,195 @@
+package mcgill;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Shortest routes between the fogs over the edges of a topology, an edge being as long as the
+ * straight line between its nodes. Dijkstra runs once from every fog over the whole graph, held as
+ * adjacency arrays, so building the routes of k fogs costs O(k m log n) for n nodes and m edges.
+ * What is kept is compact: the k x k route lengths, and for every fog the tree of the shortest routes
+ * to it, as the edge leaving each node toward that fog (k x n ints), so a route is read off in
+ * O(hops) and a length in O(1).
+ *
+ * Edges with an endpoint the topology did not place (Topology.NO_NODE) are left out. Routes do not
+ * change after they are built, so they are shared by every simulation context.
+ */
+public class Routes {
+	public static final int NONE = -1;
+
+	final Topology topology;
+	final int[] node; // topology ordinal of every fog, NONE if no node is at its place
+	final double[] distance; // distance[a * k + b]: length of the shortest route between fogs a and b
+	final int[][] toward; // toward[b][v]: edge leaving node v on a shortest route to fog b, NONE at b or if b is out of reach
+	final int k;
+
+	// Adjacency of the topology: the edges of node v are edge[first[v]] .. edge[first[v + 1] - 1]
+	private final int[] first, edge;
+
+	// Fogs at the given topology ordinals (NONE for a fog that is not in the topology)
+	public Routes(Topology t, int[] fogNodes){
+		topology = t;
+		node = fogNodes.clone();
+		k = node.length;
+		int n = t.getSize(), m = t.getEdgeCount();
+
+		first = new int[n + 1];
+		for (int e = 0; e < m; e++){
+			if (placed(e)){
+				first[t.getSourceOrdinal(e) + 1]++;
+				first[t.getTargetOrdinal(e) + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++){
+			first[v + 1] += first[v];
+		}
+		edge = new int[first[n]];
+		int[] next = Arrays.copyOf(first, n);
+		for (int e = 0; e < m; e++){
+			if (placed(e)){
+				edge[next[t.getSourceOrdinal(e)]++] = e;
+				edge[next[t.getTargetOrdinal(e)]++] = e;
+			}
+		}
+		double[] length = new double[m];
+		for (int e = 0; e < m; e++){
+			if (placed(e)){
+				int a = t.getSourceOrdinal(e), b = t.getTargetOrdinal(e);
+				length[e] = Math.hypot(t.getLongitude(a) - t.getLongitude(b), t.getLatitude(a) - t.getLatitude(b));
+			}
+		}
+
+		distance = new double[k * k];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		toward = new int[k][];
+		double[] dist = new double[n];
+		int[] heap = new int[n], position = new int[n];
+		for (int b = 0; b < k; b++){
+			toward[b] = new int[n];
+			Arrays.fill(toward[b], NONE);
+			if (node[b] == NONE)
+				continue;
+			shortest(node[b], length, dist, toward[b], heap, position);
+			for (int a = 0; a < k; a++){
+				if (node[a] != NONE)
+					distance[a * k + b] = dist[node[a]];
+			}
+		}
+	}
+
+	// Routes between the fogs of a scenario, each at the topology node getNodeEdge made it from (Fog.node)
+	public static Routes forFogs(Topology t, List<Fog> fogs){
+		int[] nodes = new int[fogs.size()];
+		for (int i = 0; i < nodes.length; i++){
+			Fog f = fogs.get(i).fog;
+			nodes[i] = (f == null || f.node < 0 || f.node >= t.getSize()) ? NONE : f.node;
+		}
+		return new Routes(t, nodes);
+	}
+
+	private boolean placed(int e){
+		return topology.getSourceOrdinal(e) != Topology.NO_NODE && topology.getTargetOrdinal(e) != Topology.NO_NODE;
+	}
+
+	// Dijkstra from node root, with a binary heap of nodes indexed by position for the decrease-key
+	private void shortest(int root, double[] length, double[] dist, int[] parent, int[] heap, int[] position){
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(position, NONE);
+		int size = 0;
+		dist[root] = 0;
+		heap[size] = root;
+		position[root] = size++;
+		while (size > 0){
+			int u = heap[0];
+			position[u] = -2; // done
+			int last = heap[--size];
+			if (size > 0)
+				down(last, 0, size, dist, heap, position);
+			for (int i = first[u]; i < first[u + 1]; i++){
+				int e = edge[i];
+				int v = topology.getSourceOrdinal(e) == u ? topology.getTargetOrdinal(e) : topology.getSourceOrdinal(e);
+				if (position[v] == -2)
+					continue;
+				double d = dist[u] + length[e];
+				if (d < dist[v]){
+					dist[v] = d;
+					parent[v] = e;
+					if (position[v] == NONE)
+						position[v] = size++;
+					up(v, position[v], dist, heap, position);
+				}
+			}
+		}
+	}
+
+	private static void up(int v, int i, double[] dist, int[] heap, int[] position){
+		while (i > 0){
+			int p = (i - 1) >>> 1;
+			if (dist[heap[p]] <= dist[v])
+				break;
+			heap[i] = heap[p];
+			position[heap[i]] = i;
+			i = p;
+		}
+		heap[i] = v;
+		position[v] = i;
+	}
+
+	private static void down(int v, int i, int size, double[] dist, int[] heap, int[] position){
+		int child;
+		while ((child = 2 * i + 1) < size){
+			if (child + 1 < size && dist[heap[child + 1]] < dist[heap[child]])
+				child++;
+			if (dist[heap[child]] >= dist[v])
+				break;
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = v;
+		position[v] = i;
+	}
+
+	public int getFogCount(){
+		return k;
+	}
+
+	// Topology ordinal of fog a, or NONE
+	public int node(int a){
+		return node[a];
+	}
+
+	// Length of the shortest route between fogs a and b, infinite if there is none
+	public double distance(int a, int b){
+		return distance[a * k + b];
+	}
+
+	/*
+	 * Writes the topology edges of a shortest route from fog a to fog b into edges, in order, and returns
+	 * their number, or NONE if there is no route. edges must hold the route, see hops.
+	 */
+	public int route(int a, int b, int[] edges){
+		if (node[a] == NONE || node[b] == NONE || distance[a * k + b] == Double.POSITIVE_INFINITY)
+			return NONE;
+		int[] tree = toward[b];
+		int hops = 0;
+		for (int v = node[a]; v != node[b]; ){
+			int e = tree[v];
+			edges[hops++] = e;
+			v = topology.getSourceOrdinal(e) == v ? topology.getTargetOrdinal(e) : topology.getSourceOrdinal(e);
+		}
+		return hops;
+	}
+
+	// Number of edges on the route from fog a to fog b, NONE if there is none
+	public int hops(int a, int b){
+		if (node[a] == NONE || node[b] == NONE || distance[a * k + b] == Double.POSITIVE_INFINITY)
+			return NONE;
+		int hops = 0;
+		for (int v = node[a]; v != node[b]; hops++){
+			int e = toward[b][v];
+			v = topology.getSourceOrdinal(e) == v ? topology.getTargetOrdinal(e) : topology.getSourceOrdinal(e);
+		}
+		return hops;
+	}
+}
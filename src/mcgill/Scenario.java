@@ -0,0 +1,338 @@
+package mcgill;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import umontreal.iro.lecuyer.util.io.BinaryDataReader;
+import umontreal.iro.lecuyer.util.io.BinaryDataWriter;
+import umontreal.iro.lecuyer.util.io.DataField;
+
+/*
+ * The scenario every JAMCloud run starts from: the topology of Cogentco.gml, the capacitated fogs and
+ * clouds found in it, the links between the fogs, the devices of newDevices.txt with their sampled
+ * devLatency, and the lines of the assignment files. Building it parses the text files and draws one latency per device,
+ * so it is built once and written as a snapshot with BinaryDataWriter; later runs memory-map the
+ * snapshot and read it back with BinaryDataReader, and every run sees the same devLatency values.
+ *
+ * Fields of the snapshot (fogs and clouds in Creator.googleFogs/cloudNodes order, links by fog ordinal):
+ *   version, the parameters it was built with (build.fogMinDegree, build.fogMaxDegree,
+ *   build.cloudMinDegree, build.linkBandwidth), topology.id, topology.longitude, topology.latitude (by node ordinal), topology.source,
+ *   topology.target (node ids of the edges), fogs.id, fogs.node, fogs.ordinal (topology ordinal of the
+ *   node), fogs.longitude, fogs.latitude, fogs.cpu, fogs.memory, clouds.* as fogs,
+ *   links.source, links.target, links.bandwidth, devices.id, devices.longitude, devices.latitude,
+ *   devices.latency, assignments (file names), assignments.<file name> (device, home, pool) triples.
+ * A snapshot older than any of its source files, or built with other parameters, is rebuilt, see load.
+ * It is written next to the device file, unless the jamcloud.scenario property names another path; an
+ * empty jamcloud.scenario builds the scenario on every run and writes no snapshot.
+ */
+public class Scenario {
+	public static final String SNAPSHOT = "scenario.bin"; // file name of the snapshot, see snapshot
+	public static final String DEVICES = "newDevices.txt";
+	static final int VERSION = 3;
+	static final double LINK_BANDWIDTH = 1000; // 1GB, one link between every pair of fogs
+
+	Topology topology; // the routes between the fogs are found over it, see Creator.routes
+	List<Fog> fogs, clouds; // templates: every JAMCloud context takes its own copies
+	List<Device> devices;
+	int[] linkSource, linkTarget; // ordinals in fogs
+	double[] linkBandwidth;
+	Map<String, int[]> assignmentLines = new LinkedHashMap<String, int[]>(); // file name -> Assignments.readLines
+
+	private Scenario(){
+	}
+
+	// Path of the snapshot of the scenario built from devicesFile, or null if no snapshot is kept
+	public static String snapshot(String devicesFile){
+		String path = System.getProperty("jamcloud.scenario");
+		if (path != null)
+			return path.isEmpty() ? null : path;
+		return new File(new File(devicesFile).getAbsoluteFile().getParentFile(), SNAPSHOT).getPath();
+	}
+
+	/*
+	 * Maps the snapshot when it is at least as recent as the topology, the device file and the
+	 * assignment files, and was built with the current degree thresholds and link bandwidth; otherwise
+	 * builds the scenario from them and writes the snapshot for the next runs.
+	 * A null snapshot only builds the scenario.
+	 */
+	public static Scenario load(String snapshot, String devicesFile, String... assignmentFiles) throws FileNotFoundException, IOException{
+		if (snapshot == null)
+			return build(devicesFile, assignmentFiles);
+		List<String> sources = new ArrayList<String>();
+		sources.add(Creator.FILENAME);
+		sources.add(devicesFile);
+		for (String a : assignmentFiles){
+			sources.add(a);
+		}
+		if (isCurrent(snapshot, sources)){
+			try {
+				return map(snapshot);
+			} catch (IOException e){
+				System.out.println("Rebuilding " + snapshot + ": " + e.getMessage());
+			}
+		}
+		Scenario s = build(devicesFile, assignmentFiles);
+		try {
+			s.write(snapshot);
+		} catch (IOException e){
+			// The run can go on from the text files, only the next start is slower
+			System.out.println("Could not write " + snapshot + ": " + e.getMessage());
+		}
+		return s;
+	}
+
+	static boolean isCurrent(String snapshot, List<String> sources){
+		File s = new File(snapshot);
+		if (!s.exists())
+			return false;
+		for (String source : sources){
+			File f = new File(source);
+			if (f.exists() && f.lastModified() > s.lastModified())
+				return false;
+		}
+		return true;
+	}
+
+	// Reads the text files the way Creator does, drawing the device latencies
+	public static Scenario build(String devicesFile, String... assignmentFiles) throws FileNotFoundException, IOException{
+		Scenario s = new Scenario();
+		s.devices = Creator.createNewDevicesFromFile(devicesFile);
+		s.topology = Creator.topology();
+		s.fogs = new ArrayList<Fog>(Creator.googleFogs);
+		s.clouds = new ArrayList<Fog>(Creator.cloudNodes);
+
+		// A single distinct link between 2 fogs
+		int n = s.fogs.size(), links = n * (n - 1) / 2, l = 0;
+		s.linkSource = new int[links];
+		s.linkTarget = new int[links];
+		s.linkBandwidth = new double[links];
+		for (int source = 0; source < n - 1; source++){
+			for (int destination = source + 1; destination < n; destination++){
+				s.linkSource[l] = source;
+				s.linkTarget[l] = destination;
+				s.linkBandwidth[l] = LINK_BANDWIDTH;
+				l++;
+			}
+		}
+
+		for (String a : assignmentFiles){
+			if (new File(a).exists())
+				s.assignmentLines.put(a, Assignments.readLines(a));
+		}
+		return s;
+	}
+
+	// Written to a temporary file first, so a run mapping the snapshot never sees it half written
+	public void write(String fileName) throws IOException{
+		File target = new File(fileName).getAbsoluteFile();
+		File tmp = File.createTempFile("scenario", ".tmp", target.getParentFile());
+		try {
+			BinaryDataWriter out = new BinaryDataWriter(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.write("version", VERSION);
+				out.write("build.fogMinDegree", Creator.FOG_MIN_DEGREE);
+				out.write("build.fogMaxDegree", Creator.FOG_MAX_DEGREE);
+				out.write("build.cloudMinDegree", Creator.CLOUD_MIN_DEGREE);
+				out.write("build.linkBandwidth", LINK_BANDWIDTH);
+				int nodes = topology.getSize(), edges = topology.getEdgeCount();
+				out.write("topology.id", topology.ids, nodes);
+				out.write("topology.longitude", topology.longitudes, nodes);
+				out.write("topology.latitude", topology.latitudes, nodes);
+				out.write("topology.source", topology.edgeSource, edges);
+				out.write("topology.target", topology.edgeTarget, edges);
+				writeFogs(out, "fogs", fogs);
+				writeFogs(out, "clouds", clouds);
+				out.write("links.source", linkSource, linkSource.length);
+				out.write("links.target", linkTarget, linkTarget.length);
+				out.write("links.bandwidth", linkBandwidth, linkBandwidth.length);
+
+				int n = devices.size();
+				int[] ids = new int[n];
+				double[] lng = new double[n], lat = new double[n], latency = new double[n];
+				for (int i = 0; i < n; i++){
+					Device d = devices.get(i);
+					ids[i] = d.deviceId;
+					lng[i] = d.deviceLongitude;
+					lat[i] = d.deviceLatitude;
+					latency[i] = d.devLatency;
+				}
+				out.write("devices.id", ids, n);
+				out.write("devices.longitude", lng, n);
+				out.write("devices.latitude", lat, n);
+				out.write("devices.latency", latency, n);
+
+				String[] names = assignmentLines.keySet().toArray(new String[0]);
+				out.write("assignments", names, names.length);
+				for (String name : names){
+					int[] lines = assignmentLines.get(name);
+					out.write("assignments." + name, lines, lines.length);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static void writeFogs(BinaryDataWriter out, String prefix, List<Fog> list) throws IOException{
+		int n = list.size();
+		int[] ids = new int[n], nodes = new int[n], ordinals = new int[n];
+		double[] lng = new double[n], lat = new double[n], cpu = new double[n], mem = new double[n];
+		for (int i = 0; i < n; i++){
+			Fog f = list.get(i);
+			ids[i] = f.id;
+			nodes[i] = f.fog.id;
+			ordinals[i] = f.fog.node;
+			lng[i] = f.fog.longitude;
+			lat[i] = f.fog.latitude;
+			cpu[i] = f.cpu;
+			mem[i] = f.memory;
+		}
+		out.write(prefix + ".id", ids, n);
+		out.write(prefix + ".node", nodes, n);
+		out.write(prefix + ".ordinal", ordinals, n);
+		out.write(prefix + ".longitude", lng, n);
+		out.write(prefix + ".latitude", lat, n);
+		out.write(prefix + ".cpu", cpu, n);
+		out.write(prefix + ".memory", mem, n);
+	}
+
+	// Name of the first build parameter the snapshot fields differ in from the current one, null if none
+	static String changedParameter(Map<String, DataField> fields){
+		if (fields.get("build.fogMinDegree").asInt() != Creator.FOG_MIN_DEGREE)
+			return "FOG_MIN_DEGREE";
+		if (fields.get("build.fogMaxDegree").asInt() != Creator.FOG_MAX_DEGREE)
+			return "FOG_MAX_DEGREE";
+		if (fields.get("build.cloudMinDegree").asInt() != Creator.CLOUD_MIN_DEGREE)
+			return "CLOUD_MIN_DEGREE";
+		if (fields.get("build.linkBandwidth").asDouble() != LINK_BANDWIDTH)
+			return "LINK_BANDWIDTH";
+		return null;
+	}
+
+	public static Scenario map(String fileName) throws FileNotFoundException, IOException{
+		Map<String, DataField> fields;
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()){
+			BinaryDataReader in = new BinaryDataReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			fields = in.readAllFields();
+		}
+		DataField version = fields.get("version");
+		if (version == null || version.asInt() != VERSION)
+			throw new IOException(fileName + " is not a version " + VERSION + " scenario snapshot");
+		String changed = changedParameter(fields);
+		if (changed != null)
+			throw new IOException(fileName + " was built with another " + changed);
+
+		Scenario s = new Scenario();
+		s.topology = Topology.of(fields.get("topology.id").asIntArray(), fields.get("topology.longitude").asDoubleArray(),
+				fields.get("topology.latitude").asDoubleArray(), fields.get("topology.source").asIntArray(),
+				fields.get("topology.target").asIntArray());
+		s.fogs = readFogs(fields, "fogs");
+		s.clouds = readFogs(fields, "clouds");
+		s.linkSource = fields.get("links.source").asIntArray();
+		s.linkTarget = fields.get("links.target").asIntArray();
+		s.linkBandwidth = fields.get("links.bandwidth").asDoubleArray();
+
+		int[] ids = fields.get("devices.id").asIntArray();
+		double[] lng = fields.get("devices.longitude").asDoubleArray();
+		double[] lat = fields.get("devices.latitude").asDoubleArray();
+		double[] latency = fields.get("devices.latency").asDoubleArray();
+		s.devices = new ArrayList<Device>(ids.length);
+		for (int i = 0; i < ids.length; i++){
+			s.devices.add(new Device(ids[i], lng[i], lat[i], latency[i]));
+		}
+
+		for (String name : fields.get("assignments").asStringArray()){
+			s.assignmentLines.put(name, fields.get("assignments." + name).asIntArray());
+		}
+		return s;
+	}
+
+	// Fogs as getNodeEdge makes them: a located node wrapped in a capacitated fog
+	private static List<Fog> readFogs(Map<String, DataField> fields, String prefix){
+		int[] ids = fields.get(prefix + ".id").asIntArray();
+		int[] nodes = fields.get(prefix + ".node").asIntArray();
+		int[] ordinals = fields.get(prefix + ".ordinal").asIntArray();
+		double[] lng = fields.get(prefix + ".longitude").asDoubleArray();
+		double[] lat = fields.get(prefix + ".latitude").asDoubleArray();
+		double[] cpu = fields.get(prefix + ".cpu").asDoubleArray();
+		double[] mem = fields.get(prefix + ".memory").asDoubleArray();
+		List<Fog> list = new ArrayList<Fog>(ids.length);
+		for (int i = 0; i < ids.length; i++){
+			Fog located = new Fog(nodes[i], lng[i], lat[i]);
+			located.node = ordinals[i];
+			list.add(new Fog(ids[i], located, cpu[i], mem[i]));
+		}
+		return list;
+	}
+
+	/*
+	 * Assignments of a file held by the scenario. A binary assignment file newer than the text file
+	 * (see Assignments.preferBinary) is mapped instead, as are files the scenario does not hold.
+	 */
+	public Assignments assignments(String fileName, List<Fog> fogs) throws FileNotFoundException, IOException{
+		String preferred = Assignments.preferBinary(fileName);
+		int[] lines = assignmentLines.get(fileName);
+		if (lines == null || !preferred.equals(fileName))
+			return Assignments.load(preferred, fogs);
+		return Assignments.fromLines(lines, fogs);
+	}
+
+	public int getFogCount(){
+		return fogs.size();
+	}
+
+	public int getCloudCount(){
+		return clouds.size();
+	}
+
+	public int getLinkCount(){
+		return linkSource.length;
+	}
+
+	public int getDeviceCount(){
+		return devices.size();
+	}
+
+	/*
+	 * Rebuilds the snapshot from the text files and times mapping it back.
+	 * Usage: java mcgill.Scenario [snapshot]   (run where Cogentco.gml and newDevices.txt are)
+	 */
+	public static void main(String[] args) throws IOException{
+		String snapshot = args.length > 0 ? args[0] : snapshot(DEVICES);
+		if (snapshot == null)
+			throw new IllegalArgumentException("jamcloud.scenario is empty: give the snapshot path");
+		long start = System.nanoTime();
+		Scenario built = build(DEVICES, JAMCloud.ASSIGNMENTS, JAMCloud.HOME_ASSIGNMENTS);
+		double buildMs = (System.nanoTime() - start) / 1e6;
+		built.write(snapshot);
+
+		start = System.nanoTime();
+		Scenario mapped = map(snapshot);
+		double mapMs = (System.nanoTime() - start) / 1e6;
+
+		System.out.printf("Wrote %s: %d fogs, %d clouds, %d links, %d devices, %d assignment files (%d bytes)%n", snapshot,
+				mapped.getFogCount(), mapped.getCloudCount(), mapped.getLinkCount(), mapped.getDeviceCount(),
+				mapped.assignmentLines.size(), new File(snapshot).length());
+		System.out.printf("built from text in %.1f ms, mapped in %.1f ms%n", buildMs, mapMs);
+		for (int i = 0; i < built.devices.size(); i++){
+			if (built.devices.get(i).devLatency != mapped.devices.get(i).devLatency){
+				System.out.println("MISMATCH at device " + built.devices.get(i).deviceId);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package mcgill;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * The GML graph (Cogentco.gml) parsed once. Nodes are addressed by ordinal, in file order, with
+ * their ids and coordinates in primitive arrays and an id -> ordinal map; edges keep the node ids
+ * of the file and the ordinals they resolve to. The mean and standard deviation of the edge
+ * latencies, which every device latency is drawn from, are computed once here.
+ *
+ * A topology does not change after it is read, so it is shared by every simulation context.
+ */
+public class Topology {
+	public static final int NO_NODE = -1;
+
+	final int[] ids;
+	final double[] longitudes, latitudes;
+	final int[] edgeSource, edgeTarget; // node ids, as in the file
+	final int[] sourceOrdinal, targetOrdinal; // NO_NODE when the node was not read (no coordinates)
+	private final Util.LongIntMap ordinals = new Util.LongIntMap(); // id -> ordinal, the last node of an id wins
+	final double latencyMean, latencyStdev;
+
+	private Topology(int[] ids, double[] longitudes, double[] latitudes, int nodes, int[] edgeSource, int[] edgeTarget, int edges){
+		this.ids = Arrays.copyOf(ids, nodes);
+		this.longitudes = Arrays.copyOf(longitudes, nodes);
+		this.latitudes = Arrays.copyOf(latitudes, nodes);
+		this.edgeSource = Arrays.copyOf(edgeSource, edges);
+		this.edgeTarget = Arrays.copyOf(edgeTarget, edges);
+		for (int i = 0; i < nodes; i++){
+			ordinals.put(ids[i], i);
+		}
+		sourceOrdinal = new int[edges];
+		targetOrdinal = new int[edges];
+		for (int e = 0; e < edges; e++){
+			sourceOrdinal[e] = ordinal(edgeSource[e]);
+			targetOrdinal[e] = ordinal(edgeTarget[e]);
+		}
+
+		// Edge latencies as Creator.calEdgeLatencies measured them: an endpoint that was not read
+		// keeps the coordinates of the previous edge
+		double[] latency = new double[edges];
+		double srcLong = 0, srcLat = 0, tarLong = 0, tarLat = 0;
+		Util.Latency myLat = new Util.Latency();
+		for (int e = 0; e < edges; e++){
+			if (sourceOrdinal[e] != NO_NODE){
+				srcLong = longitudes[sourceOrdinal[e]];
+				srcLat = latitudes[sourceOrdinal[e]];
+			}
+			if (targetOrdinal[e] != NO_NODE){
+				tarLong = longitudes[targetOrdinal[e]];
+				tarLat = latitudes[targetOrdinal[e]];
+			}
+			latency[e] = myLat.queueLatency(srcLong, srcLat, tarLong, tarLat);
+		}
+		double total = 0;
+		for (int e = 0; e < edges; e++){
+			total += latency[e];
+		}
+		latencyMean = total / edges;
+		double sd = 0;
+		for (int e = 0; e < edges; e++){
+			sd += Math.pow(latency[e] - latencyMean, 2);
+		}
+		latencyStdev = Math.sqrt(sd / edges);
+	}
+
+	// Parses the file with the line rules of Creator.reader
+	public static Topology read(String fileName) throws FileNotFoundException, IOException{
+		int[] ids = new int[256], sources = new int[256], targets = new int[256];
+		double[] lngs = new double[256], lats = new double[256];
+		int nodes = 0, edges = 0;
+
+		int id = -1, source = -1, target = -1;
+		double lng = 0, lat = 0;
+		try (BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName))){
+			String currentLine;
+			while ((currentLine = bufferedReader.readLine()) != null){
+				currentLine = currentLine.trim();
+
+				if (currentLine.startsWith("id")){
+					id = Integer.parseInt(currentLine.split(" ")[1]);
+				}
+				if (currentLine.startsWith("Longitude")){
+					lng = Double.parseDouble(currentLine.split(" ")[1]);
+				}
+				if (currentLine.startsWith("Latitude")){
+					lat = Double.parseDouble(currentLine.split(" ")[1]);
+				}
+				if (id != -1 && lng != 0 && lat != 0){
+					if (nodes == ids.length){
+						ids = Arrays.copyOf(ids, 2 * nodes);
+						lngs = Arrays.copyOf(lngs, 2 * nodes);
+						lats = Arrays.copyOf(lats, 2 * nodes);
+					}
+					ids[nodes] = id;
+					lngs[nodes] = lng;
+					lats[nodes] = lat;
+					nodes++;
+					id = -1; lng = 0; lat = 0;
+				}
+
+				if (currentLine.startsWith("source")){
+					source = Integer.parseInt(currentLine.split(" ")[1]);
+				}
+				if (currentLine.startsWith("target")){
+					target = Integer.parseInt(currentLine.split(" ")[1]);
+				}
+				if (source != -1 && target != -1){
+					if (edges == sources.length){
+						sources = Arrays.copyOf(sources, 2 * edges);
+						targets = Arrays.copyOf(targets, 2 * edges);
+					}
+					sources[edges] = source;
+					targets[edges] = target;
+					edges++;
+					source = -1; target = -1;
+				}
+			}
+		}
+		return new Topology(ids, lngs, lats, nodes, sources, targets, edges);
+	}
+
+	// A topology of the given nodes, in ordinal order, and edges between node ids, e.g. read back from a scenario snapshot
+	public static Topology of(int[] ids, double[] longitudes, double[] latitudes, int[] edgeSource, int[] edgeTarget){
+		return new Topology(ids, longitudes, latitudes, ids.length, edgeSource, edgeTarget, edgeSource.length);
+	}
+
+	public int getSize(){
+		return ids.length;
+	}
+
+	public int getEdgeCount(){
+		return edgeSource.length;
+	}
+
+	// Ordinal of the node with this id, or NO_NODE
+	public int ordinal(int id){
+		return ordinals.get(id);
+	}
+
+	public int getId(int ordinal){
+		return ids[ordinal];
+	}
+
+	public double getLongitude(int ordinal){
+		return longitudes[ordinal];
+	}
+
+	public double getLatitude(int ordinal){
+		return latitudes[ordinal];
+	}
+
+	public int getEdgeSource(int edge){
+		return edgeSource[edge];
+	}
+
+	public int getEdgeTarget(int edge){
+		return edgeTarget[edge];
+	}
+
+	public int getSourceOrdinal(int edge){
+		return sourceOrdinal[edge];
+	}
+
+	public int getTargetOrdinal(int edge){
+		return targetOrdinal[edge];
+	}
+
+	public double getLatencyMean(){
+		return latencyMean;
+	}
+
+	public double getLatencyStdev(){
+		return latencyStdev;
+	}
+
+	// A device latency drawn from the edge latency distribution, see Util.Latency.deviceLatency
+	public double deviceLatency(){
+		return new Util.Latency(latencyMean, latencyStdev).deviceLatency();
+	}
+}
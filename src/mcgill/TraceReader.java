@@ -0,0 +1,245 @@
+package mcgill;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Streaming reader for the Google cluster trace CSV files (task_events.csv, machine_events.csv).
+ * The file is memory-mapped a window at a time and the fields are parsed in place, so no line or
+ * field String is made and memory does not grow with the file; a trace of several GB is read
+ * through windows of WINDOW bytes. next() moves to the next usable record, whose fields are then
+ * read with the getters.
+ *
+ * Records are picked like Util.Compress.fileSorter picks them:
+ *   TASK_EVENTS     13 fields; time = field 0 / 1e7, job id = field 2, cpu, memory, disk = fields 9, 10, 11
+ *   MACHINE_EVENTS   6 fields; time = field 0, cpu, memory = fields 4, 5
+ * and a record needs a non-zero time. Lines with another number of fields, or with one of these
+ * fields empty or not a number (missing values in the trace), are skipped and counted.
+ */
+public class TraceReader implements Closeable {
+	public static final int TASK_EVENTS = 4, MACHINE_EVENTS = 3; // the n of Util.Compress.fileSorter
+	static final int WINDOW = 1 << 26; // 64MB; a line must fit in a window
+	static final int MAX_FIELDS = 16;
+	static final double TASK_TIME_UNIT = 10000000; // task times are divided by this, as fileSorter did
+
+	private static final double[] POW10 = new double[23]; // exact powers of ten
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long length;
+	private final int kind;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int pos; // next line in the window
+	private final int[] fieldStart = new int[MAX_FIELDS], fieldEnd = new int[MAX_FIELDS];
+
+	// The current record
+	private double time, jobId;
+	private float cpu, memory, disk;
+	private long records, skipped;
+
+	public TraceReader(String fileName, int kind) throws FileNotFoundException, IOException{
+		if (kind != TASK_EVENTS && kind != MACHINE_EVENTS)
+			throw new IllegalArgumentException("Unknown trace kind " + kind);
+		this.kind = kind;
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		length = channel.size();
+		map(0);
+	}
+
+	public static TraceReader tasks(String fileName) throws FileNotFoundException, IOException{
+		return new TraceReader(fileName, TASK_EVENTS);
+	}
+
+	public static TraceReader machines(String fileName) throws FileNotFoundException, IOException{
+		return new TraceReader(fileName, MACHINE_EVENTS);
+	}
+
+	private void map(long start) throws IOException{
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, length - start));
+		pos = 0;
+	}
+
+	// Moves to the next usable record; false at the end of the file
+	public boolean next() throws IOException{
+		while (true){
+			if (windowStart + pos >= length)
+				return false;
+			int end = lineEnd();
+			if (end < 0){
+				// The line runs past the window: map the next window from its start
+				if (pos == 0)
+					throw new IOException("Line longer than " + WINDOW + " bytes at offset " + windowStart);
+				map(windowStart + pos);
+				continue;
+			}
+			int from = pos;
+			pos = end + 1;
+			if (parse(from, end)){
+				records++;
+				return true;
+			}
+			skipped++;
+		}
+	}
+
+	// Offset of the '\n' ending the line at pos (the window limit for the last line of the file), or -1
+	private int lineEnd(){
+		int limit = window.limit();
+		for (int i = pos; i < limit; i++){
+			if (window.get(i) == '\n')
+				return i;
+		}
+		return (windowStart + limit == length) ? limit : -1;
+	}
+
+	private boolean parse(int from, int end){
+		if (end > from && window.get(end - 1) == '\r')
+			end--;
+		int n = 0;
+		fieldStart[0] = from;
+		for (int i = from; i < end; i++){
+			if (window.get(i) == ','){
+				if (n + 1 == MAX_FIELDS)
+					return false;
+				fieldEnd[n++] = i;
+				fieldStart[n] = i + 1;
+			}
+		}
+		fieldEnd[n++] = end;
+
+		if (kind == TASK_EVENTS){
+			if (n != 13)
+				return false;
+			time = number(0) / TASK_TIME_UNIT;
+			jobId = number(2);
+			cpu = (float) number(9);
+			memory = (float) number(10);
+			disk = (float) number(11);
+			return time != 0 && !Double.isNaN(time + jobId + cpu + memory + disk);
+		}
+		if (n != 6)
+			return false;
+		time = number(0);
+		cpu = (float) number(4);
+		memory = (float) number(5);
+		disk = 0;
+		jobId = -1;
+		return time != 0 && !Double.isNaN(time + cpu + memory);
+	}
+
+	/*
+	 * Parses a field as a double, NaN when it is empty or not a number. Up to 18 significant digits
+	 * and exponents within 22 are exact in a long and a power of ten, so one multiplication or
+	 * division rounds correctly; anything else goes through Double.parseDouble.
+	 */
+	private double number(int field){
+		int i = fieldStart[field], to = fieldEnd[field];
+		boolean negative = false, digits = false, exact = true;
+		long mantissa = 0;
+		int significant = 0, exp = 0;
+		if (i < to && (window.get(i) == '-' || window.get(i) == '+')){
+			negative = window.get(i) == '-';
+			i++;
+		}
+		for (; i < to; i++){
+			int c = window.get(i) - '0';
+			if (c < 0 || c > 9)
+				break;
+			digits = true;
+			if (significant < 18){
+				mantissa = 10 * mantissa + c;
+				if (mantissa != 0) significant++;
+			}
+			else {
+				exp++;
+				if (c != 0) exact = false;
+			}
+		}
+		if (i < to && window.get(i) == '.'){
+			for (i++; i < to; i++){
+				int c = window.get(i) - '0';
+				if (c < 0 || c > 9)
+					break;
+				digits = true;
+				if (significant < 18){
+					mantissa = 10 * mantissa + c;
+					if (mantissa != 0) significant++;
+					exp--;
+				}
+				else if (c != 0)
+					exact = false;
+			}
+		}
+		if (!digits)
+			return Double.NaN;
+		if (i < to && (window.get(i) == 'e' || window.get(i) == 'E'))
+			return slowNumber(field);
+		if (i != to)
+			return Double.NaN;
+		if (!exact || mantissa >= (1L << 53) || exp < -22 || exp > 22)
+			return slowNumber(field);
+		double v = exp < 0 ? mantissa / POW10[-exp] : mantissa * POW10[exp];
+		return negative ? -v : v;
+	}
+
+	private double slowNumber(int field){
+		byte[] b = new byte[fieldEnd[field] - fieldStart[field]];
+		for (int i = 0; i < b.length; i++)
+			b[i] = window.get(fieldStart[field] + i);
+		try {
+			return Double.parseDouble(new String(b, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e){
+			return Double.NaN;
+		}
+	}
+
+	public double getTime(){
+		return time;
+	}
+
+	public double getJobId(){
+		return jobId;
+	}
+
+	public float getCpu(){
+		return cpu;
+	}
+
+	public float getMemory(){
+		return memory;
+	}
+
+	public float getDisk(){
+		return disk;
+	}
+
+	// Records returned so far
+	public long getRecords(){
+		return records;
+	}
+
+	// Lines skipped so far
+	public long getSkipped(){
+		return skipped;
+	}
+
+	public void close() throws IOException{
+		window = null;
+		channel.close();
+		file.close();
+	}
+}
@@ -1,91 +1,305 @@
 package mcgill;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 public class Util {
 	
+	public static final long NO_TASK = -1; // id of requests that are not replicated
+	
+	// Task id of the seq-th request of a device: the device id in the high word, the sequence number in the low word
+	public static long taskId(int device, int seq){
+		return ((long) device << 32) | (seq & 0xffffffffL);
+	}
+	
+	public static int taskDevice(long task){
+		return (int) (task >>> 32);
+	}
+	
+	public static int taskSeq(long task){
+		return (int) task;
+	}
+	
+	/*
+	 * Open-addressing hash map from long keys to non-negative int values, with linear probing
+	 * and backward-shift deletion, so lookups and updates do not box or allocate.
+	 * get, put and remove return -1 for a missing key. NO_TASK cannot be used as a key.
+	 */
+	public static class LongIntMap{
+		long[] keys;
+		int[] values;
+		int size, mask;
+		
+		public LongIntMap(){
+			keys = new long[16];
+			values = new int[16];
+			Arrays.fill(keys, NO_TASK);
+			mask = 15;
+		}
+		
+		private int home(long key){
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+		
+		public int get(long key){
+			for (int i = home(key); keys[i] != NO_TASK; i = (i + 1) & mask){
+				if (keys[i] == key)
+					return values[i];
+			}
+			return -1;
+		}
+		
+		public int put(long key, int value){
+			int i = home(key);
+			for (; keys[i] != NO_TASK; i = (i + 1) & mask){
+				if (keys[i] == key){
+					int old = values[i];
+					values[i] = value;
+					return old;
+				}
+			}
+			keys[i] = key;
+			values[i] = value;
+			if (++size > keys.length / 2)
+				rehash(2 * keys.length);
+			return -1;
+		}
+		
+		public int remove(long key){
+			int i = home(key);
+			for (; keys[i] != key; i = (i + 1) & mask){
+				if (keys[i] == NO_TASK)
+					return -1;
+			}
+			int old = values[i];
+			size--;
+			// Shift back the entries that probed past the freed slot
+			for (int j = (i + 1) & mask; keys[j] != NO_TASK; j = (j + 1) & mask){
+				int h = home(keys[j]);
+				if (((j - h) & mask) >= ((j - i) & mask)){
+					keys[i] = keys[j];
+					values[i] = values[j];
+					i = j;
+				}
+			}
+			keys[i] = NO_TASK;
+			return old;
+		}
+		
+		private void rehash(int capacity){
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[capacity];
+			values = new int[capacity];
+			Arrays.fill(keys, NO_TASK);
+			mask = capacity - 1;
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++){
+				if (oldKeys[i] != NO_TASK)
+					put(oldKeys[i], oldValues[i]);
+			}
+		}
+		
+		public int getSize(){
+			return size;
+		}
+		
+		public void clear(){
+			Arrays.fill(keys, NO_TASK);
+			size = 0;
+		}
+	}
+	
+	/*
+	 * Real and dummy completion times per task id (see Util.taskId), as recorded by Resource. Slots are kept in
+	 * primitive arrays and indexed by id, and the slots of one id are chained, since an id can be
+	 * recorded more than once. Running sums keep the averages O(1).
+	 *
+	 * With a limit (constructor argument, or the jamcloud.saveLimit property) at most that many
+	 * slots are held: the oldest slot is evicted to make room. Evicted pairs still count in the
+	 * averages, but an evicted id that shows up again starts a new pair.
+	 */
 	public static class SaveRealDummy{
-		List<String> id;
-		List<Double> real;
-		List<Double> dummy;
+		public static final int DEFAULT_LIMIT = Integer.getInteger("jamcloud.saveLimit", 0);
+		
+		long[] id; // NO_TASK once cleared or evicted
+		double[] real;
+		double[] dummy;
+		int[] older, newer; // chain of the slots of one id, -1 at both ends
+		LongIntMap newest; // newest slot of every id held
+		int size; // slots in use, including cleared ones
+		long recorded; // slots ever written, the next one goes to recorded % limit when bounded
+		int limit;
+		double realSum, dummySum;
+		int count; // pairs in the sums
 		
 		public SaveRealDummy(){
-			id = new ArrayList<String>();
-			real = new ArrayList<Double>();
-			dummy = new ArrayList<Double>();
+			this(DEFAULT_LIMIT);
 		}
 		
-		public Boolean contain(String str){
-			
-			for (int i = 0; i < id.size(); i++){
-				if (str.equals(id.get(i)))
-					return true;				
+		public SaveRealDummy(int limit){
+			this.limit = limit;
+			int n = (limit > 0) ? Math.min(limit, 64) : 64;
+			id = new long[n];
+			real = new double[n];
+			dummy = new double[n];
+			older = new int[n];
+			newer = new int[n];
+			newest = new LongIntMap();
+		}
+		
+		public boolean contain(long task){
+			return newest.get(task) >= 0;
+		}
+		
+		public void update(long i, double r, double d){
+			int slot;
+			if (limit > 0 && recorded >= limit){
+				slot = (int) (recorded % limit);
+				evict(slot);
+			}
+			else {
+				if (size == id.length)
+					grow();
+				slot = size++;
 			}
-			return false;
+			recorded++;
+			id[slot] = i;
+			real[slot] = r;
+			dummy[slot] = d;
+			realSum += r;
+			dummySum += d;
+			count++;
+			int previous = newest.put(i, slot);
+			older[slot] = previous;
+			newer[slot] = -1;
+			if (previous >= 0)
+				newer[previous] = slot;
+		}
+		
+		private void grow(){
+			int n = (limit > 0) ? Math.min(limit, 2 * id.length) : 2 * id.length;
+			id = Arrays.copyOf(id, n);
+			real = Arrays.copyOf(real, n);
+			dummy = Arrays.copyOf(dummy, n);
+			older = Arrays.copyOf(older, n);
+			newer = Arrays.copyOf(newer, n);
 		}
 		
-		public void update(String i, double r, double d){
-			id.add(i);
-			real.add(r);
-			dummy.add(d);
+		// Drops the slot from the index, its values stay in the averages
+		private void evict(int index){
+			if (id[index] != NO_TASK)
+				unlink(index);
+			id[index] = NO_TASK;
+		}
+		
+		private void unlink(int index){
+			if (newer[index] >= 0)
+				older[newer[index]] = older[index];
+			else if (older[index] >= 0)
+				newest.put(id[index], older[index]);
+			else
+				newest.remove(id[index]);
+			if (older[index] >= 0)
+				newer[older[index]] = newer[index];
 		}
 		
 		public void clear(int index){
-			id.set(index, null);
-			real.set(index, null);
-			dummy.set(index, null);
-			
+			if (id[index] == NO_TASK)
+				return;
+			unlink(index);
+			realSum -= real[index];
+			dummySum -= dummy[index];
+			count--;
+			id[index] = NO_TASK;
 		}
 		
-		public String getID(int index){
-			return id.get(index);
+		// Sets the real time of every slot of the task that has none yet
+		public void setRealIfUnset(long i, double val){
+			for (int s = newest.get(i); s >= 0; s = older[s]){
+				if (real[s] == 0)
+					setReal(s, val);
+			}
+		}
+		
+		// Sets the dummy time of every slot of the task that has none yet
+		public void setDummyIfUnset(long i, double val){
+			for (int s = newest.get(i); s >= 0; s = older[s]){
+				if (dummy[s] == 0)
+					setDummy(s, val);
+			}
+		}
+		
+		// Moves every slot of the task into other, oldest first, and clears them here
+		public void moveTo(long i, SaveRealDummy other){
+			int s = newest.get(i);
+			if (s < 0)
+				return;
+			while (older[s] >= 0)
+				s = older[s];
+			while (s >= 0){
+				int next = newer[s];
+				other.update(i, real[s], dummy[s]);
+				clear(s);
+				s = next;
+			}
+		}
+		
+		public long getID(int index){
+			return id[index];
 		}
 		
 		public Double getReal(int index){
-			return real.get(index);
+			return (id[index] == NO_TASK) ? null : real[index];
 		}
 		
 		public void setReal(int index, double val){
-			real.set(index, val);
+			realSum += val - real[index];
+			real[index] = val;
 		}
 		
 		public void setDummy(int index, double val){
-			dummy.set(index, val);
+			dummySum += val - dummy[index];
+			dummy[index] = val;
 		}
 		
 		public Double getDummy(int index){
-			return dummy.get(index);
+			return (id[index] == NO_TASK) ? null : dummy[index];
 		}
 		
 		public double getRealAverage(){
-			double sum = 0, average = 0;
-			for (int i = 0; i < real.size(); i++){
-				sum += real.get(i);
-			}
-			average = sum/real.size();
-			return average;
+			return realSum/count;
 		}
 		
 		public double getDummyAverage(){
-			double sum = 0, average = 0;
-			for (int i = 0; i < dummy.size(); i++){
-				sum += dummy.get(i);
-			}
-			average = sum/dummy.size();
-			return average;
+			return dummySum/count;
 		}
 		
 		public int getSize(){
-			return id.size();
+			return size;
+		}
+		
+		// Pairs in the averages, evicted ones included
+		public int getCount(){
+			return count;
 		}
 	}
 	
@@ -102,13 +316,132 @@ public class Util {
 		
 	}
 	
+	/*
+	 * Growable series of double samples with running count, sum, min and max over every sample added.
+	 * By default all samples are kept. A limit (constructor argument, or the jamcloud.seriesLimit and
+	 * jamcloud.seriesMode properties) bounds the samples held:
+	 *   RING keeps the latest limit samples,
+	 *   DOWNSAMPLE keeps at most limit averages of equal runs of samples, doubling the run length
+	 *   whenever the buffer fills, so the whole run stays covered at a coarser resolution.
+	 * The aggregates always cover every sample, whatever is held.
+	 */
+	public static class DoubleSeries{
+		public static final int GROW = 0, RING = 1, DOWNSAMPLE = 2;
+		public static final int DEFAULT_LIMIT = Integer.getInteger("jamcloud.seriesLimit", 0);
+		public static final int DEFAULT_MODE = "downsample".equals(System.getProperty("jamcloud.seriesMode")) ? DOWNSAMPLE : RING;
+		
+		double[] values;
+		int size; // samples held
+		int head; // oldest sample once a ring has wrapped
+		int mode, limit;
+		int stride = 1; // samples averaged into one held value when downsampling
+		double pendingSum;
+		int pending;
+		long count;
+		double sum, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		
+		public DoubleSeries(){
+			this(DEFAULT_LIMIT > 0 ? DEFAULT_MODE : GROW, DEFAULT_LIMIT);
+		}
+		
+		public DoubleSeries(int mode, int limit){
+			if (mode != GROW && limit < 2)
+				throw new IllegalArgumentException("A bounded series needs a limit of at least 2");
+			this.mode = mode;
+			this.limit = limit;
+			values = new double[(mode == GROW) ? 16 : Math.min(limit, 16)];
+		}
+		
+		public void add(double v){
+			count++;
+			sum += v;
+			if (v < min) min = v;
+			if (v > max) max = v;
+			if (mode == DOWNSAMPLE && stride > 1){
+				pendingSum += v;
+				if (++pending < stride)
+					return;
+				v = pendingSum / stride;
+				pendingSum = 0;
+				pending = 0;
+			}
+			if (size == values.length){
+				if (mode == GROW || size < limit){
+					values = Arrays.copyOf(values, (mode == GROW) ? 2 * size : Math.min(limit, 2 * size));
+				}
+				else if (mode == RING){
+					values[head] = v;
+					head = (head + 1) % size;
+					return;
+				}
+				else {
+					// Halve the resolution: average neighbouring pairs
+					for (int i = 0; i < size / 2; i++)
+						values[i] = (values[2 * i] + values[2 * i + 1]) / 2;
+					if (size % 2 == 1)
+						values[size / 2] = values[size - 1];
+					size = (size + 1) / 2;
+					// v already averages stride samples, it starts the next value at the doubled stride
+					pendingSum = v * stride;
+					pending = stride;
+					stride *= 2;
+					return;
+				}
+			}
+			values[size++] = v;
+		}
+		
+		// index-th sample held, oldest first
+		public double get(int index){
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return values[(head + index) % values.length];
+		}
+		
+		public int size(){
+			return size;
+		}
+		
+		public long getCount(){
+			return count;
+		}
+		
+		public double getSum(){
+			return sum;
+		}
+		
+		public double getAverage(){
+			return sum / count;
+		}
+		
+		public double getMin(){
+			return min;
+		}
+		
+		public double getMax(){
+			return max;
+		}
+		
+		public double[] toArray(){
+			double[] a = new double[size];
+			for (int i = 0; i < size; i++)
+				a[i] = get(i);
+			return a;
+		}
+		
+		public void clear(){
+			size = 0; head = 0; stride = 1; pending = 0; pendingSum = 0;
+			count = 0; sum = 0; min = Double.POSITIVE_INFINITY; max = Double.NEGATIVE_INFINITY;
+		}
+	}
+	
 	public static class UtilizationMap{
-		List<Double> resourceUsed;
-		List<Double> time;
+		DoubleSeries resourceUsed;
+		DoubleSeries time;
 		
 		public UtilizationMap(){
-			resourceUsed = new ArrayList<Double>();
-			time  = new ArrayList<Double>();
+			resourceUsed = new DoubleSeries();
+			time  = new DoubleSeries();
 		}
 		
 		public void update(double res, double t){
@@ -116,17 +449,31 @@ public class Util {
 			time.add(t);
 		}
 		
-		public Double getResource(int index){
+		public double getResource(int index){
 			return resourceUsed.get(index);
 		}
 		
-		public Double getTime(int index){
+		public double getTime(int index){
 			return time.get(index);
 		}
 		
-		public Integer getSize(){
+		// Number of updates held, those getResource and getTime index
+		public int getSize(){
 			return time.size();
 		}
+		
+		// Number of updates, held or not, as getResourceSum counts them
+		public long getCount(){
+			return time.getCount();
+		}
+		
+		public double getResourceSum(){
+			return resourceUsed.getSum();
+		}
+		
+		public double getResourceAverage(){
+			return resourceUsed.getAverage();
+		}
 	}
 	
 	public static class InputMap{
@@ -220,29 +567,252 @@ public class Util {
 		}
 	}
 	
-	public static class TaskCompressor{
-		List<Double> jobID;
-		List<Double> time;
-		List<Float> CPUReq;
-		List<Float> memReq;
-		List<Float> diskReq;
+	/*
+	 * Storage behind the columns of the trace compressors when they are off heap: chunks of CHUNK
+	 * values mapped from one temporary file, added as a column grows. Mapped chunks live outside the
+	 * Java heap and are paged by the OS, so a trace larger than the heap still fits. Closing the file
+	 * deletes it; the chunks already mapped stay readable, a mapping outliving its channel.
+	 */
+	static class ColumnFile implements Closeable{
+		static final int CHUNK_SHIFT = 20, CHUNK = 1 << CHUNK_SHIFT, MASK = CHUNK - 1;
+		File f;
+		RandomAccessFile raf;
+		FileChannel channel;
+		long end;
+		
+		ColumnFile(){
+			try {
+				f = File.createTempFile("jamcloud", ".columns");
+				f.deleteOnExit();
+				raf = new RandomAccessFile(f, "rw");
+				channel = raf.getChannel();
+			} catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		ByteBuffer chunk(int bytes){
+			try {
+				ByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, end, bytes);
+				end += bytes;
+				return b;
+			} catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		public void close() throws IOException{
+			raf.close(); // closes the channel
+			f.delete();
+		}
+	}
+	
+	/*
+	 * Growable column of primitives, A the array type and B the buffer type: an array that doubles
+	 * when full, or chunks of width * CHUNK bytes of a ColumnFile. The subclasses only add and get one
+	 * value of their type.
+	 */
+	static abstract class Column<A, B extends Buffer>{
+		final int width; // bytes of a value
+		A values;
+		B[] chunks;
+		ColumnFile file;
+		int size;
+		
+		Column(ColumnFile file, int width, A values, B[] chunks){
+			this.file = file;
+			this.width = width;
+			if (file == null) this.values = values;
+			else this.chunks = chunks;
+		}
+		
+		abstract B view(ByteBuffer bytes);
+		
+		// Puts len values of a from index from into the chunk, from index at
+		abstract void put(B chunk, int at, A a, int from, int len);
+		
+		// The chunk holding index, mapped when first reached
+		final B chunk(int index){
+			int c = index >>> ColumnFile.CHUNK_SHIFT;
+			if (c == chunks.length)
+				chunks = Arrays.copyOf(chunks, 2 * c);
+			if (chunks[c] == null)
+				chunks[c] = view(file.chunk(width * ColumnFile.CHUNK));
+			return chunks[c];
+		}
+		
+		// Room in the array for n more values
+		@SuppressWarnings("unchecked")
+		final void grow(int n){
+			int length = java.lang.reflect.Array.getLength(values);
+			if (size + n <= length)
+				return;
+			A a = (A) java.lang.reflect.Array.newInstance(values.getClass().getComponentType(), Math.max(2 * length, size + n));
+			System.arraycopy(values, 0, a, 0, size);
+			values = a;
+		}
+		
+		final void addAll(A a, int n){
+			if (values == null){
+				for (int i = 0; i < n; ){
+					int at = size & ColumnFile.MASK, len = Math.min(n - i, ColumnFile.CHUNK - at);
+					put(chunk(size), at, a, i, len);
+					i += len; size += len;
+				}
+				return;
+			}
+			grow(n);
+			System.arraycopy(a, 0, values, size, n);
+			size += n;
+		}
+		
+		final void check(int index){
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+	
+	static final class DoubleColumn extends Column<double[], DoubleBuffer>{
+		DoubleColumn(ColumnFile file){
+			super(file, 8, new double[16], new DoubleBuffer[4]);
+		}
+		
+		DoubleBuffer view(ByteBuffer bytes){
+			return bytes.asDoubleBuffer();
+		}
+		
+		void put(DoubleBuffer chunk, int at, double[] a, int from, int len){
+			DoubleBuffer d = chunk.duplicate(); // a relative bulk put, the absolute one needing Java 16
+			d.position(at);
+			d.put(a, from, len);
+		}
+		
+		void add(double v){
+			if (values == null)
+				chunk(size).put(size & ColumnFile.MASK, v);
+			else {
+				grow(1);
+				values[size] = v;
+			}
+			size++;
+		}
+		
+		double get(int index){
+			check(index);
+			return (values == null) ? chunks[index >>> ColumnFile.CHUNK_SHIFT].get(index & ColumnFile.MASK) : values[index];
+		}
+	}
+	
+	static final class FloatColumn extends Column<float[], FloatBuffer>{
+		FloatColumn(ColumnFile file){
+			super(file, 4, new float[16], new FloatBuffer[4]);
+		}
+		
+		FloatBuffer view(ByteBuffer bytes){
+			return bytes.asFloatBuffer();
+		}
+		
+		void put(FloatBuffer chunk, int at, float[] a, int from, int len){
+			FloatBuffer d = chunk.duplicate(); // a relative bulk put, the absolute one needing Java 16
+			d.position(at);
+			d.put(a, from, len);
+		}
+		
+		void add(float v){
+			if (values == null)
+				chunk(size).put(size & ColumnFile.MASK, v);
+			else {
+				grow(1);
+				values[size] = v;
+			}
+			size++;
+		}
+		
+		float get(int index){
+			check(index);
+			return (values == null) ? chunks[index >>> ColumnFile.CHUNK_SHIFT].get(index & ColumnFile.MASK) : values[index];
+		}
+	}
+	
+	static final class LongColumn extends Column<long[], LongBuffer>{
+		LongColumn(ColumnFile file){
+			super(file, 8, new long[16], new LongBuffer[4]);
+		}
+		
+		LongBuffer view(ByteBuffer bytes){
+			return bytes.asLongBuffer();
+		}
+		
+		void put(LongBuffer chunk, int at, long[] a, int from, int len){
+			LongBuffer d = chunk.duplicate(); // a relative bulk put, the absolute one needing Java 16
+			d.position(at);
+			d.put(a, from, len);
+		}
+		
+		void add(long v){
+			if (values == null)
+				chunk(size).put(size & ColumnFile.MASK, v);
+			else {
+				grow(1);
+				values[size] = v;
+			}
+			size++;
+		}
+		
+		long get(int index){
+			check(index);
+			return (values == null) ? chunks[index >>> ColumnFile.CHUNK_SHIFT].get(index & ColumnFile.MASK) : values[index];
+		}
+	}
+	
+	// First index of a time column in time order whose time is at least t (size when there is none)
+	static int firstIndex(DoubleColumn time, double t){
+		int lo = 0, hi = time.size;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (time.get(mid) < t) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+	
+	/*
+	 * Task records of the trace in primitive columns. Off heap (constructor argument, or the
+	 * jamcloud.traceOffHeap property) the columns are mapped from a temporary file, see ColumnFile.
+	 * Records inserted in time order, as the trace is, can be sliced by time with range.
+	 */
+	public static class TaskCompressor implements Closeable{
+		public static final boolean DEFAULT_OFF_HEAP = Boolean.getBoolean("jamcloud.traceOffHeap");
+		
+		DoubleColumn time;
+		LongColumn jobID;
+		FloatColumn CPUReq;
+		FloatColumn memReq;
+		FloatColumn diskReq;
+		boolean ordered = true; // times never went down
+		final ColumnFile file; // null on heap
 		
 		int jID, tme;
 		float cpu, mem, disk;
 		
 		public TaskCompressor(){
-			jobID = new ArrayList<Double>();
-			time  = new ArrayList<Double>();
-			CPUReq = new ArrayList<Float>();
-			memReq = new ArrayList<Float>();
-			diskReq = new ArrayList<Float>();
+			this(DEFAULT_OFF_HEAP);
 		}
 		
-		public Double getTime(int index){
+		public TaskCompressor(boolean offHeap){
+			file = offHeap ? new ColumnFile() : null;
+			time  = new DoubleColumn(file);
+			jobID = new LongColumn(file);
+			CPUReq = new FloatColumn(file);
+			memReq = new FloatColumn(file);
+			diskReq = new FloatColumn(file);
+		}
+		
+		public double getTime(int index){
 			return time.get(index);
 		}
 		
-		public Double getJobID(int index){
+		public long getJobID(int index){
 			return jobID.get(index);
 		}
 		
@@ -259,39 +829,100 @@ public class Util {
 		}
 		
 		public int getSize(){
-			return time.size();
+			return time.size;
 		}
 		
+		// Off-heap chunks stay mapped and are written over
 		public void clear(){
-			time.clear(); jobID.clear(); CPUReq.clear(); memReq.clear(); diskReq.clear();
+			time.size = 0; jobID.size = 0; CPUReq.size = 0; memReq.size = 0; diskReq.size = 0;
+			ordered = true;
 		}
 		
 		public void insert( double tme, double jId, float cpu, float mem, float disk){
+			if (time.size > 0 && tme < time.get(time.size - 1))
+				ordered = false;
 			time.add(tme);
-			jobID.add(jId);
+			jobID.add((long) jId);
 			CPUReq.add(cpu);
 			memReq.add(mem);
 			diskReq.add(disk);
 		}
+		
+		// Appends the first n records of the arrays
+		public void insert(double[] tme, long[] jId, float[] cpu, float[] mem, float[] disk, int n){
+			double last = (time.size > 0) ? time.get(time.size - 1) : Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n && ordered; i++){
+				if (tme[i] < last)
+					ordered = false;
+				last = tme[i];
+			}
+			time.addAll(tme, n);
+			jobID.addAll(jId, n);
+			CPUReq.addAll(cpu, n);
+			memReq.addAll(mem, n);
+			diskReq.addAll(disk, n);
+		}
+		
+		// First record at or after time t
+		public int firstIndex(double t){
+			if (!ordered)
+				throw new IllegalStateException("Tasks were not inserted in time order");
+			return Util.firstIndex(time, t);
+		}
+		
+		// Records with start <= time < end, as {first, end} indexes
+		public int[] range(double start, double end){
+			int first = firstIndex(start);
+			return new int[] {first, Math.max(first, firstIndex(end))};
+		}
+		
+		// Deletes the file of the off-heap columns; what was inserted stays readable, nothing more can be
+		public void close() throws IOException{
+			if (file != null)
+				file.close();
+		}
 	}
 	
-	public static class MachineCompressor{
-		List<Double> time;
-		List<Float> CPU;
-		List<Float> Memory;
+	// Machine records of the trace in primitive columns, as TaskCompressor
+	public static class MachineCompressor implements Closeable{
+		DoubleColumn time;
+		FloatColumn CPU;
+		FloatColumn Memory;
+		boolean ordered = true;
+		final ColumnFile file;
 		
 		public MachineCompressor(){
-			time = new ArrayList<Double>();
-			CPU = new ArrayList<Float>();
-			Memory = new ArrayList<Float>();
+			this(TaskCompressor.DEFAULT_OFF_HEAP);
+		}
+		
+		public MachineCompressor(boolean offHeap){
+			file = offHeap ? new ColumnFile() : null;
+			time = new DoubleColumn(file);
+			CPU = new FloatColumn(file);
+			Memory = new FloatColumn(file);
 		}
 		
 		public void insert(double tme, float cpu, float mem){
+			if (time.size > 0 && tme < time.get(time.size - 1))
+				ordered = false;
 			time.add(tme);
 			CPU.add(cpu);
 			Memory.add(mem);
 		}
 		
+		// Appends the first n records of the arrays
+		public void insert(double[] tme, float[] cpu, float[] mem, int n){
+			double last = (time.size > 0) ? time.get(time.size - 1) : Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n && ordered; i++){
+				if (tme[i] < last)
+					ordered = false;
+				last = tme[i];
+			}
+			time.addAll(tme, n);
+			CPU.addAll(cpu, n);
+			Memory.addAll(mem, n);
+		}
+		
 		public double getTime(int index){
 			return time.get(index);
 		}
@@ -305,7 +936,23 @@ public class Util {
 		}
 		
 		public int getSize(){
-			return time.size();
+			return time.size;
+		}
+		
+		public int firstIndex(double t){
+			if (!ordered)
+				throw new IllegalStateException("Machine events were not inserted in time order");
+			return Util.firstIndex(time, t);
+		}
+		
+		public int[] range(double start, double end){
+			int first = firstIndex(start);
+			return new int[] {first, Math.max(first, firstIndex(end))};
+		}
+		
+		public void close() throws IOException{
+			if (file != null)
+				file.close();
 		}
 	}
 	
@@ -315,6 +962,11 @@ public class Util {
 			
 		}
 		
+		public Latency(double mean, double stdev){
+			this.mean = mean;
+			this.stdev = stdev;
+		}
+		
 		public double queueLatency(double firstLong, double firstLat, double secondLong, double secondLat){
 			
 			double distanceLatency;
@@ -368,80 +1020,61 @@ public class Util {
 		
 		protected static MachineCompressor machine = new MachineCompressor();
 		
+		/*
+		 * Reads the task (n = 4) or machine (n = 3) trace into the shared task or machine compressor,
+		 * streaming it through a TraceReader. The records are also written as text to fileOutput,
+		 * unless it is null.
+		 */
 		protected void fileSorter(String fileInput, String fileOutput, int n)throws IOException, FileNotFoundException{
-			
-			double T_time = 0; float T_CPURequest = -1f, T_MEMRequest = -1f, T_DiskRequest = -1f;
-			double M_Time = 0; float M_CPU = -1f, M_Memory = -1f;
-			double jobID = -1;
-			
-			try(FileWriter f = new FileWriter(fileOutput, false)){
-				bWriter = new BufferedWriter(f);
-				try (BufferedReader bReader = new BufferedReader(new FileReader(fileInput))){
-					String sCrnttLine;
-					String[] splits;
-					double secondsTime = 6.00026913E8/10000000 + 1;
-					
-					while((sCrnttLine = bReader.readLine()) != null){
-						sCrnttLine.trim();
-						int i = 0;
-						splits = sCrnttLine.split(",");
-						if (n == 4 && splits.length == 13){ // Check to see if it is a taskevent, we need five attributes off the file
-						
-							T_time = Double.parseDouble(splits[0]) / 10000000;
-							jobID = Double.parseDouble(splits[2]);
-							T_CPURequest = Float.parseFloat(splits[9]);
-							T_MEMRequest = Float.parseFloat(splits[10]);
-							T_DiskRequest = Float.parseFloat(splits[11]);
-							int count = 0;							
-						
-							if (T_time != 0 && jobID != -1 && T_CPURequest != -1f && T_MEMRequest != -1f && T_DiskRequest != -1f){
-																					
-								bWriter.write(T_time + " " + jobID + " " + T_CPURequest + " " + T_MEMRequest + " " + T_DiskRequest);
-								bWriter.write("\n");
-								task.insert(T_time, jobID, T_CPURequest, T_MEMRequest, T_DiskRequest);
-//								bWriter.newLine();
-								T_time = 0; T_CPURequest = -1f; T_MEMRequest = -1f; T_DiskRequest = -1f;
-								jobID = -1;
-							}
-					
-							
+			bWriter = (fileOutput == null) ? null : new BufferedWriter(new FileWriter(fileOutput, false));
+			try (TraceReader trace = new TraceReader(fileInput, n)){
+				while (trace.next()){
+					if (n == TraceReader.TASK_EVENTS){
+						task.insert(trace.getTime(), trace.getJobId(), trace.getCpu(), trace.getMemory(), trace.getDisk());
+						if (bWriter != null){
+							bWriter.write(trace.getTime() + " " + trace.getJobId() + " " + trace.getCpu() + " " + trace.getMemory() + " " + trace.getDisk());
+							bWriter.write("\n");
 						}
-						
-						if (n == 3 && splits.length == 6){
-							M_Time = Double.parseDouble(splits[0]);
-							M_CPU = Float.parseFloat(splits[4]);
-							M_Memory = Float.parseFloat(splits[5]);
-							
-							if (M_Time != 0 && M_CPU != -1f && M_Memory != -1f){
-								bWriter.write(M_Time + " " + M_Memory  + " " + M_CPU);
-								bWriter.write("\n");
-								machine.insert(M_Time, M_CPU, M_Memory);
-								M_Time = 0; M_CPU = -1f; M_Memory = -1f;
-							}
-						}
-						if (T_time >= secondsTime){
-							secondsTime = secondsTime+1;
-							i++;
+					}
+					else {
+						machine.insert(trace.getTime(), trace.getCpu(), trace.getMemory());
+						if (bWriter != null){
+							bWriter.write(trace.getTime() + " " + trace.getMemory()  + " " + trace.getCpu());
+							bWriter.write("\n");
 						}
-						
 					}
-					bReader.close();
 				}
-				bWriter.flush();
-				bWriter.close();
-//				for (int k = 0; k<task.getSize(); k++)
-//					System.out.println(k + ": " + task.getTime(k) + " " + task.getMem(k));
+			} finally {
+				if (bWriter != null)
+					bWriter.close();
 			}
-			
 		}
 		
-		public void taskSplitter(){
-			for (int k = 0; k<task.getSize(); k++){
-//				System.out.println(k + ": " + task.getTime(k) + " " + task.getMem(k));
-				if(task.getTime(k) >= 60 && task.getTime(k) < 70){
-					
-				}
+		// The task trace, read on the first call only
+		protected static synchronized TaskCompressor tasks(String fileInput) throws IOException, FileNotFoundException{
+			if (task.getSize() == 0)
+				new Compress().fileSorter(fileInput, null, TraceReader.TASK_EVENTS);
+			return task;
+		}
+		
+		/*
+		 * Deletes the files of the shared compressors that are off heap, and starts new ones read again
+		 * on the next call. Whoever still holds the old ones can read them, but not insert.
+		 */
+		protected static synchronized void close() throws IOException{
+			if (task.file != null){
+				task.close();
+				task = new TaskCompressor(true);
 			}
+			if (machine.file != null){
+				machine.close();
+				machine = new MachineCompressor(true);
+			}
+		}
+		
+		// Tasks of the 60 to 70 window as {first, end} indexes, found by binary search on the time column
+		public int[] taskSplitter(){
+			return task.range(60, 70);
 		}
 	}
 }
@@ -6,7 +6,7 @@ import umontreal.iro.lecuyer.stat.*;
 
 public class BankProc {
 
-   ProcessSimulator sim = new ThreadProcessSimulator();
+   ProcessSimulator sim = ProcessSimulator.newInstance();
    double   minute = 1.0 / 60.0;
    int      nbServed;           // Number of customers served so far
    double   meanDelay;          // Mean time between arrivals
@@ -84,6 +84,6 @@ public class BankProc {
    }
 
    public static void main (String[] args) { 
-       new BankProc().simulateDays (100);
+       new BankProc().simulateDays (args.length > 0 ? Integer.parseInt (args[0]) : 100);
    }
 }
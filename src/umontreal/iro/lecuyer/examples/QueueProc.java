@@ -39,7 +39,7 @@ public class QueueProc {
    public static void main (String[] args) {
 //	   for (int i = 0; i < 5; i++){
       QueueProc queue = new QueueProc (1.0, 2.0);
-      queue.simulateOneRun (1000.0);
+      queue.simulateOneRun (args.length > 0 ? Double.parseDouble (args[0]) : 1000.0);
       System.out.println (queue.server.report());
 //	   }
    }
@@ -72,11 +72,13 @@ public abstract class Event implements Comparable<Event> {
    // (i.e., true if this event is a process.)
 
    private int myra = 0;
-   // A new event must always occur after those with same time and 
-   // same priority in the Event list. myra is used for that in
-   // SplayTree.java.
+   // Private bookkeeping of the event list holding this event, 0 when the
+   // event is in none. SplayTree uses it so that a new event occurs after
+   // those with the same time and priority; BinaryHeap keeps the index of
+   // the event in its heap plus one, to remove it without a search.
+   // Other event lists must not rely on its value.
 
-   // For internal use
+   // For internal use by the event lists
    public final int getRa() { return myra; }
    public final void setRa(int r) { myra = r; }
 
@@ -30,6 +30,7 @@ import umontreal.iro.lecuyer.simevents.eventlist.EventList;
 import umontreal.iro.lecuyer.simevents.eventlist.SplayTree;
 import umontreal.iro.lecuyer.simprocs.*;
    import java.util.ListIterator;
+   import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents the executive of a discrete-event simulator.
@@ -52,6 +53,8 @@ import umontreal.iro.lecuyer.simprocs.*;
  * Note that this class is NOT thread-safe.  Consequently, if a simulation program
  * uses multiple threads, it should acquire a lock on a simulator (using a
  * <TT>synchronized</TT> block) before accessing its state.
+ * The only exception is {@link #inject inject}, which any thread may call
+ * to schedule an event while the simulation runs.
  * Note however, that one can launch many simulations in parallel with as many
  * threads, as long as <SPAN  CLASS="textit">each thread has its own</SPAN> <TT>Simulator</TT>.
  * 
@@ -73,6 +76,9 @@ public class Simulator  {
 
    protected ContinuousState continuousState = null; 
 
+   private final AtomicReference<Injected> injected = new AtomicReference<Injected>();
+      // Events injected by other threads and not yet in the event list, the last first.
+
    /**
     * Represents the default simulator being used by the
     *      class {@link Sim}, and the no-argument constructor of {@link Event}.
@@ -87,11 +93,24 @@ public class Simulator  {
 
    /**
     * Constructs a new simulator using a splay tree for the
-    *   event list.
+    *   event list, or an instance of the class named by the
+    *   <TT>ssj.eventList</TT> system property if it is set, e.g.,
+    *   <TT>-Dssj.eventList=umontreal.iro.lecuyer.simevents.eventlist.CalendarQueue</TT>.
+    *   The given class must implement {@link EventList} and have a no-argument constructor.
     * 
     */
    public Simulator() {
-     eventList  = new SplayTree();
+     String name = System.getProperty ("ssj.eventList");
+     if (name == null)
+        eventList  = new SplayTree();
+     else {
+        try {
+           eventList = (EventList)Class.forName (name).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+           throw new IllegalArgumentException ("Cannot create the event list " + name, e);
+        }
+     }
    }
 
 
@@ -196,6 +215,8 @@ public class Simulator  {
    protected Event removeFirstEvent() {
        if (stopped)
           return null;
+       if (injected.get() != null)
+          addInjected();
        Event ev = eventList.removeFirst();
        if (ev == null)
           return null;
@@ -212,6 +233,8 @@ public class Simulator  {
     * 
     */
    public void start ()  {
+      if (injected.get() != null)
+         addInjected();
       if (eventList.isEmpty())
         throw new IllegalStateException ("start() called with an empty event list");
       stopped = false;
@@ -234,6 +257,66 @@ public class Simulator  {
    }
 
 
+   /**
+    * Schedules <TT>ev</TT> to happen at time <TT>time</TT>; unlike the
+    *    other methods, this one may be called by any thread, e.g., to feed
+    *    measures taken outside into a running simulation.
+    *    The event is only queued, without locking, and the thread running the
+    *    simulation adds the queued events to the event list, in the order they
+    *    were injected, before it removes the next event.  If <TT>time</TT> has
+    *    passed by then, the event happens at the current time, after the events
+    *    already scheduled at that time.  Events injected while the simulation is
+    *    not running are added when it starts.
+    *    An event already in the event list when it is added, e.g., injected
+    *    twice, is cancelled first, as by {@link Event#reschedule reschedule}:
+    *    it happens once, at the time of the last injection.
+    *   
+    * @param ev event to schedule, constructed for this simulator
+    * 
+    *    @param time simulation time at which the event happens
+    * 
+    * 
+    */
+   public void inject (Event ev, double time)  {
+      if (ev.simulator() != this)
+         throw new IllegalArgumentException ("Event of another simulator");
+      Injected node = new Injected (ev, time);
+      do {
+         node.next = injected.get();
+      } while (!injected.compareAndSet (node.next, node));
+   }
+
+
+   // Adds the injected events to the event list, the first injected first
+   private void addInjected() {
+      Injected node = injected.getAndSet (null);
+      Injected first = null;
+      while (node != null) {
+         Injected next = node.next;
+         node.next = first;
+         first = node;
+         node = next;
+      }
+      for (; first != null; first = first.next) {
+         if (first.event.eventTime >= 0.0)
+            first.event.cancel();   // an event is in the list once
+         first.event.eventTime = Math.max (first.time, currentTime);
+         eventList.add (first.event);
+      }
+   }
+
+   private static final class Injected {
+      final Event event;
+      final double time;
+      Injected next;
+
+      Injected (Event event, double time) {
+         this.event = event;
+         this.time = time;
+      }
+   }
+
+
    /**
     * Tells the simulation executive to stop as soon as it takes control,
     *    and to return control to the program that called {@link #start start}.
@@ -0,0 +1,425 @@
+
+
+/*
+ * Class:        BinaryHeap
+ * Description:  implementation of class EventList using a binary heap
+                 stored in an array
+ * Environment:  Java
+ * Software:     SSJ
+ * Copyright (C) 2001  Pierre L'Ecuyer and Universite de Montreal
+ * Organization: DIRO, Universite de Montreal
+ * @author
+ * @since
+
+ * SSJ is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License (GPL) as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * any later version.
+
+ * SSJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * A copy of the GNU General Public License is available at
+   <a href="http://www.gnu.org/licenses">GPL licence site</a>.
+ */
+
+package umontreal.iro.lecuyer.simevents.eventlist;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import umontreal.iro.lecuyer.util.PrintfFormat;
+import umontreal.iro.lecuyer.simevents.Event;
+
+
+/**
+ * An implementation of {@link EventList} using a binary heap stored in
+ * arrays. No object is created when an event is added or removed, once the
+ * arrays are large enough, and each event keeps its position in the heap
+ * (with {@link Event#setRa setRa}), so {@link #remove remove}, hence
+ * {@link Event#cancel cancel} and {@link Event#reschedule reschedule},
+ * take a logarithmic time without searching the event.
+ *
+ * <P>
+ * The heap does not keep the order in which events were added, so each
+ * event gets a sequence number, which orders the events of the same time
+ * and priority. {@link #addBefore addBefore} and {@link #addAfter addAfter}
+ * give the new event a number between those of <TT>other</TT> and its
+ * neighbour, so they look at every event up to the time of <TT>other</TT>.
+ *
+ * <P>
+ * The iterator works on a copy of the order of the events, taken when it is
+ * created; it supports {@link ListIterator#remove remove}, but not
+ * {@link ListIterator#add add} nor {@link ListIterator#set set}.
+ *
+ */
+public class BinaryHeap implements EventList  {
+   /*
+     The heap is in heap[0..size-1], the children of i being 2i+1 and 2i+2,
+     with the time and the sequence number of each event in times[] and
+     seqs[] at the same index. An event in the heap has getRa() == index + 1.
+     Sequence numbers are STEP apart, leaving room for addBefore and addAfter;
+     they are only compared between events of the same time and priority.
+   */
+
+   private static final int INIT_CAPACITY = 256;
+   private static final long STEP = 1L << 20;
+
+   private Event[] heap = new Event[INIT_CAPACITY];
+   private double[] times = new double[INIT_CAPACITY];
+   private long[] seqs = new long[INIT_CAPACITY];
+   private int size = 0;
+
+   private long nextSeq = 0;    // for add
+   private long firstSeq = 0;   // for addFirst, below any other
+   private int modCount = 0;
+
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   public void clear() {
+      for (int i = 0; i < size; i++) {
+         heap[i].setRa (0);
+         heap[i] = null;
+      }
+      size = 0;
+      nextSeq = firstSeq = 0;
+      modCount++;
+   }
+
+
+   public void add (Event ev) {
+      nextSeq += STEP;
+      insert (ev, nextSeq);
+   }
+
+   public void addFirst (Event ev) {
+      firstSeq -= STEP;
+      insert (ev, firstSeq);
+   }
+
+   public void addBefore (Event ev, Event other) {
+      int i = indexOf (other);
+      if (i < 0)
+         throw new IllegalArgumentException ("Event not in list.");
+      int[] group = group (i);
+      long s = seqs[i];
+      long p = firstSeq - STEP;
+      for (int j : group)
+         if (seqs[j] < s && seqs[j] > p)
+            p = seqs[j];
+      if (s - p < 2) {
+         renumber (group);
+         addBefore (ev, other);
+         return;
+      }
+      insert (ev, p + (s - p) / 2);
+   }
+
+   public void addAfter (Event ev, Event other) {
+      int i = indexOf (other);
+      if (i < 0)
+         throw new IllegalArgumentException ("Event not in list.");
+      int[] group = group (i);
+      long s = seqs[i];
+      long n = nextSeq + STEP;
+      for (int j : group)
+         if (seqs[j] > s && seqs[j] < n)
+            n = seqs[j];
+      if (n - s < 2) {
+         renumber (group);
+         addAfter (ev, other);
+         return;
+      }
+      insert (ev, s + (n - s) / 2);
+   }
+
+
+   public Event getFirst() {
+      return size == 0 ? null : heap[0];
+   }
+
+   public Event getFirstOfClass (String cl) {
+      int first = -1;
+      for (int i = 0; i < size; i++)
+         if (heap[i].getClass().getName().equals (cl) && (first < 0 || less (i, first)))
+            first = i;
+      return first < 0 ? null : heap[first];
+   }
+
+   @SuppressWarnings("unchecked")
+   public <E extends Event> E getFirstOfClass (Class<E> cl) {
+      int first = -1;
+      for (int i = 0; i < size; i++)
+         if (heap[i].getClass() == cl && (first < 0 || less (i, first)))
+            first = i;
+      return first < 0 ? null : (E)heap[first];
+   }
+
+   public Iterator<Event> iterator() {
+      return listIterator();
+   }
+
+   public ListIterator<Event> listIterator() {
+      return new BHItr();
+   }
+
+   public boolean remove (Event ev) {
+      int i = indexOf (ev);
+      if (i < 0)
+         return false;
+      removeAt (i);
+      return true;
+   }
+
+   public Event removeFirst() {
+      if (size == 0)
+         return null;
+      Event ev = heap[0];
+      removeAt (0);
+      return ev;
+   }
+
+
+   public String toString() {
+      StringBuffer sb = new StringBuffer
+                        ("Contents of the event list BinaryHeap:");
+      for (Event ev : ordered())
+         sb.append (PrintfFormat.NEWLINE +
+                    PrintfFormat.g (12, 7, ev.time()) + ", " +
+                    PrintfFormat.g (8, 4, ev.priority()) + " : " +
+                    ev.toString());
+      return sb.toString();
+   }
+
+
+   private class BHItr implements ListIterator<Event> {
+      private Event[] events;
+      private int next;
+      private Event lastRet;
+      private int expectedModCount;
+
+      private BHItr() {
+         events = ordered();
+         next = 0;
+         lastRet = null;
+         expectedModCount = modCount;
+      }
+
+      public void add (Event ev) {
+         throw new UnsupportedOperationException();
+      }
+
+      public boolean hasNext() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         return next < events.length && events[next] != null;
+      }
+
+      public boolean hasPrevious() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         return next > 0;
+      }
+
+      public Event next() {
+         if (!hasNext())
+            throw new NoSuchElementException();
+         lastRet = events[next++];
+         return lastRet;
+      }
+
+      public int nextIndex() {
+         if (!hasNext())
+            throw new NoSuchElementException();
+         return next;
+      }
+
+      public Event previous() {
+         if (!hasPrevious())
+            throw new NoSuchElementException();
+         lastRet = events[--next];
+         return lastRet;
+      }
+
+      public int previousIndex() {
+         if (!hasPrevious())
+            throw new NoSuchElementException();
+         return next - 1;
+      }
+
+      public void remove() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         if (lastRet == null)
+            throw new IllegalStateException();
+
+         int i = next;
+         if (i < events.length && events[i] == lastRet)   // last call was to previous
+            i++;
+         else
+            next--;
+         System.arraycopy (events, i, events, i - 1, events.length - i);
+         events[events.length - 1] = null;
+
+         BinaryHeap.this.remove (lastRet);
+         lastRet = null;
+         expectedModCount++;
+      }
+
+      public void set (Event ev) {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+
+   private int indexOf (Event ev) {
+      int i = ev.getRa() - 1;
+      return (i >= 0 && i < size && heap[i] == ev) ? i : -1;
+   }
+
+   private void insert (Event ev, long seq) {
+      if (size == heap.length) {
+         heap = Arrays.copyOf (heap, 2 * size);
+         times = Arrays.copyOf (times, 2 * size);
+         seqs = Arrays.copyOf (seqs, 2 * size);
+      }
+      siftUp (size++, ev, ev.time(), seq);
+      modCount++;
+   }
+
+   private void removeAt (int i) {
+      Event ev = heap[i];
+      ev.setRa (0);
+      int last = --size;
+      Event moved = heap[last];
+      double t = times[last];
+      long s = seqs[last];
+      heap[last] = null;
+      if (i != last) {
+         siftDown (i, moved, t, s);
+         if (heap[i] == moved)
+            siftUp (i, moved, t, s);
+      }
+      modCount++;
+   }
+
+   // The indices of the events of the same time and priority as heap[i], found
+   // from the root without going below the later events
+   private int[] group (int i) {
+      int[] stack = new int[16];
+      int[] group = new int[16];
+      int top = 0, n = 0;
+      stack[top++] = 0;
+      while (top > 0) {
+         int j = stack[--top];
+         if (times[j] > times[i] || (times[j] == times[i] && heap[j].priority() > heap[i].priority()))
+            continue;
+         if (times[j] == times[i] && heap[j].priority() == heap[i].priority()) {
+            if (n == group.length)
+               group = Arrays.copyOf (group, 2 * n);
+            group[n++] = j;
+         }
+         if (top + 2 > stack.length)
+            stack = Arrays.copyOf (stack, 2 * stack.length);
+         if (2 * j + 1 < size)
+            stack[top++] = 2 * j + 1;
+         if (2 * j + 2 < size)
+            stack[top++] = 2 * j + 2;
+      }
+      return Arrays.copyOf (group, n);
+   }
+
+   // Spaces the sequence numbers of a group STEP apart, in the same order;
+   // as they are only compared inside the group, the heap stays ordered
+   private void renumber (int[] group) {
+      Integer[] order = new Integer[group.length];
+      for (int k = 0; k < group.length; k++)
+         order[k] = group[k];
+      Arrays.sort (order, new Comparator<Integer>() {
+         public int compare (Integer i, Integer j) {
+            return Long.compare (seqs[i], seqs[j]);
+         }
+      });
+      long base = seqs[order[0]];
+      for (int k = 0; k < order.length; k++)
+         seqs[order[k]] = base + k * STEP;
+      nextSeq = Math.max (nextSeq, base + order.length * STEP);
+   }
+
+   // Puts ev at the hole i, or above it
+   private void siftUp (int i, Event ev, double t, long s) {
+      while (i > 0) {
+         int parent = (i - 1) >>> 1;
+         if (!before (ev, t, s, parent))
+            break;
+         place (i, heap[parent], times[parent], seqs[parent]);
+         i = parent;
+      }
+      place (i, ev, t, s);
+   }
+
+   // Puts ev at the hole i, or below it
+   private void siftDown (int i, Event ev, double t, long s) {
+      int half = size >>> 1;
+      while (i < half) {
+         int child = 2 * i + 1;
+         int right = child + 1;
+         if (right < size && less (right, child))
+            child = right;
+         if (!before (heap[child], times[child], seqs[child], ev, t, s))
+            break;
+         place (i, heap[child], times[child], seqs[child]);
+         i = child;
+      }
+      place (i, ev, t, s);
+   }
+
+   private void place (int i, Event ev, double t, long s) {
+      heap[i] = ev;
+      times[i] = t;
+      seqs[i] = s;
+      ev.setRa (i + 1);
+   }
+
+   private boolean less (int i, int j) {
+      return before (heap[i], times[i], seqs[i], j);
+   }
+
+   private boolean before (Event ev, double t, long s, int j) {
+      return before (ev, t, s, heap[j], times[j], seqs[j]);
+   }
+
+   // true if the first event comes before the second one
+   private static boolean before (Event ev, double t, long s, Event other, double u, long r) {
+      if (t != u)
+         return t < u;
+      if (ev.priority() != other.priority())
+         return ev.priority() < other.priority();
+      return s < r;
+   }
+
+   // The events in the order of the list
+   private Event[] ordered() {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++)
+         order[i] = i;
+      Arrays.sort (order, new Comparator<Integer>() {
+         public int compare (Integer i, Integer j) {
+            return less (i, j) ? -1 : (less (j, i) ? 1 : 0);
+         }
+      });
+      Event[] events = new Event[size];
+      for (int i = 0; i < size; i++)
+         events[i] = heap[order[i]];
+      return events;
+   }
+
+}
@@ -0,0 +1,531 @@
+
+
+/*
+ * Class:        CalendarQueue
+ * Description:  implementation of class EventList using the calendar queue
+                 of Brown, resized as the number of events changes
+ * Environment:  Java
+ * Software:     SSJ
+ * Copyright (C) 2001  Pierre L'Ecuyer and Universite de Montreal
+ * Organization: DIRO, Universite de Montreal
+ * @author
+ * @since
+
+ * SSJ is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License (GPL) as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * any later version.
+
+ * SSJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * A copy of the GNU General Public License is available at
+   <a href="http://www.gnu.org/licenses">GPL licence site</a>.
+ */
+
+package umontreal.iro.lecuyer.simevents.eventlist;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import umontreal.iro.lecuyer.util.PrintfFormat;
+import umontreal.iro.lecuyer.simevents.Event;
+
+
+/**
+ * An implementation of {@link EventList} using the calendar queue of Brown
+ * (R. Brown, <EM>Calendar Queues: A Fast O(1) Priority Queue Implementation
+ * for the Simulation Event Set Problem</EM>, Communications of the ACM, 1988).
+ *
+ * <P>
+ * Events are stored in an array of buckets, the days of a year: the day of an
+ * event is its time divided by the width of a day, modulo the number of days.
+ * Each bucket is a doubly-linked list sorted like the event list. The next
+ * event is found by walking the days from the last event removed, so adding
+ * and removing an event take a constant expected time, whatever the number
+ * of events, as long as about one event falls on each day.
+ * The number of days doubles when there are twice as many events as days and
+ * halves when there are half as many, and the width of a day is then estimated
+ * again from the first events of the list. The width is also estimated again
+ * when removing events goes through too many empty days, or adding them through
+ * too many events of the same day, as when the delays change distribution.
+ *
+ * <P>
+ * The iterator works on a copy of the order of the events, taken when it is
+ * created; it supports {@link ListIterator#remove remove}, but not
+ * {@link ListIterator#add add} nor {@link ListIterator#set set}.
+ *
+ */
+public class CalendarQueue implements EventList  {
+   /*
+     Each event is kept in an Entry holding its time and its virtual day,
+     (long)(time / width): the days are numbered without wrapping, and an event
+     is in the bucket (day & mask). The last event removed (or found by
+     getFirst) gives the current day; no event is earlier. removeFirst looks at
+     the first entry of each bucket from the current day on: the first entry
+     whose day is the day looked at is the next event. After a year without
+     one, the first entries of all the buckets are compared (direct search).
+     Events of the same time always share a bucket, so the order of the events
+     of the same time and priority is the order of the list of that bucket.
+   */
+
+   private static final int MIN_BUCKETS = 2;
+   private static final int SAMPLE = 25;   // events used to estimate the width of a day
+   private static final int MIN_WINDOW = 64;  // operations between two checks of the width
+
+   private Entry[] heads;
+   private Entry[] tails;
+   private int mask;
+   private double width = 1.0;
+   private double inverse = 1.0;
+   private int size = 0;
+   private int modCount = 0;
+
+   // The current day and its bucket
+   private long lastDay = 0;
+   private int lastBucket = 0;
+
+   // Days or entries walked, and operations done, since the last check of the width
+   private long cost = 0;
+   private int ops = 0;
+
+   private Entry[] sample = new Entry[SAMPLE];
+
+
+   public CalendarQueue() {
+      allocate (MIN_BUCKETS);
+   }
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   public void clear() {
+      allocate (MIN_BUCKETS);
+      width = inverse = 1.0;
+      size = 0;
+      lastDay = 0;
+      lastBucket = 0;
+      cost = ops = 0;
+      modCount++;
+   }
+
+
+   public void add (Event ev) {
+      insert (new Entry (ev, ev.time()));
+      size++;
+      modCount++;
+      if (size > 2 * heads.length)
+         resize (2 * heads.length);
+      else
+         check();
+   }
+
+   public void addFirst (Event ev) {
+      Entry e = new Entry (ev, ev.time());
+      e.day = day (e.time);
+      setCurrent (e.day);
+      int i = (int)(e.day & mask);
+      link (i, null, e);
+      size++;
+      modCount++;
+      if (size > 2 * heads.length)
+         resize (2 * heads.length);
+   }
+
+   public void addBefore (Event ev, Event other) {
+      Entry otherEntry = findEntry (other);
+      if (otherEntry == null)
+         throw new IllegalArgumentException ("Event not in list.");
+      Entry e = new Entry (ev, otherEntry.time);
+      e.day = otherEntry.day;
+      link ((int)(e.day & mask), otherEntry.left, e);
+      size++;
+      modCount++;
+      if (size > 2 * heads.length)
+         resize (2 * heads.length);
+   }
+
+   public void addAfter (Event ev, Event other) {
+      Entry otherEntry = findEntry (other);
+      if (otherEntry == null)
+         throw new IllegalArgumentException ("Event not in list.");
+      Entry e = new Entry (ev, otherEntry.time);
+      e.day = otherEntry.day;
+      link ((int)(e.day & mask), otherEntry, e);
+      size++;
+      modCount++;
+      if (size > 2 * heads.length)
+         resize (2 * heads.length);
+   }
+
+
+   public Event getFirst() {
+      Entry e = findFirst();
+      return e == null ? null : e.event;
+   }
+
+   public Event getFirstOfClass (String cl) {
+      Entry first = null;
+      for (Entry h : heads)
+         for (Entry e = h; e != null; e = e.right)
+            if (e.event.getClass().getName().equals (cl)) {
+               if (first == null || e.event.compareTo (first.event) < 0)
+                  first = e;
+               break;
+            }
+      return first == null ? null : first.event;
+   }
+
+   @SuppressWarnings("unchecked")
+   public <E extends Event> E getFirstOfClass (Class<E> cl) {
+      Entry first = null;
+      for (Entry h : heads)
+         for (Entry e = h; e != null; e = e.right)
+            if (e.event.getClass() == cl) {
+               if (first == null || e.event.compareTo (first.event) < 0)
+                  first = e;
+               break;
+            }
+      return first == null ? null : (E)first.event;
+   }
+
+   public Iterator<Event> iterator() {
+      return listIterator();
+   }
+
+   public ListIterator<Event> listIterator() {
+      return new CQItr();
+   }
+
+   public boolean remove (Event ev) {
+      Entry e = findEntry (ev);
+      if (e == null)
+         return false;
+      unlink (e);
+      removed();
+      return true;
+   }
+
+   public Event removeFirst() {
+      Entry e = findFirst();
+      if (e == null)
+         return null;
+      unlink (e);
+      Event ev = e.event;
+      e.event = null;
+      removed();
+      return ev;
+   }
+
+
+   public String toString() {
+      StringBuffer sb = new StringBuffer
+                        ("Contents of the event list CalendarQueue:");
+      for (Entry e : ordered())
+         sb.append (PrintfFormat.NEWLINE +
+                    PrintfFormat.g (12, 7, e.event.time()) + ", " +
+                    PrintfFormat.g (8, 4, e.event.priority()) + " : " +
+                    e.event.toString());
+      return sb.toString();
+   }
+
+
+   private static class Entry {
+      public Event event;
+      public Entry left;
+      public Entry right;
+      public double time;
+      public long day;
+
+      Entry (Event event, double time) {
+         this.event = event;
+         this.time = time;
+      }
+
+      public String toString() {
+         return "[" + event + " |" + time + "|]";
+      }
+   }
+
+
+   private class CQItr implements ListIterator<Event> {
+      private Entry[] entries;
+      private int next;
+      private Entry lastRet;
+      private int expectedModCount;
+
+      private CQItr() {
+         entries = ordered();
+         next = 0;
+         lastRet = null;
+         expectedModCount = modCount;
+      }
+
+      public void add (Event ev) {
+         throw new UnsupportedOperationException();
+      }
+
+      public boolean hasNext() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         return next < entries.length && entries[next] != null;
+      }
+
+      public boolean hasPrevious() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         return next > 0;
+      }
+
+      public Event next() {
+         if (!hasNext())
+            throw new NoSuchElementException();
+         lastRet = entries[next++];
+         return lastRet.event;
+      }
+
+      public int nextIndex() {
+         if (!hasNext())
+            throw new NoSuchElementException();
+         return next;
+      }
+
+      public Event previous() {
+         if (!hasPrevious())
+            throw new NoSuchElementException();
+         lastRet = entries[--next];
+         return lastRet.event;
+      }
+
+      public int previousIndex() {
+         if (!hasPrevious())
+            throw new NoSuchElementException();
+         return next - 1;
+      }
+
+      public void remove() {
+         if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+         if (lastRet == null)
+            throw new IllegalStateException();
+
+         int i = next;
+         if (i < entries.length && entries[i] == lastRet)   // last call was to previous
+            i++;
+         else
+            next--;
+         System.arraycopy (entries, i, entries, i - 1, entries.length - i);
+         entries[entries.length - 1] = null;
+
+         // no resize here, which would change the order of the copy
+         unlink (lastRet);
+         size--;
+         lastRet = null;
+         modCount++;
+         expectedModCount++;
+      }
+
+      public void set (Event ev) {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+
+   private void allocate (int nbuckets) {
+      heads = new Entry[nbuckets];
+      tails = new Entry[nbuckets];
+      mask = nbuckets - 1;
+   }
+
+   private long day (double time) {
+      return (long)(time * inverse);
+   }
+
+   private void setCurrent (long day) {
+      if (day < lastDay) {
+         lastDay = day;
+         lastBucket = (int)(day & mask);
+      }
+   }
+
+   // Inserts e in its bucket after the events it does not precede
+   private void insert (Entry e) {
+      e.day = day (e.time);
+      setCurrent (e.day);
+      int i = (int)(e.day & mask);
+      Entry p = tails[i];
+      while (p != null && e.event.compareTo (p.event) < 0) {
+         p = p.left;
+         cost++;
+      }
+      link (i, p, e);
+   }
+
+   // Links e in bucket i after p, or first if p is null
+   private void link (int i, Entry p, Entry e) {
+      e.left = p;
+      if (p == null) {
+         e.right = heads[i];
+         heads[i] = e;
+      }
+      else {
+         e.right = p.right;
+         p.right = e;
+      }
+      if (e.right == null)
+         tails[i] = e;
+      else
+         e.right.left = e;
+   }
+
+   private void unlink (Entry e) {
+      int i = (int)(e.day & mask);
+      if (e.left == null)
+         heads[i] = e.right;
+      else
+         e.left.right = e.right;
+      if (e.right == null)
+         tails[i] = e.left;
+      else
+         e.right.left = e.left;
+      e.left = e.right = null;
+   }
+
+   private Entry findEntry (Event ev) {
+      for (Entry e = heads[(int)(day (ev.time()) & mask)]; e != null; e = e.right)
+         if (e.event == ev)
+            return e;
+      return null;
+   }
+
+   // The first entry, which becomes the current day
+   private Entry findFirst() {
+      if (size == 0)
+         return null;
+      int i = lastBucket;
+      long day = lastDay;
+      for (int n = 0; n <= mask; n++) {
+         Entry h = heads[i];
+         if (h != null && h.day <= day) {
+            cost += n;
+            lastBucket = i;
+            lastDay = h.day;
+            return h;
+         }
+         i = (i + 1) & mask;
+         day++;
+      }
+      cost += heads.length;
+
+      // direct search
+      Entry first = null;
+      for (Entry h : heads)
+         if (h != null && (first == null || h.event.compareTo (first.event) < 0))
+            first = h;
+      cost += heads.length;
+      lastDay = first.day;
+      lastBucket = (int)(first.day & mask);
+      return first;
+   }
+
+   private void removed() {
+      size--;
+      modCount++;
+      if (size < heads.length / 2 && heads.length > MIN_BUCKETS)
+         resize (heads.length / 2);
+      else
+         check();
+   }
+
+   // Estimates the width again if the operations since the last check cost too much
+   private void check() {
+      if (++ops < Math.max (MIN_WINDOW, heads.length))
+         return;
+      if (cost > 3L * ops)
+         resize (heads.length);
+      cost = ops = 0;
+   }
+
+   /*
+     Takes out the first events to estimate the width of a day, as Brown:
+     three times their mean separation, leaving out the separations larger
+     than twice the mean. When they all have the same time (e.g., integer
+     delays), three times the mean separation of all the events instead.
+     Then puts all the entries in nbuckets new buckets, bucket after bucket,
+     so the events of the same time keep their order.
+   */
+   private void resize (int nbuckets) {
+      int k = Math.min (size, SAMPLE);
+      for (int j = 0; j < k; j++) {
+         sample[j] = findFirst();
+         unlink (sample[j]);
+      }
+      if (k > 1) {
+         double mean = (sample[k-1].time - sample[0].time) / (k - 1);
+         double sum = 0.0;
+         int n = 0;
+         for (int j = 1; j < k; j++) {
+            double sep = sample[j].time - sample[j-1].time;
+            if (sep <= 2.0 * mean) {
+               sum += sep;
+               n++;
+            }
+         }
+         double w = (n > 0) ? 3.0 * sum / n : 0.0;
+         if (w <= 0.0) {
+            double last = sample[k-1].time;
+            for (Entry h : heads)
+               for (Entry e = h; e != null; e = e.right)
+                  last = Math.max (last, e.time);
+            w = 3.0 * (last - sample[0].time) / size;
+         }
+         if (w > 0.0 && !Double.isInfinite (1.0 / w)) {
+            width = w;
+            inverse = 1.0 / w;
+         }
+      }
+
+      Entry[] old = heads;
+      allocate (nbuckets);
+      lastDay = Long.MAX_VALUE;
+      lastBucket = 0;
+      for (int j = 0; j < k; j++) {
+         insert (sample[j]);
+         sample[j] = null;
+      }
+      for (Entry h : old) {
+         Entry e = h;
+         while (e != null) {
+            Entry next = e.right;
+            insert (e);
+            e = next;
+         }
+      }
+      if (size == 0)
+         lastDay = 0;
+      cost = ops = 0;
+   }
+
+   // The entries in the order of the list
+   private Entry[] ordered() {
+      Entry[] entries = new Entry[size];
+      int n = 0;
+      for (Entry h : heads)
+         for (Entry e = h; e != null; e = e.right)
+            entries[n++] = e;
+      // stable: the events of the same time and priority stay in the order of their bucket
+      Arrays.sort (entries, 0, n, new Comparator<Entry>() {
+         public int compare (Entry e1, Entry e2) {
+            return e1.event.compareTo (e2.event);
+         }
+      });
+      return entries;
+   }
+
+}
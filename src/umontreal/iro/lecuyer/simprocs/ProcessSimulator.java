@@ -123,6 +123,16 @@ public abstract class ProcessSimulator extends Simulator  {
    public abstract void killAll();
 
 
+   /**
+    * Releases what this simulator keeps for its processes, e.g., their threads,
+    *   once the simulation is over and the simulator will not be used again.
+    *   This default implementation does nothing.
+    * 
+    */
+   public void dispose()  {
+   }
+
+
    /**
     * Initializes the default simulator to use processes.
     *     If the field <TT>Simulator.defaultSimulator</TT> is already initialized to a class
@@ -176,6 +186,8 @@ public abstract class ProcessSimulator extends Simulator  {
     *   {@link ThreadProcessSimulator}.
     *   Otherwise, if the <TT>ssj.withDSOL</TT> system property is set, this
     *   returns a {@link DSOLProcessSimulator} instance.
+    *   Otherwise, if the <TT>ssj.withVirtual</TT> system property is set, this
+    *   returns a {@link VirtualProcessSimulator} instance.
     *   If no system property is set, this returns a {@link ThreadProcessSimulator}.
     * 
     * <P>
@@ -198,6 +210,8 @@ public abstract class ProcessSimulator extends Simulator  {
          return new ThreadProcessSimulator();
       else if (System.getProperty("ssj.withDSOL") != null)
          return new DSOLProcessSimulator();
+      else if (System.getProperty("ssj.withVirtual") != null)
+         return new VirtualProcessSimulator();
       else
          return new ThreadProcessSimulator();
    }
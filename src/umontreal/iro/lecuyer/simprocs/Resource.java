@@ -27,6 +27,8 @@
 
 package umontreal.iro.lecuyer.simprocs;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ListIterator;
 
 import javax.swing.text.Utilities;
@@ -34,6 +36,7 @@ import javax.swing.text.Utilities;
 import mcgill.Util;
 import umontreal.iro.lecuyer.util.PrintfFormat;
 // import umontreal.iro.lecuyer.simevents.Simulator;
+import umontreal.iro.lecuyer.simevents.Event;
 import umontreal.iro.lecuyer.simevents.LinkedListStat;
 import umontreal.iro.lecuyer.simevents.Sim;
 import umontreal.iro.lecuyer.simevents.Accumulate;
@@ -84,6 +87,13 @@ public class Resource  {
    
    private static final int REAL = 1;
    private static final int DUMMY = 2;
+
+   /**
+    * Returned by a request whose record was withdrawn from the queue by
+    *    {@link #withdrawWaiting withdrawWaiting} before it got its units; test it with
+    *    {@link Double#isNaN Double.isNaN}.
+    */
+   public static final double WITHDRAWN = Double.NaN;
    
    private int remoteCount = 0;
 
@@ -97,6 +107,9 @@ public class Resource  {
         private LinkedListStat<UserRecord> serviceList;
         private LinkedListStat<UserRecord> waitingList;
         private LinkedListStat<UserRecord> remoteWaitingList;
+        // Number of queued records of each task id, so the two queues are matched without scanning
+        private Util.LongIntMap localIndex = new Util.LongIntMap();
+        private Util.LongIntMap remoteIndex = new Util.LongIntMap();
 
         private boolean    stats = false;
         private double     initStatTime;
@@ -306,6 +319,8 @@ public class Resource  {
       serviceList.clear();
       waitingList.clear();
       remoteWaitingList.clear();
+      localIndex.clear();
+      remoteIndex.clear();
 //      for (int i = 0; i < save.getSize(); i++){
 //    	  save.clear(i);
 //      }
@@ -471,56 +486,104 @@ public class Resource  {
    }
    
    public double request (int n, double servTime)  {
-	   if (capacity == 0){
-		   return 12000.0;
-	   }
-	   else {
-	       SimProcess p = sim.currentProcess();
-	       UserRecord record = new UserRecord (n, p, sim.time(), servTime);
-	       if (n <= available) {
-	           // The process gets the resource right away.
-	           available -= n;
-	           serviceList.addLast (record);
-	           if (stats) {
-	              waitingList.statSojourn().add (0.0);
-	              statUtil.update (capacity - available);
-	           }
-	       }
-	       else {
-	           // Not enough units of the resource are available.
-	           // The process joins the queue waitingList;
-	           switch (policy) {
-	               case FIFO : waitingList.addLast (record); waitTime += servTime; break;
-	               case LIFO : waitingList.addFirst (record); waitTime += servTime; break;
-	               default   : throw new IllegalStateException(
-	                                               "policy must be FIFO or LIFO");
-	           }
-	           p.suspend();
-	       }
-	       	return 0.0;
-	   }
+       SimProcess p = sim.currentProcess();
+       UserRecord record = new UserRecord (n, p, sim.time(), servTime);
+       if (!enter (record)) {
+    	   p.suspend();
+    	   if (record.withdrawn)
+    		   return WITHDRAWN;
+       }
+       return 0.0;
   }
+
+   /**
+    * Requests <TT>n</TT> units of this resource without a process, as
+    *   {@link #request(int,double) request(n, servTime)} does for the executing process.
+    *   If the units are available they are taken right away and <TT>true</TT> is returned;
+    *   otherwise the request joins the waiting queue, <TT>false</TT> is returned and
+    *   <TT>grant</TT> is scheduled once the units are taken for it. The units
+    *   are given back with {@link #release(int,Event) release(n, grant)}.
+    * 
+    * @param n number of required units
+    * 
+    *    @param servTime service time of the request
+    * 
+    *    @param grant event scheduled when the request leaves the queue
+    * 
+    *    @return <TT>true</TT> if the units were taken right away
+    * 
+    */
+   public boolean request (int n, double servTime, Event grant)  {
+       UserRecord record = new UserRecord (n, null, sim.time(), servTime);
+       record.grant = grant;
+       return enter (record);
+   }
+
+   // Gives the units to the record right away, or puts it in waitingList; false when it waits
+   private boolean enter (UserRecord record) {
+       if (record.numUnits <= available) {
+           // The process gets the resource right away.
+           available -= record.numUnits;
+           serviceList.addLast (record);
+           if (stats) {
+              waitingList.statSojourn().add (0.0);
+              statUtil.update (capacity - available);
+           }
+           return true;
+       }
+       // Not enough units of the resource are available.
+       // The process joins the queue waitingList;
+       switch (policy) {
+           case FIFO : waitingList.addLast (record); waitTime += record.execTime; break;
+           case LIFO : waitingList.addFirst (record); waitTime += record.execTime; break;
+           default   : throw new IllegalStateException(
+                                           "policy must be FIFO or LIFO");
+       }
+       return false;
+   }
    
-   public double request (int n, int queue, int classifier, String id, double executionTime, double arrTime) {
-      if (capacity == 0){
-    	  return 12000.0;
-      }
-      else {
-		   SimProcess p = sim.currentProcess();
-	       UserRecord record = new UserRecord (n, p, sim.time(), id, classifier, executionTime, arrTime);
+   public double request (int n, int queue, int classifier, long id, double executionTime, double arrTime) {
+	   SimProcess p = sim.currentProcess();
+	   UserRecord record = new UserRecord (n, p, sim.time(), id, classifier, executionTime, arrTime);
+       if (!enter (record, queue)) {
+    	   p.suspend();
+    	   if (record.withdrawn)
+    		   return WITHDRAWN;
+       }
+       return 0;
+  }
+
+   /**
+    * Requests <TT>n</TT> units of this resource in the local or remote queue without a process, as
+    *   {@link #request(int,int,int,long,double,double) request(n, queue, classifier, id, executionTime, arrTime)}
+    *   does for the executing process. Returns <TT>false</TT> if the request waits in its queue, in which
+    *   case <TT>grant</TT> is scheduled once the units are taken for it; a waiting <TT>DUMMY</TT> request
+    *   is dropped from the queue without its event being scheduled, as its process is never resumed.
+    * 
+    *    @param grant event scheduled when the request leaves the queue
+    * 
+    *    @return <TT>false</TT> if the request waits in a queue
+    * 
+    */
+   public boolean request (int n, int queue, int classifier, long id, double executionTime, double arrTime, Event grant) {
+       UserRecord record = new UserRecord (n, null, sim.time(), id, classifier, executionTime, arrTime);
+       record.grant = grant;
+       return enter (record, queue);
+   }
+
+   // Takes the units for a REAL record or queues it in its LOCAL or REMOTE queue; false when it waits
+   private boolean enter (UserRecord record, int queue) {
+	       int n = record.numUnits, classifier = record.classifier;
+	       long id = record.id;
+	       double executionTime = record.execTime, arrTime = record.arTime;
 	       if (classifier == REAL){
 	    	   double time = 0;
 		       if (n <= available) {
 		    	   if (save.contain(record.id)){
-		    		   for(int i=0; i < save.getSize(); i++){
-	    				   if (id.equals(save.getID(i))){
-	    					   if (save.getReal(i) == 0) 
-	    						   save.setReal(i, Sim.time() + executionTime -arrTime);
-		    			   }
-	    			   }
+		    		   save.setRealIfUnset(id, sim.time() + executionTime -arrTime);
 		    	   }
 		    	   else{ 
-	    			   time = Sim.time() + executionTime - arrTime;
+	    			   time = sim.time() + executionTime - arrTime;
 					   save.update(id, time, 0);
 	    		   }
 		    	   
@@ -539,41 +602,36 @@ public class Resource  {
 	               case FIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addLast (record); 
+	            	   		waitingList.addLast (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addLast(record); 
+	               			remoteWaitingList.addLast(record); count(remoteIndex, record.id, 1);
 	               		}
 	               break;
 	               case LIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addFirst (record); 
+	            	   		waitingList.addFirst (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addFirst(record); 
+	               			remoteWaitingList.addFirst(record); count(remoteIndex, record.id, 1);
 	               		}
 
 	               default   : throw new IllegalStateException(
 	                                               "policy must be FIFO or LIFO");
 	           }
-	           p.suspend();
+	           return false;
 		       }
 	       }
 	       if (classifier == DUMMY){
 	    	   if (n < available){
 	    		   if (save.contain(record.id)){
-	    			   for(int i=0; i < save.getSize(); i++){
-	    				   if (id.equals(save.getID(i))){
-	    					   if (save.getDummy(i) == 0) // If that val is 0, update otherwise leave it
-	    						   save.setDummy(i, Sim.time() + executionTime -arrTime);
-		    			   }
-	    			   }
+	    			   save.setDummyIfUnset(id, sim.time() + executionTime -arrTime); // If that val is 0, update otherwise leave it
 	    		   }
 	    		   else{
-	    			   save.update(record.id, 0, Sim.time() + executionTime - arrTime);
+	    			   save.update(record.id, 0, sim.time() + executionTime - arrTime);
 	    		   }
 	    	   }
 	    	   else{
@@ -583,31 +641,30 @@ public class Resource  {
 	               case FIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addLast (record); 
+	            	   		waitingList.addLast (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addLast(record); 
+	               			remoteWaitingList.addLast(record); count(remoteIndex, record.id, 1);
 	               		}
 	               break;
 	               case LIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addFirst (record); 
+	            	   		waitingList.addFirst (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addFirst(record); 
+	               			remoteWaitingList.addFirst(record); count(remoteIndex, record.id, 1);
 	               		}
 	//            	   waitingList.addFirst (record); break;
 	               default   : throw new IllegalStateException(
 	                                               "policy must be FIFO or LIFO");
 	           }
-	           p.suspend();
+	           return false;
 	    	   }
 	       }
-	       return 0;
-      }
+	       return true;
   }
    
    public void request(int n, int queue)  {
@@ -632,21 +689,21 @@ public class Resource  {
                case FIFO : 
             	   if (queue == LOCAL) 
             	   {
-            	   		waitingList.addLast (record); 
+            	   		waitingList.addLast (record); count(localIndex, record.id, 1);
             	   }
                	else if (queue == REMOTE)
                		{
-               			remoteWaitingList.addLast(record); 
+               			remoteWaitingList.addLast(record); count(remoteIndex, record.id, 1);
                		}
                break;
                case LIFO : 
             	   if (queue == LOCAL) 
             	   {
-            	   		waitingList.addFirst (record); 
+            	   		waitingList.addFirst (record); count(localIndex, record.id, 1);
             	   }
                	else if (queue == REMOTE)
                		{
-               			remoteWaitingList.addFirst(record); 
+               			remoteWaitingList.addFirst(record); count(remoteIndex, record.id, 1);
                		}
 //            	   waitingList.addFirst (record); break;
                default   : throw new IllegalStateException(
@@ -656,7 +713,7 @@ public class Resource  {
        }
   }
    
-   public void requestNoahFirst(int n, int queue, int classifier, String id, double executionTime, double arrTime)  {
+   public void requestNoahFirst(int n, int queue, int classifier, long id, double executionTime, double arrTime)  {
        SimProcess p = sim.currentProcess();
 //       UserRecord record = new UserRecord (n, p, sim.time()); // Original record
        UserRecord record = new UserRecord (n, p, sim.time(), id, classifier, executionTime, arrTime);
@@ -668,15 +725,10 @@ public class Resource  {
 	    		   
 	    		   // if save is null, nothing happens
 	    		   if (save.contain(id)){ // checks if dummy val had been posted in save
-	    			   for(int i=0; i < save.getSize(); i++){
-	    				   if (id.equals(save.getID(i))){
-	    					   if (save.getReal(i) == 0) // If that val is 0, update otherwise leave it
-	    						   save.setReal(i, Sim.time() + executionTime -arrTime);
-		    			   }
-	    			   }
+	    			   save.setRealIfUnset(id, sim.time() + executionTime -arrTime); // If that val is 0, update otherwise leave it
 	    		   }
 	    		   else{ // Real came first before dummy, give them same times
-	    			   time = Sim.time() + executionTime - arrTime;
+	    			   time = sim.time() + executionTime - arrTime;
     				   save.update(id, time, time);
 	    		   }
 //	    		   save.update(id, 0, 0);
@@ -699,7 +751,7 @@ public class Resource  {
 	    			   // do nothing
 	    		   }else
 	    		   {
-	    			   save.update(record.id, 0, Sim.time() + executionTime - arrTime);
+	    			   save.update(record.id, 0, sim.time() + executionTime - arrTime);
 	    		   }	    		   	       		    			 
 	    	   }
 	       }
@@ -710,21 +762,21 @@ public class Resource  {
 	               case FIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addLast (record); 
+	            	   		waitingList.addLast (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addLast(record); 
+	               			remoteWaitingList.addLast(record); count(remoteIndex, record.id, 1);
 	               		}
 	               break;
 	               case LIFO : 
 	            	   if (queue == LOCAL) 
 	            	   {
-	            	   		waitingList.addFirst (record); 
+	            	   		waitingList.addFirst (record); count(localIndex, record.id, 1);
 	            	   }
 	               	else if (queue == REMOTE)
 	               		{
-	               			remoteWaitingList.addFirst(record); 
+	               			remoteWaitingList.addFirst(record); count(remoteIndex, record.id, 1);
 	               		}
 	//            	   waitingList.addFirst (record); break;
 	               default   : throw new IllegalStateException(
@@ -743,7 +795,7 @@ public class Resource  {
        ListIterator<UserRecord> iterWait = waitingList.listIterator();
        while (iterWait.hasNext() && available > 0) {
            record = iterWait.next();
-           if (record.process.getState() == SimProcess.DEAD)  {iterWait.remove(); record.process.kill();}
+           if (dead (record))  {iterWait.remove(); count(localIndex, record.id, -1); record.process.kill();}
               // the process was killed, so we remove it from the waiting list.
               // or maybe we stop the program by throwing IllegalStateException
               //"Resource.startNewCust: process not alive");
@@ -752,18 +804,43 @@ public class Resource  {
            else if (record.numUnits <= available) {
                // This request can now be satisfied.
                serviceList.addLast (record);
-               record.process.resume();
+               wake (record);
                available -= record.numUnits;
                iterWait.remove();
+               count(localIndex, record.id, -1);
            }
        }
     }
    
+   // A queued record gets its units: its process is resumed, or its grant event scheduled in the same way
+   private static void wake (UserRecord record) {
+       if (record.grant != null)
+           record.grant.scheduleNext();
+       else
+           record.process.resume();
+   }
+
+   // The process of a queued record was killed; a record without a process never is
+   private static boolean dead (UserRecord record) {
+       return record.process != null && record.process.getState() == SimProcess.DEAD;
+   }
+   
    public double getWaitingTime(){
 	   
 	   return waitTime;
    }
    
+   // Adds delta to the number of queued records of the task in index
+   private static void count(Util.LongIntMap index, long task, int delta){
+	   if (task == Util.NO_TASK)
+		   return;
+	   int n = Math.max(index.get(task), 0) + delta;
+	   if (n > 0)
+		   index.put(task, n);
+	   else
+		   index.remove(task);
+   }
+   
    
    private void startLocalCust() {
        UserRecord record;
@@ -786,18 +863,21 @@ public class Resource  {
 //    			   save.update(record.id, 0, Sim.time() + record.execTime - record.arTime);
 //    		   }
         	   
-	           for (UserRecord r : remoteWaitingList){ // Checks the remote queue for the same task, if there, keep simtime of dummy and break or continue for next task, 
-	        	   if (record.id.equals(r.id)){
-	        		   save.update(record.id, 0, Sim.time() + record.execTime - record.arTime); // Real thing here
-//	        		   save.update(record.id, 0, 0); 
-	        		   iterWait.remove();
-	        	   }
-	        	   // Otherwise do nothing, because remote could have come and gone
+	           // Checks the remote queue for the same task, if there, keep simtime of dummy and break or continue for next task, 
+	           int matches = Math.max(remoteIndex.get(record.id), 0);
+	           for (int m = 0; m < matches; m++){
+	        	   save.update(record.id, 0, sim.time() + record.execTime - record.arTime); // Real thing here
+//	        	   save.update(record.id, 0, 0); 
+	           }
+	           if (matches > 0){
+	        	   iterWait.remove();
+	        	   count(localIndex, record.id, -1);
 	           }
+	           // Otherwise do nothing, because remote could have come and gone
 
            }
            else {
-	           if (record.process.getState() == SimProcess.DEAD) {iterWait.remove(); record.process.kill();} 
+	           if (dead (record)) {iterWait.remove(); count(localIndex, record.id, -1); record.process.kill();} 
 	              // the process was killed, so we remove it from the waiting list.
 	              // or maybe we stop the program by throwing IllegalStateException
 	              //"Resource.startNewCust: process not alive");
@@ -806,9 +886,10 @@ public class Resource  {
 	           else if (record.numUnits <= available) {
 	               // This request can now be satisfied.
 	               serviceList.addLast (record);
-	               record.process.resume();
+	               wake (record);
 	               available -= record.numUnits;
 	               iterWait.remove();
+	               count(localIndex, record.id, -1);
 	           }
 	       }
        }
@@ -833,23 +914,17 @@ public class Resource  {
 //			   save.update(record.id, time, 0);
 //		   }
            
-           for(UserRecord r : waitingList){
-        	   if (record.id.equals(r.id)){ // Assuming the real job gets here first before the dummy , give them both the same start times
-        		   time = Sim.time() + record.execTime - record.arTime;
-//        		   save.update(record.id, Sim.time() + record.execTime - record.arTime, Sim.time() + record.execTime - record.arTime);
-        		   save.update(record.id, time, time);
-        		   
-        	   }
-        	   else{// If the record isnt there, it means the sim time had been uploaded before, then set the sim time for the record
-        		   for (int i = 0; i < save.getSize(); i++){
-        			   if (save.getID(i).equals(record.id)){
-        				   if (save.getReal(i) == 0)
-        					   save.setReal(i, Sim.time() + record.execTime - record.arTime);
-        			   }
-        		   }
-        	   }
+           // Assuming the real job gets here first before the dummy , give them both the same start times
+           int matches = Math.max(localIndex.get(record.id), 0);
+           time = sim.time() + record.execTime - record.arTime;
+           for (int m = 0; m < matches; m++){
+//        	   save.update(record.id, Sim.time() + record.execTime - record.arTime, Sim.time() + record.execTime - record.arTime);
+        	   save.update(record.id, time, time);
            }
-           if (record.process.getState() == SimProcess.DEAD) {iterWait.remove(); record.process.kill();} 
+           if (waitingList.size() > matches){// If the record isnt there, it means the sim time had been uploaded before, then set the sim time for the record
+        	   save.setRealIfUnset(record.id, sim.time() + record.execTime - record.arTime);
+           }
+           if (dead (record)) {iterWait.remove(); count(remoteIndex, record.id, -1); record.process.kill();} 
               // the process was killed, so we remove it from the waiting list.
               // or maybe we stop the program by throwing IllegalStateException
               //"Resource.startNewCust: process not alive");
@@ -858,9 +933,10 @@ public class Resource  {
            else if (record.numUnits <= available) {
                // This request can now be satisfied.
                serviceList.addLast (record);
-               record.process.resume();
+               wake (record);
                available -= record.numUnits;
                iterWait.remove();
+               count(remoteIndex, record.id, -1);
            }
        }
     }
@@ -922,76 +998,110 @@ public class Resource  {
     * 
     */
    public double release (int n)  {
-	   
-	   if (capacity == 0){
-		   return 12000.0;
-	   }
-	   else {
-	        SimProcess p = sim.currentProcess();
-	        int temp = 0;
-	        UserRecord record;
-	        ListIterator<UserRecord> iterServ = serviceList.listIterator();
-	        while (temp<n && iterServ.hasNext()) {
-	            record = iterServ.next();
-	            if (p == record.process) {
-	                temp = temp + record.numUnits;
-	                if (temp <= n) {
-	                    iterServ.remove();
-	                    if (waitTime > 0)
-	                    	waitTime -= record.execTime;
-	                    if (stats) statSojourn.add
-	                                   (sim.time() - record.requestTime);
-	                }
-	                else {
-	                    record.numUnits = temp - n;
-	                    temp = n;
-	                }
-	            }
-	            
-	            
-	        }
-	        if (temp < n)  throw new IllegalArgumentException ("trying to release "
-	                +"more units of a Resource than the process currently holds");
-	        available += temp;
-	        if (waitingList.size() > 0 )  startNewCustOriginalDefinition();//
-	        if (stats) statUtil.update (capacity - available);
-	        return 0;
-	   }
+        available += takeBack (n, sim.currentProcess(), null, true);
+        if (waitingList.size() > 0 )  startNewCustOriginalDefinition();//
+        if (stats) statUtil.update (capacity - available);
+        return 0;
+    }
+
+   /**
+    * Releases the <TT>n</TT> units taken by
+    *   {@link #request(int,double,Event) request(n, servTime, grant)}, as
+    *   {@link #release(int) release(n)} does for the executing process.
+    * 
+    * @param n number of released units
+    * 
+    *    @param grant the event given to the request
+    * 
+    *    @exception IllegalArgumentException if the request did not take <TT>n</TT> units
+    * 
+    */
+   public double release (int n, Event grant)  {
+        available += takeBack (n, null, grant, true);
+        if (waitingList.size() > 0 )  startNewCustOriginalDefinition();
+        if (stats) statUtil.update (capacity - available);
+        return 0;
     }
 
    public double release (int n, String s)  {
-	   if (capacity == 0){
-		   return 12000.0;
-	   }
-	   else {
-	       SimProcess p = sim.currentProcess();
-	       int temp = 0;
-	       UserRecord record;
-	       ListIterator<UserRecord> iterServ = serviceList.listIterator();
-	     
-	       while (temp<n && iterServ.hasNext()) {
-	           record = iterServ.next();
-	           if (p == record.process) {
-	               temp = temp + record.numUnits;
-	               if (temp <= n) {
-	                   iterServ.remove();
-	                   if (stats) statSojourn.add
-	                                  (sim.time() - record.requestTime);
-	               }
-	               else {
-	                   record.numUnits = temp - n;
-	                   temp = n;
-	               }
-	           }
-	       }
-	       if (temp < n)  throw new IllegalArgumentException ("trying to release "
-	               +"more units of a Resource than the process currently holds");
-	       available += temp;
-	       if (waitingList.size() > 0 || remoteWaitingList.size() > 0)  startNewCust();//startNewCustOriginalDefinition();//
-	       if (stats) statUtil.update (capacity - available);   
-	       return 0;
-	   } 
-     
+       available += takeBack (n, sim.currentProcess(), null, false);
+       if (waitingList.size() > 0 || remoteWaitingList.size() > 0)  startNewCust();//startNewCustOriginalDefinition();//
+       if (stats) statUtil.update (capacity - available);   
+       return 0;
+   }
+
+   /**
+    * Releases the <TT>n</TT> units taken by
+    *   {@link #request(int,int,int,long,double,double,Event) request(n, queue, classifier, id, executionTime, arrTime, grant)},
+    *   as {@link #release(int,String) release(n, s)} does for the executing process.
+    * 
+    */
+   public double release (int n, String s, Event grant)  {
+       available += takeBack (n, null, grant, false);
+       if (waitingList.size() > 0 || remoteWaitingList.size() > 0)  startNewCust();
+       if (stats) statUtil.update (capacity - available);
+       return 0;
+   }
+
+   /**
+    * Withdraws every request waiting in the queues of this resource, as when the resource
+    *    fails and the work queued at it is sent elsewhere; the requests holding units keep them.
+    *    The process of a withdrawn request is resumed, and its request returns {@link #WITHDRAWN}.
+    *    The grant events of the withdrawn requests made without a process are not scheduled, but
+    *    returned, in queue order, for their owners to send the requests elsewhere.
+    * 
+    * @return the grant events of the withdrawn requests made without a process
+    * 
+    */
+   public List<Event> withdrawWaiting()  {
+       List<Event> grants = new ArrayList<Event>();
+       withdraw (waitingList, localIndex, grants);
+       withdraw (remoteWaitingList, remoteIndex, grants);
+       return grants;
+   }
+
+   private void withdraw (LinkedListStat<UserRecord> queue, Util.LongIntMap index, List<Event> grants)  {
+       while (queue.size() > 0) {
+           UserRecord record = queue.removeFirst();
+           count (index, record.id, -1);
+           if (record.classifier == 0 && waitTime > 0)
+               waitTime -= record.execTime; // queued by request(n, servTime), see enter
+           if (record.grant != null)
+               grants.add (record.grant);
+           else if (dead (record))
+               record.process.kill();
+           else {
+               record.withdrawn = true;
+               record.process.resume();
+           }
+       }
+   }
+
+   // Removes n units held by the process p, or by the request of grant, from serviceList; returns n
+   private int takeBack (int n, SimProcess p, Event grant, boolean queuedWork)  {
+        int temp = 0;
+        UserRecord record;
+        ListIterator<UserRecord> iterServ = serviceList.listIterator();
+        while (temp<n && iterServ.hasNext()) {
+            record = iterServ.next();
+            if (grant != null ? grant == record.grant : p == record.process) {
+                temp = temp + record.numUnits;
+                if (temp <= n) {
+                    iterServ.remove();
+                    if (queuedWork && waitTime > 0)
+                    	waitTime -= record.execTime;
+                    if (stats) statSojourn.add
+                                   (sim.time() - record.requestTime);
+                }
+                else {
+                    record.numUnits = temp - n;
+                    temp = n;
+                }
+            }
+        }
+        if (temp < n)  throw new IllegalArgumentException ("trying to release "
+                +"more units of a Resource than the process currently holds");
+        return temp;
    }
    
 
@@ -1016,14 +1126,8 @@ public class Resource  {
                    temp = n;
                }
            }
-           for (int i = 0; i < save.getSize(); i++){
-        	   if (record.id.equals(save.getID(i))){
-        		   rd.update(record.id, save.getReal(i), save.getDummy(i));
-        		   // if i want each fog to have the values, ill keep updating rd a
-        		   save.clear(i);
-        		   continue;
-        	   }
-           }
+           // if i want each fog to have the values, ill keep updating rd a
+           save.moveTo(record.id, rd);
        }
        if (temp < n)  throw new IllegalArgumentException ("trying to release "
                +"more units of a Resource than the process currently holds");
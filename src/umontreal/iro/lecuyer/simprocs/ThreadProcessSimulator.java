@@ -42,6 +42,14 @@ public class ThreadProcessSimulator extends ProcessSimulator  {
    private SimThread threadAllHead = null;
    //Tete de la liste des SimThread associated to this ThreadProcessSimulator
 
+   // Head of the free SimThread list of this simulator. Threads are only
+   // recycled by the simulator that created them, so simulators running
+   // in parallel never share a thread.
+   SimThread threadFreeHead = null;
+
+   // Wake-ups of the executive not yet consumed by simPassivate.
+   int executiveWakeups = 0;
+
 
    /**
     * Creates a new {@link ThreadProcessSimulator} variable.
@@ -59,6 +67,7 @@ public class ThreadProcessSimulator extends ProcessSimulator  {
     */
    public void init()  {
       super.init();
+      executiveWakeups = 0;
       /*if(threadAllHead != null)
          killAll();
       threadAllHead = null;                    //!!!!! utilisation de killAll instable !!!!!*/
@@ -76,6 +85,7 @@ public class ThreadProcessSimulator extends ProcessSimulator  {
     */
    public void init (EventList evlist)  {
       super.init (evlist);
+      executiveWakeups = 0;
       /*if(threadAllHead != null)
          killAll();                            //!!!!! utilisation de killAll instable !!!!!*/
    } 
@@ -136,6 +146,18 @@ public class ThreadProcessSimulator extends ProcessSimulator  {
    } 
 
 
+   /**
+    * Kills all processes linked to the current variable and ends their threads,
+    *    instead of keeping them for new processes.
+    *    Call this once a simulation is over and the simulator will not be used again,
+    *    e.g., at the end of each replication when many simulators are created.
+    * 
+    */
+   public void dispose()  {
+      SimThread.disposeAll(this);
+   } 
+
+
 
     // This method looks for the next process to give it the control.
     // If there are some event in the eventList, they will be executed
@@ -192,31 +214,35 @@ final class SimThread extends Event implements Runnable {
     // The Process to which this thread is associated.
 
    private Thread myThread;
-   // The Thread in which this SimThread object will run.
+   // The Thread in which this SimThread object will run, started by the first activate():
+   // a process that is created but never run costs no thread.
 
     // link with the next thread in the list headed by sim.threadAllHead, used by killAll().
    private SimThread nextAll = null;
 
-   // Head of the free SimThread list
-   private static SimThread threadFreeHead = null;
-    // link with the next thread in the list
+    // link with the next thread in the list headed by sim.threadFreeHead
    private SimThread nextFree = null;
 
+    // Set by disposeAll(): the thread ends instead of returning to the free list.
+   private boolean disposed = false;
+
     // Constructor.
    private SimThread (SimProcess p, ThreadProcessSimulator inSim) {
       super(inSim);
       eventTime = SimProcess.STARTING;
       myProcess = p;
-      myThread = new Thread (this);
-      myThread.setDaemon (true);
-      myThread.start();      nextAll = ((ThreadProcessSimulator)sim).threadAllHead();
+      nextAll = ((ThreadProcessSimulator)sim).threadAllHead();
       ((ThreadProcessSimulator)sim).setThreadAllHead(this);
     }
 
    public static final SimThread getThread (SimProcess p, ThreadProcessSimulator inSim) {
-      if (threadFreeHead == null) return new SimThread (p, inSim);
-      SimThread th = threadFreeHead;   threadFreeHead = threadFreeHead.nextFree;
-      th.myProcess = p;
+      SimThread th;
+      synchronized (inSim) {
+         th = inSim.threadFreeHead;
+         if (th != null)  inSim.threadFreeHead = th.nextFree;
+      }
+      if (th == null) return new SimThread (p, inSim);
+      synchronized (th) { th.myProcess = p; }
       th.eventTime = SimProcess.STARTING;
       th.sim       = inSim;
       th.priority  = 1.0;
@@ -237,12 +263,41 @@ final class SimThread extends Event implements Runnable {
                ((ThreadProcessSimulator)sim).dispatch(); // Give control to another process.
            } catch (SimThreadError e) {} // An SimThreadError exception is thrown because
                                 // the process is killed.
-           myProcess.setScheduledEvent(null);
-           myProcess = null;
-           nextFree = threadFreeHead;   threadFreeHead = this;
+           if (!release())
+              return;
        }
    }
 
+   // Detaches the finished process and puts this thread back on the free list
+   // of its simulator. Returns false when the thread must end.
+   // Runs in this thread only, whose interrupt status it clears.
+   private boolean release() {
+      synchronized (this) {
+         if (myProcess != null) {
+            detach();
+            Thread.interrupted(); // a kill() for the finished process must not reach the next one
+         }
+         else if (!disposed)
+            return true;      // interrupted while already free: nothing to release
+         if (disposed)
+            return false;
+      }
+      free();
+      return true;
+   }
+
+   private void detach() {
+      myProcess.setScheduledEvent(null);
+      myProcess = null;
+   }
+
+   private void free() {
+      ThreadProcessSimulator tsim = (ThreadProcessSimulator)sim;
+      synchronized (tsim) {
+         nextFree = tsim.threadFreeHead;   tsim.threadFreeHead = this;
+      }
+   }
+
    public void actions() {
    // This method will be executed only once.
    // It transfers the control from the executive to this thread.
@@ -259,6 +314,11 @@ final class SimThread extends Event implements Runnable {
    protected synchronized final void activate() {
    // Notifies this thread to be ready to take control.
    // It will take control when the calling thread passivates.
+      if (myThread == null) {
+         myThread = new Thread (this);
+         myThread.setDaemon (true);
+         myThread.start();
+      }
       n++;   notify();
    }
 
@@ -275,15 +335,20 @@ final class SimThread extends Event implements Runnable {
    }
 
 
+   // The wake-up is counted, so it is not lost when the last process ends
+   // before the executive has started waiting in simPassivate.
    protected static final void simActivate(ThreadProcessSimulator sim) {
       EventList evl = sim.getEventList();
-      synchronized (evl) {evl.notify(); }
+      synchronized (evl) {sim.executiveWakeups++;  evl.notify(); }
    }
 
    protected static final void simPassivate(ThreadProcessSimulator sim) {
       EventList evl = sim.getEventList();
       synchronized (evl) {
-         try { evl.wait(); } catch (InterruptedException e) {}
+         try {
+            while (sim.executiveWakeups == 0)  evl.wait();
+         } catch (InterruptedException e) {}
+         if (sim.executiveWakeups > 0)  sim.executiveWakeups--;
       }
    }
 
@@ -293,7 +358,17 @@ final class SimThread extends Event implements Runnable {
    protected void kill() {
         if (eventTime >= 0.0)
            cancel();
-        myThread.interrupt();
+        boolean neverRan = false;
+        synchronized (this) {
+           if (myProcess != null && myThread != null)  myThread.interrupt();
+           else if (myProcess != null) {
+              // Never ran: no thread to interrupt, and the caller's own
+              // interrupt status is left alone, unlike in release().
+              detach();
+              neverRan = !disposed;
+           }
+        }
+        if (neverRan)  free();
 //        myThread = null;
    }
 
@@ -306,6 +381,21 @@ final class SimThread extends Event implements Runnable {
        }
    }
 
+   protected static void  disposeAll(ThreadProcessSimulator sim) {
+       SimThread th = sim.threadAllHead();
+       while (th != null) {
+           if (th.eventTime >= 0.0)
+              th.cancel();
+           synchronized (th) {
+              th.disposed = true;
+              if (th.myThread != null)  th.myThread.interrupt();
+           }
+           th = th.nextAll;
+       }
+       synchronized (sim) { sim.threadFreeHead = null; }
+       sim.setThreadAllHead(null);
+   }
+
    public String toString() {
       // To get something useful when printing the event list
       return "Start or resume process " + myProcess.toString();
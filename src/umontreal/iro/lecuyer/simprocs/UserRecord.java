@@ -28,6 +28,8 @@
 
 package umontreal.iro.lecuyer.simprocs;
 
+import mcgill.Util;
+import umontreal.iro.lecuyer.simevents.Event;
 import umontreal.iro.lecuyer.simprocs.SimProcess;
 
 
@@ -52,15 +54,19 @@ public class UserRecord  {
    // Process associated to the record
    protected SimProcess process;
 
+   // Event scheduled when the units are granted, for a request made without a process (null otherwise)
+   protected Event grant;
+
    // Priority of this process.
    // protected double priority;
 
    // Time of the record creation
    protected double requestTime;
-   protected String id;
+   protected long id = Util.NO_TASK; // packed device and sequence number, see Util.taskId
    protected int classifier;
    protected double execTime;
    protected double arTime;
+   protected boolean withdrawn; // taken out of its queue by Resource.withdrawWaiting before it got its units
 
    // Constructor.
    // We do not want the user to construct such objects.
@@ -71,7 +77,7 @@ public class UserRecord  {
    }
    
    //Modified User record to have an id for comparison
-   protected UserRecord (int n, SimProcess p, double requestTime, String ID, int classifier, double executionTime, double arrTime) {
+   protected UserRecord (int n, SimProcess p, double requestTime, long ID, int classifier, double executionTime, double arrTime) {
 	      numUnits = n;
 	      process = p;
 	      this.requestTime = requestTime;
@@ -94,7 +100,7 @@ public class UserRecord  {
     * 
     */
    
-   public String getID(){
+   public long getID(){
 	   return this.id;
    }
 
@@ -129,4 +135,15 @@ public class UserRecord  {
    public double getRequestTime() {
       return requestTime;
    }
+
+
+   /**
+    * Returns the event scheduled when the units of this record are granted,
+    *  or <TT>null</TT> if the record belongs to a process.
+    * 
+    * @return the event of this record
+    */
+   public Event getGrant() {
+      return grant;
+   }
 }
@@ -0,0 +1,362 @@
+/*
+ * Class:        VirtualProcessSimulator
+ * Description:  process simulator running every process on a virtual thread,
+                 handed the control with park and unpark
+ * Environment:  Java
+ * Software:     SSJ
+ * Copyright (C) 2001  Pierre L'Ecuyer and Universite de Montreal
+ * Organization: DIRO, Universite de Montreal
+ * @since
+
+ * SSJ is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License (GPL) as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * any later version.
+
+ * SSJ is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * A copy of the GNU General Public License is available at
+   <a href="http://www.gnu.org/licenses">GPL licence site</a>.
+ */
+
+package umontreal.iro.lecuyer.simprocs;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import umontreal.iro.lecuyer.simevents.Event;
+
+/**
+ * Represents a process simulator running every process on its own virtual thread.
+ * As with {@link ThreadProcessSimulator}, only one process runs at a time, but the
+ * control is handed from a thread to the next with
+ * {@link LockSupport#park park} and {@link LockSupport#unpark unpark} instead of
+ * monitors, and a thread costs a small heap object instead of a stack reserved by
+ * the operating system, so millions of processes can be alive at once.
+ * A process gets its thread when it first runs.
+ *
+ * <P>
+ * Virtual threads are found at run time (Java 21); on an older Java the processes
+ * run on daemon platform threads, with the stack size given by the system property
+ * <TT>ssj.processStackSize</TT> in bytes (the default of the JVM if it is not set),
+ * and the thread of a process that ended is kept for the next one.
+ * This simulator is selected for {@link ProcessSimulator#newInstance newInstance}
+ * with <TT>-Dssj.withVirtual</TT> or
+ * <TT>-Dssj.processSimulator=umontreal.iro.lecuyer.simprocs.VirtualProcessSimulator</TT>.
+ *
+ */
+public class VirtualProcessSimulator extends ProcessSimulator  {
+
+   // Thread.ofVirtual() and Thread.Builder.unstarted, or null without virtual threads
+   private static final Object VIRTUAL_BUILDER;
+   private static final Method UNSTARTED;
+   static {
+      Object builder = null;
+      Method unstarted = null;
+      try {
+         builder = Thread.class.getMethod ("ofVirtual").invoke (null);
+         unstarted = Class.forName ("java.lang.Thread$Builder").getMethod ("unstarted", Runnable.class);
+      }
+      catch (ReflectiveOperationException e) {  // before Java 21, or a preview not enabled
+         builder = null;
+         unstarted = null;
+      }
+      VIRTUAL_BUILDER = builder;
+      UNSTARTED = unstarted;
+   }
+
+   private static final long STACK_SIZE = Long.getLong ("ssj.processStackSize", 0);
+
+   // The thread running start(), waiting while the processes run
+   private volatile Thread executive;
+   private volatile boolean executivePermit = false;
+
+   // Processes whose thread is alive, for killAll() and dispose()
+   private ControlEvent liveHead = null;
+
+   // Platform threads whose process ended, waiting for another one; unused with virtual threads
+   private Carrier freeHead = null;
+   private volatile boolean disposed = false;
+
+
+   /**
+    * Creates a new {@link VirtualProcessSimulator} variable.
+    *
+    */
+   public VirtualProcessSimulator()  {
+   }
+
+
+   /**
+    * Returns <TT>true</TT> if the processes run on virtual threads,
+    *    <TT>false</TT> if they run on platform threads.
+    *
+    */
+   public static boolean isVirtual()  {
+      return VIRTUAL_BUILDER != null;
+   }
+
+
+   public Event createControlEvent (SimProcess process) {
+      return new ControlEvent (process, this);
+   }
+
+   public void delay (SimProcess process, double delay) {
+      if (currentProcess != process)
+         throw new IllegalStateException  ("Calling delay() for a process not in EXECUTING state");
+      if (delay < 0.0)
+         throw new IllegalArgumentException ("Calling delay() with negative delay");
+      process.scheduledEvent().schedule (delay);
+      dispatch();
+      ((ControlEvent)process.scheduledEvent()).passivate();
+   }
+
+   public void suspend (SimProcess process) {
+      ControlEvent ev = (ControlEvent)process.scheduledEvent();
+
+      if (ev == null)             // DEAD state
+         throw new IllegalStateException ("Calling suspend() for a dead process");
+
+      if (currentProcess == process) {             // EXECUTING state
+         dispatch();
+         ev.passivate();
+         return;
+      }
+
+      if (ev.time() >= 0.0 ) { // DELAYED state
+         ev.cancel();
+         ev.setTime (SimProcess.WAITING);
+         return;
+      }
+
+      if (ev.time() == SimProcess.STARTING ) // INITIAL state
+         throw new IllegalStateException
+                   ("Calling suspend() for a process in INITIAL state");
+
+                                         // SUSPENDED state
+      throw new IllegalStateException ("Calling suspend() for a suspended process");
+   }
+
+   public void kill (SimProcess process) {
+      if (process.scheduledEvent() == null)
+         throw new IllegalStateException ("cannot kill a DEAD process");
+      ((ControlEvent)process.scheduledEvent()).kill();
+   }
+
+
+   /**
+    * Kills all processes of this simulator whose thread was started.
+    *
+    */
+   public void killAll()  {
+      List<ControlEvent> live = new ArrayList<ControlEvent>();
+      synchronized (this) {
+         for (ControlEvent th = liveHead; th != null; th = th.nextLive)
+            live.add (th);
+      }
+      for (ControlEvent th : live)
+         th.kill();
+   }
+
+
+   /**
+    * Kills all processes of this simulator, so their threads end.
+    *    Call this once a simulation is over and the simulator will not be used again.
+    *
+    */
+   public void dispose()  {
+      killAll();
+      Carrier c;
+      synchronized (this) {
+         disposed = true;
+         c = freeHead;
+         freeHead = null;
+      }
+      for (; c != null; c = c.nextFree)
+         LockSupport.unpark (c.thread);
+   }
+
+
+   // Gives the control to the next process, executing the events met before it;
+   // wakes the executive up when the simulation is over.
+   protected void dispatch() {
+      Event ev;
+      while ((ev = removeFirstEvent()) != null) {
+         if (ev instanceof ControlEvent) {
+            currentProcess = ((ControlEvent)ev).myProcess;
+            ((ControlEvent)ev).activate();
+            return;
+         }
+         else ev.actions();
+      }
+      executivePermit = true;
+      LockSupport.unpark (executive);
+   }
+
+   private void passivateExecutive() {
+      while (!executivePermit)
+         LockSupport.park (this);
+      executivePermit = false;
+   }
+
+   // A carrier for ev: a new virtual thread, or a platform thread from the free list or a new one
+   private void carry (ControlEvent ev) {
+      Carrier c = null;
+      if (VIRTUAL_BUILDER == null) {
+         synchronized (this) {
+            c = freeHead;
+            if (c != null)  freeHead = c.nextFree;
+         }
+      }
+      if (c != null) {
+         c.assigned = ev;
+         ev.carrier = c;
+         LockSupport.unpark (c.thread);
+         return;
+      }
+      c = new Carrier();
+      c.assigned = ev;
+      ev.carrier = c;
+      if (VIRTUAL_BUILDER != null) {
+         try {
+            c.thread = (Thread)UNSTARTED.invoke (VIRTUAL_BUILDER, c);
+         }
+         catch (ReflectiveOperationException e) {
+            throw new IllegalStateException ("cannot create a virtual thread", e);
+         }
+      }
+      else {
+         c.thread = new Thread (null, c, "SimProcess", STACK_SIZE);
+         c.thread.setDaemon (true);
+      }
+      c.thread.start();
+   }
+
+   synchronized void link (ControlEvent ev) {
+      ev.nextLive = liveHead;
+      if (liveHead != null)  liveHead.prevLive = ev;
+      liveHead = ev;
+   }
+
+   synchronized void unlink (ControlEvent ev) {
+      if (ev.prevLive != null)  ev.prevLive.nextLive = ev.nextLive;
+      else if (liveHead == ev)  liveHead = ev.nextLive;
+      if (ev.nextLive != null)  ev.nextLive.prevLive = ev.prevLive;
+      ev.prevLive = ev.nextLive = null;
+   }
+
+
+
+   // Thrown by passivate() in the thread of a killed process, and caught by the carrier.
+   private static final class Killed extends Error {
+      private static final long serialVersionUID = 1L;
+
+      Killed() { super (null, null, false, false); }
+   }
+   private static final Killed KILLED = new Killed();
+
+
+   // The thread running processes one after the other. A virtual thread runs a single process;
+   // a platform thread goes back to the free list of the simulator when its process ends.
+   final class Carrier implements Runnable {
+      Thread thread;
+      volatile ControlEvent assigned;   // the process to run, null while free
+      Carrier nextFree;
+
+      public void run() {
+         ControlEvent ev;
+         while ((ev = assigned) != null) {
+            boolean killed = false;
+            try {
+               ev.passivate();
+               ev.myProcess.actions();  // myProcess starts its life.
+            }
+            catch (Killed e) {   // killed by another process, which has the control
+               killed = true;
+            }
+            ev.myProcess.setScheduledEvent (null);
+            ev.carrier = null;
+            unlink (ev);
+            assigned = null;
+            if (VIRTUAL_BUILDER == null) {
+               synchronized (VirtualProcessSimulator.this) {
+                  if (disposed)
+                     return;
+                  nextFree = freeHead;   freeHead = this;
+               }
+            }
+            if (!killed)
+               dispatch();   // Give control to another process, maybe run by this carrier.
+            if (VIRTUAL_BUILDER != null)
+               return;
+            while (assigned == null && !disposed)
+               LockSupport.park (this);
+         }
+      }
+   }
+
+
+   // The control event of a process: executing it hands the control to the thread of the process.
+   final class ControlEvent extends Event {
+      SimProcess myProcess;
+      volatile Carrier carrier;   // null until the process first runs
+      private volatile boolean permit = false;   // the process may run
+      private volatile boolean killed = false;
+      ControlEvent prevLive, nextLive;
+
+      ControlEvent (SimProcess p, VirtualProcessSimulator inSim) {
+         super (inSim);
+         eventTime = SimProcess.STARTING;
+         myProcess = p;
+      }
+
+      // Executed by the executive, for the first process it meets:
+      // the executive waits until no process or event is left.
+      public void actions() {
+         executive = Thread.currentThread();
+         currentProcess = myProcess;
+         activate();
+         passivateExecutive();
+      }
+
+      void activate() {
+         permit = true;
+         if (carrier == null) {
+            link (this);
+            carry (this);
+         }
+         else
+            LockSupport.unpark (carrier.thread);
+      }
+
+      void passivate() {
+         while (!permit && !killed)
+            LockSupport.park (this);
+         if (killed)
+            throw KILLED;
+         permit = false;
+      }
+
+      void kill() {
+         if (eventTime >= 0.0)
+            cancel();
+         Carrier c = carrier;
+         if (c == null) {   // never ran: nothing to wake up
+            myProcess.setScheduledEvent (null);
+            return;
+         }
+         killed = true;
+         LockSupport.unpark (c.thread);
+      }
+
+      public String toString() {
+         // To get something useful when printing the event list
+         return "Start or resume process " + myProcess.toString();
+      }
+   }
+}
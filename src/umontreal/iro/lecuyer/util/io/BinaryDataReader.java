@@ -27,6 +27,8 @@
 package umontreal.iro.lecuyer.util.io;
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 
 
@@ -42,6 +44,8 @@ public class BinaryDataReader extends AbstractDataReader  {
    protected String filename           = null;
    protected URL url                   = null;
    protected File file                 = null;
+   protected ByteBuffer buffer         = null;
+   protected int bufferStart           = 0;
    protected boolean canReset = false;
 
    /* *
@@ -110,6 +114,12 @@ public class BinaryDataReader extends AbstractDataReader  {
     */
    protected int[] readIntArrayData(int dim) throws IOException {
       int[] a = new int[dim];
+      if (buffer != null) {
+         // bulk copy; the stream reads from the same buffer position
+         buffer.asIntBuffer().get(a);
+         buffer.position(buffer.position() + dim * (Integer.SIZE / 8));
+         return a;
+      }
       for (int i = 0; i < dim; i++)
          a[i] = readIntData();
       return a;
@@ -142,6 +152,11 @@ public class BinaryDataReader extends AbstractDataReader  {
     */
    protected float[] readFloatArrayData(int dim) throws IOException {
       float[] a = new float[dim];
+      if (buffer != null) {
+         buffer.asFloatBuffer().get(a);
+         buffer.position(buffer.position() + dim * (Float.SIZE / 8));
+         return a;
+      }
       for (int i = 0; i < dim; i++)
          a[i] = readFloatData();
       return a;
@@ -174,6 +189,11 @@ public class BinaryDataReader extends AbstractDataReader  {
     */
    protected double[] readDoubleArrayData(int dim) throws IOException {
       double[] a = new double[dim];
+      if (buffer != null) {
+         buffer.asDoubleBuffer().get(a);
+         buffer.position(buffer.position() + dim * (Double.SIZE / 8));
+         return a;
+      }
       for (int i = 0; i < dim; i++)
          a[i] = readDoubleData();
       return a;
@@ -312,6 +332,63 @@ public class BinaryDataReader extends AbstractDataReader  {
    
 
 
+   /**
+    * Reads the data from the specified buffer, starting at its current position,
+    * for instance a file mapped with
+    * {@link java.nio.channels.FileChannel#map FileChannel.map}.
+    * Arrays are copied out of the buffer in bulk, and {@link #reset reset}
+    * returns to the starting position. The position of <TT>buffer</TT> itself
+    * is not changed.
+    * 
+    * @param buffer buffer to read the data from
+    * 
+    */
+   public BinaryDataReader (ByteBuffer buffer) throws IOException  {
+      this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+      this.bufferStart = buffer.position();
+      canReset = true;
+      reset();
+   }
+   
+   /* *
+    * Stream over the reader buffer, so that the stream and the bulk
+    * array reads share the same position.
+    *
+    */
+   private static class BufferInputStream extends InputStream {
+      private final ByteBuffer buf;
+
+      BufferInputStream(ByteBuffer buf) {
+         this.buf = buf;
+      }
+
+      public int read() {
+         return buf.hasRemaining() ? (buf.get() & 0xff) : -1;
+      }
+
+      public int read(byte[] b, int off, int len) {
+         if (len == 0)
+            return 0;
+         if (!buf.hasRemaining())
+            return -1;
+         len = Math.min(len, buf.remaining());
+         buf.get(b, off, len);
+         return len;
+      }
+
+      public long skip(long n) {
+         int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+         buf.position(buf.position() + k);
+         return k;
+      }
+
+      public int available() {
+         return buf.remaining();
+      }
+   }
+   
+
+
    /**
     * Reads the next available field.
     * 
@@ -406,7 +483,11 @@ public class BinaryDataReader extends AbstractDataReader  {
       if (!canReset)
          return;
 
-      if (filename != null)
+      if (buffer != null) {
+         buffer.position(bufferStart);
+         this.in = new DataInputStream(new BufferInputStream(buffer));
+      }
+      else if (filename != null)
          this.in = new DataInputStream(new FileInputStream(filename));
       else if (file != null)
          this.in = new DataInputStream(new FileInputStream(file));